@@ -16,26 +16,36 @@
 
 package santo.vertx.arangodb;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.AsyncResultHandler;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.json.impl.Base64;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.platform.Verticle;
 import santo.vertx.arangodb.rest.AbstractRestAPI;
 import santo.vertx.arangodb.rest.AqlAPI;
+import santo.vertx.arangodb.rest.AsyncAPI;
+import santo.vertx.arangodb.rest.BatchAPI;
 import santo.vertx.arangodb.rest.CollectionAPI;
 import santo.vertx.arangodb.rest.DatabaseAPI;
 import santo.vertx.arangodb.rest.DocumentAPI;
 import santo.vertx.arangodb.rest.EdgeAPI;
+import santo.vertx.arangodb.rest.EndpointAPI;
 import santo.vertx.arangodb.rest.GenericAPI;
 import santo.vertx.arangodb.rest.GharialAPI;
 import santo.vertx.arangodb.rest.GraphAPI;
+import santo.vertx.arangodb.rest.ImportAPI;
 import santo.vertx.arangodb.rest.IndexAPI;
+import santo.vertx.arangodb.rest.MetricsAPI;
+import santo.vertx.arangodb.rest.ReplicationAPI;
 import santo.vertx.arangodb.rest.SimpleQueryAPI;
 import santo.vertx.arangodb.rest.TransactionAPI;
 import santo.vertx.arangodb.rest.TraversalAPI;
@@ -55,6 +65,12 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
     
     public final String CFG_PROPERTY_HOSTNAME = "host";
     public final String CFG_PROPERTY_PORT = "port";
+    public final String CFG_PROPERTY_HOSTS = "hosts";
+    public final String CFG_PROPERTY_LOAD_BALANCING = "load_balancing";
+    public final String CFG_PROPERTY_HEALTH_CHECK_INTERVAL = "health_check_interval";
+    public final String CFG_PROPERTY_HEALTH_CHECK_TIMEOUT = "health_check_timeout";
+    public final String CFG_PROPERTY_HEALTH_CHECK_FAILURES = "health_check_failures";
+    public final String CFG_PROPERTY_DISCOVERY_INTERVAL = "discovery_interval";
     public final String CFG_PROPERTY_DBNAME = "dbname";
     public final String CFG_PROPERTY_USERNAME = "username";
     public final String CFG_PROPERTY_PASSWORD = "password";
@@ -73,9 +89,50 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
     public final String CFG_PROPERTY_REUSE_ADDRESS = "reuse_address";
     public final String CFG_PROPERTY_TCP_KEEPALIVE = "tcp_keepalive";
     public final String CFG_PROPERTY_TCP_NODELAY = "tcp_nodelay";
+    public final String CFG_PROPERTY_BATCHING = "batching";
+    public final String CFG_PROPERTY_BATCHING_WINDOW = "batching_window";
+    public final String CFG_PROPERTY_BATCHING_SIZE = "batching_size";
+    public final String CFG_PROPERTY_IMPORT_CHUNK_SIZE = "import_chunk_size";
+    public final String CFG_PROPERTY_IMPORT_DIR = "import_dir";
+    public final String CFG_PROPERTY_IMPORT_TIMEOUT = "import_timeout";
+    public final String CFG_PROPERTY_MAX_IN_FLIGHT = "max_in_flight";
+    public final String CFG_PROPERTY_MAX_IN_FLIGHT_PER_HOST = "max_in_flight_per_host";
+    public final String CFG_PROPERTY_MAX_QUEUE_SIZE = "max_queue_size";
+    public final String CFG_PROPERTY_MAX_QUEUE_WAIT = "max_queue_wait";
+    public final String CFG_PROPERTY_PRIORITIES = "priorities";
+    public final String CFG_PROPERTY_LOW_PRIORITY_SHARE = "low_priority_share";
+    public final String CFG_PROPERTY_COALESCING = "coalescing";
+    public final String CFG_PROPERTY_DOCUMENT_CACHE_SIZE = "document_cache_size";
+    public final String CFG_PROPERTY_DOCUMENT_CACHE_BYTES = "document_cache_bytes";
+    public final String CFG_PROPERTY_DOCUMENT_CACHE_TTL = "document_cache_ttl";
+    public final String CFG_PROPERTY_CACHE_INVALIDATION = "cache_invalidation";
+    public final String CFG_PROPERTY_CACHE_INVALIDATION_ADDRESS = "cache_invalidation_address";
+    public final String CFG_PROPERTY_REPLICATION_FOLLOWERS = "replication_followers";
+    public final String CFG_PROPERTY_REPLICATION_TICK_DIR = "replication_tick_dir";
+    public final String CFG_PROPERTY_REPLICATION_INTERVAL = "replication_interval";
+    public final String CFG_PROPERTY_REPLICATION_CHUNK_SIZE = "replication_chunk_size";
+    public final String CFG_PROPERTY_CURSOR_TTL = "cursor_ttl";
+    public final String CFG_PROPERTY_RETRIES = "retries";
+    public final String CFG_PROPERTY_RETRY_DELAY = "retry_delay";
+    public final String CFG_PROPERTY_RETRY_MAX_DELAY = "retry_max_delay";
+    public final String CFG_PROPERTY_RETRY_BUDGET = "retry_budget";
+    public final String CFG_PROPERTY_HEDGING = "hedging";
+    public final String CFG_PROPERTY_HEDGING_PERCENTILE = "hedging_percentile";
+    public final String CFG_PROPERTY_HEDGING_MIN_DELAY = "hedging_min_delay";
+    public final String CFG_PROPERTY_CIRCUIT_BREAKER = "circuit_breaker";
+    public final String CFG_PROPERTY_CIRCUIT_ERROR_RATE = "circuit_error_rate";
+    public final String CFG_PROPERTY_CIRCUIT_MIN_REQUESTS = "circuit_min_requests";
+    public final String CFG_PROPERTY_CIRCUIT_WINDOW = "circuit_window";
+    public final String CFG_PROPERTY_CIRCUIT_SLOW_THRESHOLD = "circuit_slow_threshold";
+    public final String CFG_PROPERTY_CIRCUIT_OPEN_TIME = "circuit_open_time";
+    public final String CFG_PROPERTY_CIRCUIT_TRIAL_REQUESTS = "circuit_trial_requests";
+    public final String CFG_PROPERTY_METRICS = "metrics";
+    public final String CFG_PROPERTY_METRICS_PUBLISH_INTERVAL = "metrics_publish_interval";
+    public final String CFG_PROPERTY_METRICS_ADDRESS = "metrics_address";
 
     // MESSAGE PROPERTIES
     public static final String MSG_PROPERTY_TYPE = "type";
+    public static final String MSG_PROPERTY_PRIORITY = "priority";
 
     // MODULE SETTINGS
     private String SETTING_ADDRESS = "santo.vertx.arangodb";
@@ -84,6 +141,12 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
     public int DEFAULT_SETTING_PORT_HTTPS = 8529;
     public String SETTING_HOSTNAME = "localhost";
     public int SETTING_PORT = 8529;
+    public JsonArray SETTING_HOSTS = null;
+    public String SETTING_LOAD_BALANCING = LoadBalancer.STRATEGY_ROUND_ROBIN;
+    public int SETTING_HEALTH_CHECK_INTERVAL = 0;
+    public int SETTING_HEALTH_CHECK_TIMEOUT = 2000;
+    public int SETTING_HEALTH_CHECK_FAILURES = 3;
+    public int SETTING_DISCOVERY_INTERVAL = 0;
     public String SETTING_DBNAME = DEFAULT_DATABASE;
     public String SETTING_USERNAME = null;
     public String SETTING_PASSWORD = null;
@@ -102,6 +165,46 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
     public boolean SETTING_REUSE_ADDRESS = false;
     public boolean SETTING_TCP_KEEPALIVE = false;
     public boolean SETTING_TCP_NODELAY = true;
+    public boolean SETTING_BATCHING = false;
+    public int SETTING_BATCHING_WINDOW = 2;
+    public int SETTING_BATCHING_SIZE = 100;
+    public int SETTING_IMPORT_CHUNK_SIZE = 65536;
+    public String SETTING_IMPORT_DIR = null;
+    public int SETTING_IMPORT_TIMEOUT = 300000;
+    public int SETTING_MAX_IN_FLIGHT = 0;
+    public int SETTING_MAX_IN_FLIGHT_PER_HOST = 0;
+    public int SETTING_MAX_QUEUE_SIZE = 1000;
+    public int SETTING_MAX_QUEUE_WAIT = 5000;
+    public JsonObject SETTING_PRIORITIES = new JsonObject().putString(MSG_TYPE_IMPORT, RequestLimiter.PRIORITY_LOW);
+    public int SETTING_LOW_PRIORITY_SHARE = 50;
+    public boolean SETTING_COALESCING = false;
+    public int SETTING_DOCUMENT_CACHE_SIZE = 0;
+    public long SETTING_DOCUMENT_CACHE_BYTES = 16 * 1024 * 1024;
+    public int SETTING_DOCUMENT_CACHE_TTL = 0;
+    public boolean SETTING_CACHE_INVALIDATION = false;
+    public String SETTING_CACHE_INVALIDATION_ADDRESS = null;
+    public JsonArray SETTING_REPLICATION_FOLLOWERS = null;
+    public String SETTING_REPLICATION_TICK_DIR = "replication";
+    public int SETTING_REPLICATION_INTERVAL = 1000;
+    public int SETTING_REPLICATION_CHUNK_SIZE = 0;
+    public int SETTING_CURSOR_TTL = 0;
+    public int SETTING_RETRIES = 0;
+    public int SETTING_RETRY_DELAY = 100;
+    public int SETTING_RETRY_MAX_DELAY = 2000;
+    public int SETTING_RETRY_BUDGET = 10;
+    public boolean SETTING_HEDGING = false;
+    public int SETTING_HEDGING_PERCENTILE = 95;
+    public int SETTING_HEDGING_MIN_DELAY = 10;
+    public boolean SETTING_CIRCUIT_BREAKER = false;
+    public int SETTING_CIRCUIT_ERROR_RATE = 50;
+    public int SETTING_CIRCUIT_MIN_REQUESTS = 20;
+    public int SETTING_CIRCUIT_WINDOW = 10000;
+    public int SETTING_CIRCUIT_SLOW_THRESHOLD = 0;
+    public int SETTING_CIRCUIT_OPEN_TIME = 5000;
+    public int SETTING_CIRCUIT_TRIAL_REQUESTS = 3;
+    public boolean SETTING_METRICS = false;
+    public int SETTING_METRICS_PUBLISH_INTERVAL = 0;
+    public String SETTING_METRICS_ADDRESS = null;
 
     // Request Types
     public static final String MSG_TYPE_GENERIC = "generic";
@@ -126,6 +229,7 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
     public static final String MSG_TYPE_ENDPOINT = "endpoint";
     public static final String MSG_TYPE_SHARDING = "sharding";
     public static final String MSG_TYPE_MISC = "misc";
+    public static final String MSG_TYPE_METRICS = "metrics";
 
     private Logger logger;
     private final String logPrefix = "";
@@ -135,6 +239,21 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
     //private String credentialsHeader = null;
     private volatile HashMap<String, HttpClient> clients = new HashMap<>();
     private volatile HashMap<String, String> credentials = new HashMap<>();
+    private final Map<String, AbstractRestAPI> apis = new HashMap<>();
+    private LoadBalancer loadBalancer = null;
+    private HealthChecker healthChecker = null;
+    private EndpointDiscovery discovery = null;
+    private RequestLimiter limiter = null;
+    private RequestCoalescer coalescer = null;
+    private DocumentCache documentCache = null;
+    private CacheInvalidator cacheInvalidator = null;
+    private CursorManager cursorManager = null;
+    private RetryPolicy retryPolicy = null;
+    private HedgingPolicy hedgingPolicy = null;
+    private CircuitBreaker circuitBreaker = null;
+    private RequestMetrics metrics = null;
+    private final EndpointAffinity affinity = new EndpointAffinity();
+    private RequestBatcher batcher = null;
 
     @Override
     public void start() {
@@ -143,7 +262,15 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
         setConfig(container.config());
 
         configure();
+        createEndpoints();
+        registerAPIs();
         listen();
+        
+        if (cursorManager != null) cursorManager.start((AqlAPI) apis.get(MSG_TYPE_AQL));
+        if (metrics != null && SETTING_METRICS_PUBLISH_INTERVAL > 0) metrics.startPublishing(SETTING_METRICS_ADDRESS, SETTING_METRICS_PUBLISH_INTERVAL);
+        
+        // start following the replication logs specified in the configuration
+        ((ReplicationAPI) apis.get(MSG_TYPE_REPLICATION)).startFollowers(SETTING_REPLICATION_FOLLOWERS);
     }
         
     private void configure() {
@@ -164,6 +291,16 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
         SETTING_SSL = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_SSL, SETTING_SSL);
         if (SETTING_SSL) SETTING_PORT = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_PORT, DEFAULT_SETTING_PORT_HTTPS);
         else SETTING_PORT = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_PORT, DEFAULT_SETTING_PORT_HTTP);
+        SETTING_HOSTS = Helper.getHelper().getOptionalArray(getConfig(), CFG_PROPERTY_HOSTS, SETTING_HOSTS);
+        SETTING_LOAD_BALANCING = Helper.getHelper().getOptionalString(getConfig(), CFG_PROPERTY_LOAD_BALANCING, SETTING_LOAD_BALANCING);
+        if (!LoadBalancer.STRATEGIES.contains(SETTING_LOAD_BALANCING)) {
+            logger.fatal(logPrefix + "invalid load balancing strategy (" + SETTING_LOAD_BALANCING + "), aborting");
+            throw new RuntimeException("Invalid load balancing strategy: " + SETTING_LOAD_BALANCING);
+        }
+        SETTING_HEALTH_CHECK_INTERVAL = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_HEALTH_CHECK_INTERVAL, SETTING_HEALTH_CHECK_INTERVAL);
+        SETTING_HEALTH_CHECK_TIMEOUT = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_HEALTH_CHECK_TIMEOUT, SETTING_HEALTH_CHECK_TIMEOUT);
+        SETTING_HEALTH_CHECK_FAILURES = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_HEALTH_CHECK_FAILURES, SETTING_HEALTH_CHECK_FAILURES);
+        SETTING_DISCOVERY_INTERVAL = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_DISCOVERY_INTERVAL, SETTING_DISCOVERY_INTERVAL);
         SETTING_SSL_TRUSTALL = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_SSL_TRUSTALL, SETTING_SSL_TRUSTALL);
         SETTING_SSL_VERIFYHOST = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_SSL_VERIFYHOST, SETTING_SSL_VERIFYHOST);
         SETTING_SSL_KEYSTORE = Helper.getHelper().getOptionalString(getConfig(), CFG_PROPERTY_SSL_KEYSTORE, SETTING_SSL_KEYSTORE);
@@ -178,11 +315,249 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
         SETTING_REUSE_ADDRESS = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_REUSE_ADDRESS, SETTING_REUSE_ADDRESS);
         SETTING_TCP_KEEPALIVE = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_TCP_KEEPALIVE, SETTING_TCP_KEEPALIVE);
         SETTING_TCP_NODELAY = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_TCP_NODELAY, SETTING_TCP_NODELAY);
+        SETTING_BATCHING = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_BATCHING, SETTING_BATCHING);
+        SETTING_BATCHING_WINDOW = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_BATCHING_WINDOW, SETTING_BATCHING_WINDOW);
+        SETTING_BATCHING_SIZE = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_BATCHING_SIZE, SETTING_BATCHING_SIZE);
+        SETTING_IMPORT_CHUNK_SIZE = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_IMPORT_CHUNK_SIZE, SETTING_IMPORT_CHUNK_SIZE);
+        SETTING_IMPORT_DIR = Helper.getHelper().getOptionalString(getConfig(), CFG_PROPERTY_IMPORT_DIR, SETTING_IMPORT_DIR);
+        SETTING_IMPORT_TIMEOUT = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_IMPORT_TIMEOUT, SETTING_IMPORT_TIMEOUT);
+        SETTING_MAX_IN_FLIGHT = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_MAX_IN_FLIGHT, SETTING_MAX_IN_FLIGHT);
+        SETTING_MAX_IN_FLIGHT_PER_HOST = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_MAX_IN_FLIGHT_PER_HOST, SETTING_MAX_IN_FLIGHT_PER_HOST);
+        SETTING_MAX_QUEUE_SIZE = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_MAX_QUEUE_SIZE, SETTING_MAX_QUEUE_SIZE);
+        SETTING_MAX_QUEUE_WAIT = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_MAX_QUEUE_WAIT, SETTING_MAX_QUEUE_WAIT);
+        SETTING_PRIORITIES = Helper.getHelper().getOptionalObject(getConfig(), CFG_PROPERTY_PRIORITIES, SETTING_PRIORITIES);
+        for (String key : SETTING_PRIORITIES.getFieldNames()) {
+            if (!RequestLimiter.PRIORITIES.contains(SETTING_PRIORITIES.getString(key))) {
+                logger.fatal(logPrefix + "invalid priority for " + key + " (" + SETTING_PRIORITIES.getString(key) + "), aborting");
+                throw new RuntimeException("Invalid priority for " + key + ": " + SETTING_PRIORITIES.getString(key));
+            }
+        }
+        SETTING_LOW_PRIORITY_SHARE = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_LOW_PRIORITY_SHARE, SETTING_LOW_PRIORITY_SHARE);
+        SETTING_COALESCING = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_COALESCING, SETTING_COALESCING);
+        SETTING_DOCUMENT_CACHE_SIZE = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_DOCUMENT_CACHE_SIZE, SETTING_DOCUMENT_CACHE_SIZE);
+        SETTING_DOCUMENT_CACHE_BYTES = Helper.getHelper().getOptionalLong(getConfig(), CFG_PROPERTY_DOCUMENT_CACHE_BYTES, SETTING_DOCUMENT_CACHE_BYTES);
+        SETTING_DOCUMENT_CACHE_TTL = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_DOCUMENT_CACHE_TTL, SETTING_DOCUMENT_CACHE_TTL);
+        SETTING_CACHE_INVALIDATION = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_CACHE_INVALIDATION, SETTING_CACHE_INVALIDATION);
+        SETTING_CACHE_INVALIDATION_ADDRESS = Helper.getHelper().getOptionalString(getConfig(), CFG_PROPERTY_CACHE_INVALIDATION_ADDRESS, SETTING_ADDRESS + ".invalidations");
+        SETTING_REPLICATION_FOLLOWERS = Helper.getHelper().getOptionalArray(getConfig(), CFG_PROPERTY_REPLICATION_FOLLOWERS, SETTING_REPLICATION_FOLLOWERS);
+        SETTING_REPLICATION_TICK_DIR = Helper.getHelper().getOptionalString(getConfig(), CFG_PROPERTY_REPLICATION_TICK_DIR, SETTING_REPLICATION_TICK_DIR);
+        SETTING_REPLICATION_INTERVAL = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_REPLICATION_INTERVAL, SETTING_REPLICATION_INTERVAL);
+        SETTING_REPLICATION_CHUNK_SIZE = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_REPLICATION_CHUNK_SIZE, SETTING_REPLICATION_CHUNK_SIZE);
+        SETTING_CURSOR_TTL = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_CURSOR_TTL, SETTING_CURSOR_TTL);
+        SETTING_RETRIES = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_RETRIES, SETTING_RETRIES);
+        SETTING_RETRY_DELAY = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_RETRY_DELAY, SETTING_RETRY_DELAY);
+        SETTING_RETRY_MAX_DELAY = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_RETRY_MAX_DELAY, SETTING_RETRY_MAX_DELAY);
+        SETTING_RETRY_BUDGET = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_RETRY_BUDGET, SETTING_RETRY_BUDGET);
+        SETTING_HEDGING = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_HEDGING, SETTING_HEDGING);
+        SETTING_HEDGING_PERCENTILE = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_HEDGING_PERCENTILE, SETTING_HEDGING_PERCENTILE);
+        SETTING_HEDGING_MIN_DELAY = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_HEDGING_MIN_DELAY, SETTING_HEDGING_MIN_DELAY);
+        SETTING_CIRCUIT_BREAKER = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_CIRCUIT_BREAKER, SETTING_CIRCUIT_BREAKER);
+        SETTING_CIRCUIT_ERROR_RATE = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_CIRCUIT_ERROR_RATE, SETTING_CIRCUIT_ERROR_RATE);
+        SETTING_CIRCUIT_MIN_REQUESTS = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_CIRCUIT_MIN_REQUESTS, SETTING_CIRCUIT_MIN_REQUESTS);
+        SETTING_CIRCUIT_WINDOW = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_CIRCUIT_WINDOW, SETTING_CIRCUIT_WINDOW);
+        SETTING_CIRCUIT_SLOW_THRESHOLD = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_CIRCUIT_SLOW_THRESHOLD, SETTING_CIRCUIT_SLOW_THRESHOLD);
+        SETTING_CIRCUIT_OPEN_TIME = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_CIRCUIT_OPEN_TIME, SETTING_CIRCUIT_OPEN_TIME);
+        SETTING_CIRCUIT_TRIAL_REQUESTS = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_CIRCUIT_TRIAL_REQUESTS, SETTING_CIRCUIT_TRIAL_REQUESTS);
+        SETTING_METRICS = Helper.getHelper().getOptionalBoolean(getConfig(), CFG_PROPERTY_METRICS, SETTING_METRICS);
+        SETTING_METRICS_PUBLISH_INTERVAL = Helper.getHelper().getOptionalInt(getConfig(), CFG_PROPERTY_METRICS_PUBLISH_INTERVAL, SETTING_METRICS_PUBLISH_INTERVAL);
+        SETTING_METRICS_ADDRESS = Helper.getHelper().getOptionalString(getConfig(), CFG_PROPERTY_METRICS_ADDRESS, SETTING_ADDRESS + ".metrics");
+        
+        if (SETTING_BATCHING) batcher = new RequestBatcher(this, logger, SETTING_BATCHING_WINDOW, SETTING_BATCHING_SIZE);
+        if (SETTING_COALESCING) coalescer = new RequestCoalescer(logger);
+        if (SETTING_DOCUMENT_CACHE_SIZE > 0) documentCache = new DocumentCache(SETTING_DOCUMENT_CACHE_SIZE, SETTING_DOCUMENT_CACHE_BYTES, SETTING_DOCUMENT_CACHE_TTL);
+        if (SETTING_CACHE_INVALIDATION) cacheInvalidator = new CacheInvalidator(this, logger, SETTING_CACHE_INVALIDATION_ADDRESS);
+        if (SETTING_CURSOR_TTL > 0) cursorManager = new CursorManager(this, logger, SETTING_CURSOR_TTL);
+        if (SETTING_RETRIES > 0) retryPolicy = new RetryPolicy(SETTING_RETRIES, SETTING_RETRY_DELAY, SETTING_RETRY_MAX_DELAY, SETTING_RETRY_BUDGET);
+        if (SETTING_HEDGING) hedgingPolicy = new HedgingPolicy(SETTING_HEDGING_PERCENTILE, SETTING_HEDGING_MIN_DELAY);
+        if (SETTING_CIRCUIT_BREAKER) circuitBreaker = new CircuitBreaker(logger, SETTING_CIRCUIT_ERROR_RATE, SETTING_CIRCUIT_MIN_REQUESTS, SETTING_CIRCUIT_WINDOW, SETTING_CIRCUIT_SLOW_THRESHOLD, SETTING_CIRCUIT_OPEN_TIME, SETTING_CIRCUIT_TRIAL_REQUESTS);
+        if (SETTING_METRICS) metrics = new RequestMetrics(this, logger);
+        if (SETTING_MAX_IN_FLIGHT > 0 || SETTING_MAX_IN_FLIGHT_PER_HOST > 0) limiter = new RequestLimiter(this, logger, SETTING_MAX_IN_FLIGHT, SETTING_LOW_PRIORITY_SHARE, SETTING_MAX_QUEUE_SIZE, SETTING_MAX_QUEUE_WAIT);
 
         logger.trace(logPrefix + "configuration parsed successfully");
         //System.out.println("Address: " + SETTING_ADDRESS);        
     }
     
+    // creates an endpoint for each of the configured hosts, or for the single host if no list of hosts was specified
+    private void createEndpoints() {
+        List<Endpoint> endpoints = new ArrayList<>();
+        if (SETTING_HOSTS != null && SETTING_HOSTS.size() > 0) {
+            for (Object oHost : SETTING_HOSTS) {
+                String hostname;
+                int port = SETTING_PORT;
+                if (oHost instanceof JsonObject) {
+                    // e.g. { "host": "coordinator1", "port": 8529 }
+                    hostname = Helper.getHelper().getOptionalString((JsonObject) oHost, CFG_PROPERTY_HOSTNAME, SETTING_HOSTNAME);
+                    port = Helper.getHelper().getOptionalInt((JsonObject) oHost, CFG_PROPERTY_PORT, SETTING_PORT);
+                }
+                else {
+                    // e.g. "coordinator1:8529"
+                    hostname = oHost.toString();
+                    int separator = hostname.lastIndexOf(':');
+                    if (separator > 0) {
+                        port = Integer.parseInt(hostname.substring(separator + 1));
+                        hostname = hostname.substring(0, separator);
+                    }
+                }
+                endpoints.add(createEndpoint(hostname, port));
+            }
+        }
+        else {
+            endpoints.add(createEndpoint(SETTING_HOSTNAME, SETTING_PORT));
+        }
+        
+        logger.info(logPrefix + "using endpoints " + endpoints + " (" + SETTING_LOAD_BALANCING + ")");
+        loadBalancer = new LoadBalancer(endpoints, SETTING_LOAD_BALANCING);
+        loadBalancer.setMaxInFlight(SETTING_MAX_IN_FLIGHT_PER_HOST);
+        loadBalancer.setCircuitBreaker(circuitBreaker);
+        if (circuitBreaker != null) {
+            circuitBreaker.setStateHandler(new Handler<Void>() {
+                @Override
+                public void handle(Void event) {
+                    capacityChanged();
+                }
+            });
+        }
+        
+        if (SETTING_HEALTH_CHECK_INTERVAL > 0) {
+            healthChecker = new HealthChecker(this, logger, SETTING_HEALTH_CHECK_INTERVAL, SETTING_HEALTH_CHECK_TIMEOUT, SETTING_HEALTH_CHECK_FAILURES);
+            healthChecker.start();
+        }
+        
+        if (SETTING_DISCOVERY_INTERVAL > 0) {
+            discovery = new EndpointDiscovery(this, logger, SETTING_DISCOVERY_INTERVAL, SETTING_HEALTH_CHECK_TIMEOUT);
+            discovery.start();
+        }
+    }
+    
+    /**
+     * Creates a new endpoint for the specified server
+     * 
+     * @param hostname the hostname of the server
+     * @param port the port on which the server is listening
+     * @return the new endpoint
+     */
+    public Endpoint createEndpoint(String hostname, int port) {
+        return new Endpoint(hostname, port, getClient(hostname, port));
+    }
+    
+    /**
+     * Returns the endpoint to which the next request should be sent, as chosen by the load balancer
+     * 
+     * @return the endpoint for the next request
+     */
+    public synchronized Endpoint getEndpoint() {
+        return loadBalancer.select();
+    }
+    
+    /**
+     * Returns another endpoint than the specified one, e.g. to send the same request to a second endpoint
+     * 
+     * @param excluded the endpoint that shouldn't be returned
+     * @return the endpoint for the next request, or null if there's no other healthy endpoint
+     */
+    public synchronized Endpoint getEndpoint(Endpoint excluded) {
+        return loadBalancer.select(excluded);
+    }
+    
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    /**
+     * @return the coalescer for identical read requests, or null if coalescing is disabled
+     */
+    public RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * @return the document cache, or null if caching is disabled
+     */
+    public DocumentCache getDocumentCache() {
+        return documentCache;
+    }
+
+    /**
+     * @return the invalidator that keeps the caches of multiple instances consistent, or null if it's disabled
+     */
+    public CacheInvalidator getCacheInvalidator() {
+        return cacheInvalidator;
+    }
+
+    /**
+     * @return the manager of the cursors created through this instance, or null if cursors aren't tracked
+     */
+    public CursorManager getCursorManager() {
+        return cursorManager;
+    }
+
+    /**
+     * @return the policy for retrying failed requests, or null if requests aren't retried
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return the policy for sending reads to a second endpoint, or null if hedging is disabled
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * @return the circuit breaker for failing endpoints and databases, or null if it's disabled
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the limiter for the number of requests being processed, or null if the number of requests isn't limited
+     */
+    public RequestLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @return the endpoints on which the cursors and jobs were created
+     */
+    public EndpointAffinity getAffinity() {
+        return affinity;
+    }
+
+    /**
+     * @return the latency and throughput metrics of the requests, or null if metrics are disabled
+     */
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Reports a request to the specified endpoint that failed without a response
+     * 
+     * @param endpoint the endpoint to which the request was sent
+     * @param cause the reason of the failure
+     */
+    public void endpointFailed(Endpoint endpoint, Throwable cause) {
+        if (healthChecker != null) healthChecker.failed(endpoint, cause);
+    }
+    
+    /**
+     * Lets the waiting requests know that an endpoint was added, became available or unavailable, or that its circuit changed state
+     */
+    public void capacityChanged() {
+        if (limiter == null) return;
+        
+        // the change usually happens while a request is being sent or answered, so the waiting requests are processed afterwards
+        vertx.runOnContext(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                limiter.capacityChanged();
+            }
+        });
+    }
+    
     public synchronized HttpClient getClient() {
         return getClient(SETTING_HOSTNAME, SETTING_PORT);
     }
@@ -197,23 +572,7 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
         
         HttpClient client = clients.get(hostname + ":" + port);
         if (client == null) {
-            client = vertx.createHttpClient();
-            client.setSSL(SETTING_SSL);
-            client.setTrustAll(SETTING_SSL_TRUSTALL);
-            if (client.isSSL()) client.setVerifyHost(SETTING_SSL_VERIFYHOST);
-            client.setHost(hostname);
-            client.setPort(port);
-            client.setKeepAlive(SETTING_KEEPALIVE);
-            if (SETTING_SSL_TRUSTSTORE != null) client.setTrustStorePath(SETTING_SSL_TRUSTSTORE);
-            if (SETTING_SSL_TRUSTSTORE_PASSWORD != null) client.setTrustStorePassword(SETTING_SSL_TRUSTSTORE_PASSWORD);
-            if (SETTING_SSL_KEYSTORE != null) client.setKeyStorePath(SETTING_SSL_KEYSTORE);
-            if (SETTING_SSL_KEYSTORE_PASSWORD != null) client.setKeyStorePassword(SETTING_SSL_KEYSTORE_PASSWORD);
-            client.setMaxPoolSize(SETTING_MAXPOOLSIZE);
-            client.setConnectTimeout(SETTING_CONNECT_TIMEOUT);
-            client.setReuseAddress(SETTING_REUSE_ADDRESS);
-            client.setTCPKeepAlive(SETTING_TCP_KEEPALIVE);
-            client.setTCPNoDelay(SETTING_TCP_NODELAY);
-            client.setTryUseCompression(SETTING_COMPRESSION);
+            client = createClient(hostname, port);
             
             // Keep reference
             clients.put(hostname + ":" + port, client);
@@ -221,6 +580,46 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
         
         return client;
     }
+    
+    /**
+     * Creates a new client for the specified server, which isn't shared with the regular requests
+     * 
+     * @param hostname the hostname of the server
+     * @param port the port on which the server is listening
+     * @return the new client, configured like the shared clients
+     */
+    public synchronized HttpClient createClient(String hostname, int port) {
+        HttpClient client = vertx.createHttpClient();
+        client.setSSL(SETTING_SSL);
+        client.setTrustAll(SETTING_SSL_TRUSTALL);
+        if (client.isSSL()) client.setVerifyHost(SETTING_SSL_VERIFYHOST);
+        client.setHost(hostname);
+        client.setPort(port);
+        client.setKeepAlive(SETTING_KEEPALIVE);
+        if (SETTING_SSL_TRUSTSTORE != null) client.setTrustStorePath(SETTING_SSL_TRUSTSTORE);
+        if (SETTING_SSL_TRUSTSTORE_PASSWORD != null) client.setTrustStorePassword(SETTING_SSL_TRUSTSTORE_PASSWORD);
+        if (SETTING_SSL_KEYSTORE != null) client.setKeyStorePath(SETTING_SSL_KEYSTORE);
+        if (SETTING_SSL_KEYSTORE_PASSWORD != null) client.setKeyStorePassword(SETTING_SSL_KEYSTORE_PASSWORD);
+        client.setMaxPoolSize(SETTING_MAXPOOLSIZE);
+        client.setConnectTimeout(SETTING_CONNECT_TIMEOUT);
+        client.setReuseAddress(SETTING_REUSE_ADDRESS);
+        client.setTCPKeepAlive(SETTING_TCP_KEEPALIVE);
+        client.setTCPNoDelay(SETTING_TCP_NODELAY);
+        client.setTryUseCompression(SETTING_COMPRESSION);
+        
+        return client;
+    }
+
+    /**
+     * Closes the client of the specified server, e.g. because the server has been removed from the cluster
+     * 
+     * @param hostname the hostname of the server
+     * @param port the port on which the server is listening
+     */
+    public synchronized void closeClient(String hostname, int port) {
+        HttpClient client = clients.remove(hostname + ":" + port);
+        if (client != null) client.close();
+    }
 
     public synchronized String getCredentials() {
         return getCredentials(SETTING_HOSTNAME, SETTING_PORT, SETTING_USERNAME, SETTING_PASSWORD);
@@ -257,6 +656,7 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
         };
 
         vertx.eventBus().registerHandler(SETTING_ADDRESS, this, registrationHandler);
+        if (cacheInvalidator != null) cacheInvalidator.start();
     }
     
     @Override
@@ -268,92 +668,118 @@ public class ArangoPersistor extends Verticle implements Handler<Message<JsonObj
         if (type == null) return;        
         logger.trace(logPrefix + "type of request: " + type);
         
-        AbstractRestAPI api = null;
-
+        // wait for a free slot if the number of concurrent requests is limited
+        if (limiter != null) {
+            String priority = getPriority(type, msg);
+            if (priority == null) return;
+            limiter.submit(type, priority, msg);
+        }
+        else {
+            dispatch(type, msg);
+        }
+    }
+    
+    // determines the priority of the request: explicitly specified, configured for the action or type, or normal
+    private String getPriority(String type, Message<JsonObject> msg) {
+        String priority = Helper.getHelper().getOptionalString(msg.body(), MSG_PROPERTY_PRIORITY);
+        if (priority == null) {
+            String action = msg.body().getString(AbstractRestAPI.MSG_PROPERTY_ACTION);
+            if (action != null) priority = SETTING_PRIORITIES.getString(type + "." + action);
+            if (priority == null) priority = SETTING_PRIORITIES.getString(type, RequestLimiter.PRIORITY_NORMAL);
+        }
+        
+        if (!RequestLimiter.PRIORITIES.contains(priority)) {
+            logger.info(logPrefix + "invalid priority specified (" + priority + ")");
+            Helper.getHelper().sendError(msg, "invalid priority specified (" + priority + ")");
+            return null;
+        }
+        
+        return priority;
+    }
+    
+    /**
+     * Hands the request to the API responsible for the specified type
+     * 
+     * @param type the type of the request
+     * @param msg the Vertx Message object containing the request
+     */
+    public void dispatch(String type, Message<JsonObject> msg) {
+        // collect document operations in a batch if automatic batching is enabled
+        if (batcher != null && isBatchable(type)) {
+            batcher.add(type, msg);
+            return;
+        }
+        
+        AbstractRestAPI api = getAPI(type, msg);
+        
+        // If the request was valid, then handle it
+        if (api != null) {
+            api.processRequest(msg);
+        }
+    }
+    
+    private boolean isBatchable(String type) {
         switch (type) {
-            case MSG_TYPE_GENERIC:
-                if (!SETTING_GENERIC) {
-                    logger.warn(logPrefix + "The generic API is currently disabled");
-                    Helper.getHelper().sendError(msg, "The generic API is currently disabled");
-                    return;
-                }
-                api = new GenericAPI(logger, this);
-                break;
-            case MSG_TYPE_DATABASE:
-                api = new DatabaseAPI(logger, this);
-                break;
             case MSG_TYPE_DOCUMENT:
-                api = new DocumentAPI(logger, this);
-                break;                
             case MSG_TYPE_EDGE:
-                api = new EdgeAPI(logger, this);
-                break;
-            case MSG_TYPE_AQL:
-                api = new AqlAPI(logger, this);
-                break;
-            case MSG_TYPE_AQL_USER:
-                //api = new AqlUserAPI(logger, this);
-                break;
-            case MSG_TYPE_SIMPLE_QUERY:
-                api = new SimpleQueryAPI(logger, this);
-                break;                
-            case MSG_TYPE_COLLECTION:
-                api = new CollectionAPI(logger, this);
-                break;
-            case MSG_TYPE_INDEX:
-                api = new IndexAPI(logger, this);
-                break;
-            case MSG_TYPE_TRANSACTION:
-                api = new TransactionAPI(logger, this);
-                break;                
-            case MSG_TYPE_GRAPH:
-                api = new GraphAPI(logger, this);
-                break;
             case MSG_TYPE_GHARIAL:
-                api = new GharialAPI(logger, this);
-                break;
-            case MSG_TYPE_TRAVERSAL:
-                api = new TraversalAPI(logger, this);
-                break;
-            case MSG_TYPE_REPLICATION:
-                //api = new ReplicationAPI(logger, this);
-                break;                
-            case MSG_TYPE_IMPORT:
-                //api = new ImportAPI(logger, this);
-                break;
-            case MSG_TYPE_BATCH:
-                //api = new BatchAPI(logger, this);
-                break;
-            case MSG_TYPE_ADMIN:
-                //api = new AdminAPI(logger, this);
-                break;                
-            case MSG_TYPE_USER:
-                //api = new UserAPI(logger, this);
-                break;
-            case MSG_TYPE_ASYNC:
-                //api = new AsyncAPI(logger, this);
-                break;
-            case MSG_TYPE_ENDPOINT:
-                //api = new EndpointAPI(logger, this);
-                break;                
-            case MSG_TYPE_SHARDING:
-                //api = new ShardingAPI(logger, this);
-                break;
-            case MSG_TYPE_MISC:
-                //api = new MiscAPI(logger, this);
-                break;
+                return true;
                 
             default:
-                logger.warn(logPrefix + "invalid request type, ignoring (" + type + ")");
-                Helper.getHelper().sendError(msg, "invalid type specified (" + type + ")");
-                return;
+                return false;
         }
+    }
+    
+    // creates the API's once, they don't hold any request specific state so they can be shared by all requests
+    private void registerAPIs() {
+        apis.put(MSG_TYPE_GENERIC, new GenericAPI(logger, this));
+        apis.put(MSG_TYPE_DATABASE, new DatabaseAPI(logger, this));
+        apis.put(MSG_TYPE_DOCUMENT, new DocumentAPI(logger, this));
+        apis.put(MSG_TYPE_EDGE, new EdgeAPI(logger, this));
+        apis.put(MSG_TYPE_AQL, new AqlAPI(logger, this));
+        //apis.put(MSG_TYPE_AQL_USER, new AqlUserAPI(logger, this));
+        apis.put(MSG_TYPE_SIMPLE_QUERY, new SimpleQueryAPI(logger, this));
+        apis.put(MSG_TYPE_COLLECTION, new CollectionAPI(logger, this));
+        apis.put(MSG_TYPE_INDEX, new IndexAPI(logger, this));
+        apis.put(MSG_TYPE_TRANSACTION, new TransactionAPI(logger, this));
+        apis.put(MSG_TYPE_GRAPH, new GraphAPI(logger, this));
+        apis.put(MSG_TYPE_GHARIAL, new GharialAPI(logger, this));
+        apis.put(MSG_TYPE_TRAVERSAL, new TraversalAPI(logger, this));
+        apis.put(MSG_TYPE_REPLICATION, new ReplicationAPI(logger, this));
+        apis.put(MSG_TYPE_IMPORT, new ImportAPI(logger, this));
+        apis.put(MSG_TYPE_BATCH, new BatchAPI(logger, this));
+        //apis.put(MSG_TYPE_ADMIN, new AdminAPI(logger, this));
+        //apis.put(MSG_TYPE_USER, new UserAPI(logger, this));
+        apis.put(MSG_TYPE_ASYNC, new AsyncAPI(logger, this));
+        apis.put(MSG_TYPE_ENDPOINT, new EndpointAPI(logger, this));
+        apis.put(MSG_TYPE_METRICS, new MetricsAPI(logger, this));
+        //apis.put(MSG_TYPE_SHARDING, new ShardingAPI(logger, this));
+        //apis.put(MSG_TYPE_MISC, new MiscAPI(logger, this));
+    }
+    
+    /**
+     * Returns the API that should handle the specified type of request
+     * 
+     * @param type the type of request
+     * @param msg the Vertx Message object to which an error message can be send if the type is invalid
+     * @return the API for the type of request or null if no (enabled) API is available for that type
+     */
+    public AbstractRestAPI getAPI(String type, Message<JsonObject> msg) {
+        AbstractRestAPI api = apis.get(type);
         
-        // If the request was valid, then handle it
-        if (api != null) {
-            api.processRequest(msg);
+        if (api == null) {
+            logger.warn(logPrefix + "invalid request type, ignoring (" + type + ")");
+            Helper.getHelper().sendError(msg, "invalid type specified (" + type + ")");
+            return null;
         }
-
+        
+        if (!SETTING_GENERIC && type.equals(MSG_TYPE_GENERIC)) {
+            logger.warn(logPrefix + "The generic API is currently disabled");
+            Helper.getHelper().sendError(msg, "The generic API is currently disabled");
+            return null;
+        }
+        
+        return api;
     }
     
     public JsonObject getConfig() {
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.UUID;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * Keeps the document caches of multiple persistor instances consistent.
+ * Every modification made through one instance is published on the eventbus (which spans all nodes in a clustered deployment),
+ * and the other instances remove the affected documents from their own cache.
+ *
+ * @author sANTo
+ */
+public class CacheInvalidator {
+    
+    public static final String MSG_PROPERTY_INSTANCE = "instance";
+    public static final String MSG_PROPERTY_DATABASE = "database";
+    public static final String MSG_PROPERTY_DOCUMENT = "document";
+    public static final String MSG_PROPERTY_COLLECTION = "collection";
+    
+    private final ArangoPersistor persistor;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final String address;
+    private final String instanceId = UUID.randomUUID().toString();
+    private Handler<Message<JsonObject>> handler = null;
+
+    /**
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     * @param address the eventbus address on which invalidations are published
+     */
+    public CacheInvalidator(ArangoPersistor persistor, Logger logger, String address) {
+        this.persistor = persistor;
+        this.logger = logger;
+        this.address = address;
+    }
+    
+    /**
+     * Starts listening for invalidations of other instances, only required if this instance has a document cache itself
+     */
+    public void start() {
+        final DocumentCache cache = persistor.getDocumentCache();
+        if (cache == null || handler != null) return;
+        
+        handler = new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> msg) {
+                JsonObject invalidation = msg.body();
+                
+                // our own modifications have been invalidated already
+                if (instanceId.equals(invalidation.getString(MSG_PROPERTY_INSTANCE))) return;
+                
+                String dbName = invalidation.getString(MSG_PROPERTY_DATABASE);
+                if (invalidation.containsField(MSG_PROPERTY_COLLECTION)) cache.invalidateCollection(dbName, invalidation.getString(MSG_PROPERTY_COLLECTION));
+                else if (invalidation.containsField(MSG_PROPERTY_DOCUMENT)) cache.invalidate(dbName, invalidation.getString(MSG_PROPERTY_DOCUMENT));
+            }
+        };
+        persistor.getVertx().eventBus().registerHandler(address, handler);
+        logger.info(logPrefix + "listening for cache invalidations on " + address);
+    }
+    
+    public void stop() {
+        if (handler != null) persistor.getVertx().eventBus().unregisterHandler(address, handler);
+        handler = null;
+    }
+    
+    /**
+     * Notifies the other instances that the document was modified
+     * 
+     * @param dbName the database of the document
+     * @param handle the document handle (collection/key)
+     */
+    public void publishDocument(String dbName, String handle) {
+        publish(new JsonObject().putString(MSG_PROPERTY_DATABASE, dbName).putString(MSG_PROPERTY_DOCUMENT, handle));
+    }
+    
+    /**
+     * Notifies the other instances that all documents of the collection may have been modified
+     * 
+     * @param dbName the database of the collection
+     * @param collection the name of the collection
+     */
+    public void publishCollection(String dbName, String collection) {
+        publish(new JsonObject().putString(MSG_PROPERTY_DATABASE, dbName).putString(MSG_PROPERTY_COLLECTION, collection));
+    }
+    
+    private void publish(JsonObject invalidation) {
+        invalidation.putString(MSG_PROPERTY_INSTANCE, instanceId);
+        persistor.getVertx().eventBus().publish(address, invalidation);
+    }
+    
+}
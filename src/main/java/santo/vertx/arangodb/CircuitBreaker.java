@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * Stops sending requests to an endpoint or database that keeps failing, so the requests fail immediately instead of adding to
+ * the load of a struggling server and occupying connections that healthy endpoints could use.
+ * <p>
+ * Each endpoint and each database has its own circuit, which is closed as long as requests succeed. A circuit opens when the share
+ * of failed requests (a 5xx response or, if a latency threshold is set, a slow response) during a time window reaches the error rate.
+ * Requests without a response (e.g. connection refused or timeout) only count for the endpoint, since they don't tell anything about
+ * the database. While a circuit is open, requests are rejected right away and the load balancer avoids the endpoint. Once the open
+ * time has passed, the circuit becomes half-open and lets a few trial requests through: if they all succeed the circuit closes again,
+ * if one of them fails it opens again.
+ *
+ * @author sANTo
+ */
+public class CircuitBreaker {
+    
+    public static final String STATE_CLOSED = "closed";
+    public static final String STATE_OPEN = "open";
+    public static final String STATE_HALF_OPEN = "half-open";
+    
+    private static final String PREFIX_ENDPOINT = "endpoint:";
+    private static final String PREFIX_DATABASE = "database:";
+    
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final int errorRate;
+    private final int minRequests;
+    private final long window;
+    private final long slowThreshold;
+    private final long openTime;
+    private final int trialRequests;
+    
+    private final Map<String, Circuit> circuits = new HashMap<>();
+    private long rejected = 0;
+    private Handler<Void> stateHandler = null;
+
+    /**
+     * @param logger the logger to use
+     * @param errorRate the percentage of failed requests at which a circuit opens
+     * @param minRequests the minimum number of requests during the window before a circuit can open
+     * @param window the time (in ms) during which the requests are counted
+     * @param slowThreshold the time (in ms) after which a response counts as failed, 0 means latency isn't taken into account
+     * @param openTime the time (in ms) a circuit stays open before trial requests are let through
+     * @param trialRequests the number of trial requests that should succeed before a circuit closes again
+     */
+    public CircuitBreaker(Logger logger, int errorRate, int minRequests, long window, long slowThreshold, long openTime, int trialRequests) {
+        this.logger = logger;
+        this.errorRate = errorRate;
+        this.minRequests = Math.max(minRequests, 1);
+        this.window = window;
+        this.slowThreshold = slowThreshold;
+        this.openTime = openTime;
+        this.trialRequests = Math.max(trialRequests, 1);
+    }
+    
+    /**
+     * Checks whether a request to the endpoint and database can be sent, and registers it if it can
+     * 
+     * @param endpoint the endpoint to which the request would be sent
+     * @param dbName the database of the request
+     * @return true if the request can be sent, false if one of the circuits is open
+     */
+    public boolean allowRequest(Endpoint endpoint, String dbName) {
+        Circuit endpointCircuit = getCircuit(PREFIX_ENDPOINT + endpoint.getAddress());
+        Circuit databaseCircuit = getCircuit(PREFIX_DATABASE + dbName);
+        
+        // both circuits should allow the request before either of them counts it as a trial
+        long now = System.currentTimeMillis();
+        if (!endpointCircuit.isAllowed(now) || !databaseCircuit.isAllowed(now)) {
+            rejected++;
+            return false;
+        }
+        
+        endpointCircuit.requestStarted();
+        databaseCircuit.requestStarted();
+        return true;
+    }
+    
+    /**
+     * Checks whether the circuit of the endpoint rejects requests, without registering a request
+     * 
+     * @param endpoint the endpoint to check
+     * @return true if a request to the endpoint would be rejected right now
+     */
+    public boolean isOpen(Endpoint endpoint) {
+        Circuit circuit = circuits.get(PREFIX_ENDPOINT + endpoint.getAddress());
+        return circuit != null && circuit.isRejecting(System.currentTimeMillis());
+    }
+    
+    /**
+     * Registers the response of a request that was allowed
+     * 
+     * @param endpoint the endpoint to which the request was sent
+     * @param dbName the database of the request
+     * @param success whether the response doesn't indicate a server error
+     * @param latency the time (in ms) it took to get the response
+     */
+    public void record(Endpoint endpoint, String dbName, boolean success, long latency) {
+        boolean failed = !success || (slowThreshold > 0 && latency > slowThreshold);
+        long now = System.currentTimeMillis();
+        getCircuit(PREFIX_ENDPOINT + endpoint.getAddress()).record(failed, now);
+        getCircuit(PREFIX_DATABASE + dbName).record(failed, now);
+    }
+    
+    /**
+     * Registers a request that was allowed, but failed without a response (e.g. connection refused or timeout).
+     * This only counts as a failure of the endpoint, the database circuit just forgets about the request.
+     * 
+     * @param endpoint the endpoint to which the request was sent
+     * @param dbName the database of the request
+     */
+    public void recordFailure(Endpoint endpoint, String dbName) {
+        getCircuit(PREFIX_ENDPOINT + endpoint.getAddress()).record(true, System.currentTimeMillis());
+        getCircuit(PREFIX_DATABASE + dbName).requestCancelled();
+    }
+    
+    private Circuit getCircuit(String name) {
+        Circuit circuit = circuits.get(name);
+        if (circuit == null) {
+            circuit = new Circuit(name);
+            circuits.put(name, circuit);
+        }
+        
+        return circuit;
+    }
+
+    /**
+     * @return the number of requests that were rejected because a circuit was open
+     */
+    public long getRejected() {
+        return rejected;
+    }
+    
+    /**
+     * @param stateHandler the handler that is notified whenever a circuit opens, becomes half-open or closes
+     */
+    public void setStateHandler(Handler<Void> stateHandler) {
+        this.stateHandler = stateHandler;
+    }
+    
+    /**
+     * @return the state of each circuit, and the number of requests that were rejected
+     */
+    public JsonObject toJson() {
+        JsonObject endpoints = new JsonObject();
+        JsonObject databases = new JsonObject();
+        for (Circuit circuit : circuits.values()) {
+            JsonObject info = new JsonObject();
+            info.putString("state", circuit.state);
+            info.putNumber("requests", circuit.requests);
+            info.putNumber("failures", circuit.failures);
+            if (circuit.name.startsWith(PREFIX_ENDPOINT)) endpoints.putObject(circuit.name.substring(PREFIX_ENDPOINT.length()), info);
+            else databases.putObject(circuit.name.substring(PREFIX_DATABASE.length()), info);
+        }
+        
+        JsonObject stats = new JsonObject();
+        stats.putObject("endpoints", endpoints);
+        stats.putObject("databases", databases);
+        stats.putNumber("rejected", rejected);
+        
+        return stats;
+    }
+    
+    private class Circuit {
+        private final String name;
+        private String state = STATE_CLOSED;
+        private long windowStart = System.currentTimeMillis();
+        private int requests = 0;
+        private int failures = 0;
+        private long openedAt = 0;
+        private int trials = 0;
+        private int succeededTrials = 0;
+        
+        private Circuit(String name) {
+            this.name = name;
+        }
+        
+        private boolean isAllowed(long now) {
+            switch (state) {
+                case STATE_OPEN:
+                    if (now - openedAt < openTime) return false;
+                    changeState(STATE_HALF_OPEN, now);
+                    return true;
+                case STATE_HALF_OPEN:
+                    return trials < trialRequests;
+                    
+                default:
+                    return true;
+            }
+        }
+        
+        // doesn't change the state, unlike isAllowed
+        private boolean isRejecting(long now) {
+            switch (state) {
+                case STATE_OPEN:
+                    return now - openedAt < openTime;
+                case STATE_HALF_OPEN:
+                    return trials >= trialRequests;
+                    
+                default:
+                    return false;
+            }
+        }
+        
+        private void requestStarted() {
+            if (STATE_HALF_OPEN.equals(state)) trials++;
+        }
+        
+        // a trial request without an outcome makes room for another one
+        private void requestCancelled() {
+            if (STATE_HALF_OPEN.equals(state) && trials > 0) trials--;
+        }
+        
+        private void record(boolean failed, long now) {
+            switch (state) {
+                case STATE_HALF_OPEN:
+                    if (failed) changeState(STATE_OPEN, now);
+                    else if (++succeededTrials >= trialRequests) changeState(STATE_CLOSED, now);
+                    break;
+                case STATE_CLOSED:
+                    // the requests are counted per window, starting over once it has passed
+                    if (now - windowStart > window) {
+                        windowStart = now;
+                        requests = 0;
+                        failures = 0;
+                    }
+                    requests++;
+                    if (failed) failures++;
+                    if (requests >= minRequests && failures * 100 >= errorRate * requests) changeState(STATE_OPEN, now);
+                    break;
+                    
+                default:
+                    // requests that were sent before the circuit opened don't change anything anymore
+            }
+        }
+        
+        private void changeState(String newState, long now) {
+            if (STATE_OPEN.equals(newState) && STATE_HALF_OPEN.equals(state)) logger.warn(logPrefix + "reopening circuit for " + name + ", trial request failed");
+            else if (STATE_OPEN.equals(newState)) logger.warn(logPrefix + "opening circuit for " + name + " (" + failures + " of " + requests + " requests failed)");
+            else if (STATE_CLOSED.equals(newState)) logger.info(logPrefix + "closing circuit for " + name);
+            
+            state = newState;
+            openedAt = now;
+            windowStart = now;
+            requests = 0;
+            failures = 0;
+            trials = 0;
+            succeededTrials = 0;
+            
+            if (stateHandler != null) stateHandler.handle(null);
+        }
+    }
+    
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.rest.AbstractRestAPI;
+import santo.vertx.arangodb.rest.AqlAPI;
+
+/**
+ * Keeps track of the cursors that are created through this instance and deletes the ones that haven't been used for a while.
+ * Clients that crash or don't read a cursor until the end would otherwise leave it on the server until the server expires it,
+ * which keeps the memory of the database occupied. Cursors that had to be deleted this way are counted as leaked.
+ *
+ * @author sANTo
+ */
+public class CursorManager {
+    
+    private final ArangoPersistor persistor;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final long ttl;
+    private final Map<String, Cursor> cursors = new HashMap<>();
+    private AqlAPI api = null;
+    private long timerId = -1;
+    private long leaked = 0;
+
+    /**
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     * @param ttl the time (in ms) a cursor can remain unused before it's deleted
+     */
+    public CursorManager(ArangoPersistor persistor, Logger logger, long ttl) {
+        this.persistor = persistor;
+        this.logger = logger;
+        this.ttl = ttl;
+    }
+    
+    /**
+     * Starts checking for idle cursors periodically
+     * 
+     * @param api the AQL API used to delete idle cursors
+     */
+    public void start(AqlAPI api) {
+        this.api = api;
+        if (timerId >= 0) return;
+        
+        timerId = persistor.getVertx().setPeriodic(Math.max(ttl / 2, 1), new Handler<Long>() {
+            @Override
+            public void handle(Long event) {
+                reap();
+            }
+        });
+    }
+    
+    public void stop() {
+        if (timerId >= 0) persistor.getVertx().cancelTimer(timerId);
+        timerId = -1;
+    }
+    
+    /**
+     * Registers the cursor that the request will create or read from, once its reply is received.
+     * The cursor is forgotten again as soon as it's exhausted.
+     * 
+     * @param dbName the database in which the cursor is created
+     * @param client optional identifier of the client that creates the cursor, as supplied by the client itself
+     * @param msg the Vertx Message object containing the request that creates or reads the cursor
+     * @return the message to use for performing the request
+     */
+    public Message<JsonObject> track(final String dbName, final String client, final Message<JsonObject> msg) {
+        return new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                JsonObject result = Helper.getHelper().isSuccess(reply) ? reply.getObject(Helper.PROPERTY_MSG_RESULT) : null;
+                String id = result != null ? result.getString(AbstractRestAPI.MSG_PROPERTY_ID) : msg.body().getString(AbstractRestAPI.MSG_PROPERTY_ID);
+                if (id != null) {
+                    if (result != null && result.getBoolean("hasMore", false)) touch(dbName, id, client);
+                    else release(dbName, id);
+                }
+                
+                msg.reply(reply);
+            }
+        });
+    }
+    
+    /**
+     * Forgets the cursor, e.g. because it was deleted
+     * 
+     * @param dbName the database of the cursor
+     * @param id the identifier of the cursor
+     */
+    public void release(String dbName, String id) {
+        cursors.remove(getKey(dbName, id));
+    }
+    
+    private void touch(String dbName, String id, String client) {
+        String key = getKey(dbName, id);
+        Cursor cursor = cursors.get(key);
+        if (cursor == null) {
+            cursor = new Cursor(dbName, id, client);
+            cursors.put(key, cursor);
+        }
+        cursor.lastAccess = System.currentTimeMillis();
+    }
+    
+    // deletes the cursors that haven't been used during the ttl
+    private void reap() {
+        long now = System.currentTimeMillis();
+        List<Cursor> idle = new ArrayList<>();
+        for (Cursor cursor : cursors.values()) {
+            if (now - cursor.lastAccess > ttl) idle.add(cursor);
+        }
+        
+        for (Cursor cursor : idle) {
+            release(cursor.dbName, cursor.id);
+            leaked++;
+            logger.warn(logPrefix + "deleting cursor " + cursor.id + " created by " + (cursor.client != null ? cursor.client : "an unknown client") + ", unused for " + (now - cursor.lastAccess) + " ms");
+            
+            JsonObject request = new JsonObject();
+            request.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_AQL);
+            request.putString(AbstractRestAPI.MSG_PROPERTY_ACTION, AqlAPI.MSG_ACTION_DELETE);
+            request.putString(AbstractRestAPI.MSG_PROPERTY_ID, cursor.id);
+            if (cursor.dbName != null) request.putString(AbstractRestAPI.MSG_PROPERTY_DATABASE, cursor.dbName);
+            if (api != null) api.processRequest(new InternalMessage(null, request));
+        }
+    }
+    
+    private String getKey(String dbName, String id) {
+        return (dbName != null ? dbName : "") + "/" + id;
+    }
+    
+    public int getOpen() {
+        return cursors.size();
+    }
+    
+    public long getLeaked() {
+        return leaked;
+    }
+    
+    /**
+     * @return the number of open and leaked cursors, and the details of each open cursor
+     */
+    public JsonObject toJson() {
+        long now = System.currentTimeMillis();
+        JsonArray open = new JsonArray();
+        for (Cursor cursor : cursors.values()) {
+            JsonObject info = new JsonObject();
+            info.putString("id", cursor.id);
+            info.putString("database", cursor.dbName);
+            info.putString("client", cursor.client);
+            info.putNumber("lastAccess", cursor.lastAccess);
+            info.putNumber("idle", now - cursor.lastAccess);
+            open.addObject(info);
+        }
+        
+        JsonObject stats = new JsonObject();
+        stats.putNumber("open", cursors.size());
+        stats.putNumber("leaked", leaked);
+        stats.putNumber("ttl", ttl);
+        stats.putArray("cursors", open);
+        
+        return stats;
+    }
+    
+    private static class Cursor {
+        private final String dbName;
+        private final String id;
+        private final String client;
+        private long lastAccess;
+        
+        private Cursor(String dbName, String id, String client) {
+            this.dbName = dbName;
+            this.id = id;
+            this.client = client;
+        }
+    }
+    
+}
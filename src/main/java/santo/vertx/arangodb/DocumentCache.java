@@ -0,0 +1,353 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * An in-memory cache of recently read documents, bounded by the number of entries and their total size.
+ * The least recently used documents are evicted first.
+ * <p>
+ * A document can be cached in several variants (e.g. as a plain document and as a vertex of a graph), which are invalidated together.
+ * Entries keep the revision of the document, so they can be revalidated with an If-None-Match request that doesn't transfer the document
+ * again when it wasn't modified.
+ * <p>
+ * Documents that are modified by a request that is executed asynchronously on the server aren't cached until the job is done, since the
+ * old revision can still be read in the meantime.
+ *
+ * @author sANTo
+ */
+public class DocumentCache {
+    
+    public static final String VARIANT_DOCUMENT = "";
+    
+    // the time (in ms) after which an async modification is assumed to be applied when the result of its job isn't fetched
+    public static final long PENDING_WRITE_TIMEOUT = 60000;
+    
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttl;
+    
+    // the cached variants per document, in order of use
+    private final LinkedHashMap<String, Map<String, Entry>> documents = new LinkedHashMap<>(16, 0.75f, true);
+    private int entries = 0;
+    private long bytes = 0;
+    
+    // the async modifications whose jobs aren't known to be done yet
+    private final List<PendingWrite> pendingWrites = new LinkedList<>();
+    
+    private long hits = 0;
+    private long revalidations = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxEntries the maximum number of cached entries
+     * @param maxBytes the maximum total size (in bytes) of the cached entries
+     * @param ttl the time (in ms) an entry can be used without revalidating it, 0 means it's always revalidated
+     */
+    public DocumentCache(int maxEntries, long maxBytes, long ttl) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+    }
+    
+    /**
+     * @param dbName the database of the document
+     * @param handle the document handle (collection/key)
+     * @param variant the variant of the document
+     * @return the cached entry or null if the document isn't cached
+     */
+    public Entry get(String dbName, String handle, String variant) {
+        Map<String, Entry> variants = documents.get(getKey(dbName, handle));
+        Entry entry = variants != null ? variants.get(variant) : null;
+        
+        if (entry == null) misses++;
+        else if (entry.isFresh()) hits++;
+        else revalidations++;
+        
+        return entry;
+    }
+    
+    /**
+     * Caches the successful reply to a read request
+     * 
+     * @param dbName the database of the document
+     * @param handle the document handle (collection/key)
+     * @param variant the variant of the document
+     * @param reply the reply to cache
+     */
+    public void put(String dbName, String handle, String variant, JsonObject reply) {
+        if (isPending(dbName, handle)) return;
+        
+        String revision = getRevision(reply);
+        if (revision == null) return;
+        
+        Entry entry = new Entry(reply.copy(), revision, reply.encode().getBytes(StandardCharsets.UTF_8).length);
+        if (entry.size > maxBytes) return;
+        
+        String key = getKey(dbName, handle);
+        Map<String, Entry> variants = documents.get(key);
+        if (variants == null) {
+            variants = new HashMap<>();
+            documents.put(key, variants);
+        }
+        
+        Entry previous = variants.put(variant, entry);
+        if (previous != null) {
+            entries--;
+            bytes -= previous.size;
+        }
+        entries++;
+        bytes += entry.size;
+        
+        evict();
+    }
+    
+    /**
+     * Marks the entry as valid again, e.g. because the database confirmed it wasn't modified
+     * 
+     * @param entry the entry to refresh
+     */
+    public void refresh(Entry entry) {
+        entry.validated = System.currentTimeMillis();
+    }
+    
+    /**
+     * Removes all variants of the document from the cache
+     * 
+     * @param dbName the database of the document
+     * @param handle the document handle (collection/key)
+     */
+    public void invalidate(String dbName, String handle) {
+        remove(documents.remove(getKey(dbName, handle)));
+    }
+    
+    /**
+     * Removes all documents of the collection from the cache
+     * 
+     * @param dbName the database of the collection
+     * @param collection the name of the collection
+     */
+    public void invalidateCollection(String dbName, String collection) {
+        String prefix = getKey(dbName, collection + "/");
+        Iterator<Map.Entry<String, Map<String, Entry>>> it = documents.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Map<String, Entry>> document = it.next();
+            if (document.getKey().startsWith(prefix)) {
+                it.remove();
+                remove(document.getValue());
+            }
+        }
+    }
+    
+    /**
+     * Removes all documents from the cache
+     */
+    public void clear() {
+        documents.clear();
+        entries = 0;
+        bytes = 0;
+    }
+    
+    /**
+     * Stops caching the document or the documents of the collection until the job of the async modification is done
+     * 
+     * @param dbName the database of the document or collection
+     * @param name the document handle (collection/key) or the name of the collection
+     * @param collection true if the modification affects the whole collection
+     * @param jobId the id of the job whose result is stored on the server, or null if the result isn't stored
+     */
+    public void addPendingWrite(String dbName, String name, boolean collection, String jobId) {
+        if (collection) invalidateCollection(dbName, name);
+        else invalidate(dbName, name);
+        
+        pendingWrites.add(new PendingWrite(dbName, name, collection, jobId));
+    }
+    
+    /**
+     * Removes the affected documents from the cache once more and starts caching them again, because the job of the async modification is done
+     * 
+     * @param jobId the id of the job
+     * @return the modification, or null if the job didn't modify any documents that can be cached
+     */
+    public PendingWrite completePendingWrite(String jobId) {
+        Iterator<PendingWrite> it = pendingWrites.iterator();
+        while (it.hasNext()) {
+            PendingWrite write = it.next();
+            if (jobId.equals(write.jobId)) {
+                it.remove();
+                if (write.collection) invalidateCollection(write.dbName, write.name);
+                else invalidate(write.dbName, write.name);
+                return write;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * @param dbName the database of the document
+     * @param handle the document handle (collection/key)
+     * @return true if an async modification of the document (or its collection) may not be applied yet
+     */
+    public boolean isPending(String dbName, String handle) {
+        long now = System.currentTimeMillis();
+        boolean pending = false;
+        Iterator<PendingWrite> it = pendingWrites.iterator();
+        while (it.hasNext()) {
+            PendingWrite write = it.next();
+            if (now - write.started >= PENDING_WRITE_TIMEOUT) it.remove();
+            else if (write.affects(dbName, handle)) pending = true;
+        }
+        
+        return pending;
+    }
+    
+    // evicts the least recently used documents until the cache is within its bounds again
+    private void evict() {
+        Iterator<Map<String, Entry>> it = documents.values().iterator();
+        while ((entries > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Map<String, Entry> variants = it.next();
+            it.remove();
+            remove(variants);
+        }
+    }
+    
+    private void remove(Map<String, Entry> variants) {
+        if (variants == null) return;
+        
+        for (Entry entry : variants.values()) {
+            entries--;
+            bytes -= entry.size;
+        }
+    }
+    
+    private String getKey(String dbName, String handle) {
+        return dbName + "/" + handle;
+    }
+    
+    // the revision of a document, or of a vertex returned by the graph API
+    private String getRevision(JsonObject reply) {
+        JsonObject result = reply.getObject(Helper.PROPERTY_MSG_RESULT);
+        if (result == null) return null;
+        if (result.getString("_rev") != null) return result.getString("_rev");
+        
+        JsonObject vertex = result.getObject("vertex");
+        return vertex != null ? vertex.getString("_rev") : null;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getRevalidations() {
+        return revalidations;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+    
+    public int getPendingWrites() {
+        return pendingWrites.size();
+    }
+    
+    /**
+     * A cached reply
+     */
+    public class Entry {
+        private final JsonObject reply;
+        private final String revision;
+        private final int size;
+        private long validated = System.currentTimeMillis();
+
+        private Entry(JsonObject reply, String revision, int size) {
+            this.reply = reply;
+            this.revision = revision;
+            this.size = size;
+        }
+
+        /**
+         * @return a copy of the cached reply
+         */
+        public JsonObject getReply() {
+            return reply.copy();
+        }
+
+        public String getRevision() {
+            return revision;
+        }
+
+        /**
+         * @return true if the entry can be used without revalidating it
+         */
+        public boolean isFresh() {
+            return ttl > 0 && System.currentTimeMillis() - validated < ttl;
+        }
+    }
+    
+    /**
+     * A modification that is executed asynchronously on the server
+     */
+    public static class PendingWrite {
+        private final String dbName;
+        private final String name;
+        private final boolean collection;
+        private final String jobId;
+        private final long started = System.currentTimeMillis();
+
+        private PendingWrite(String dbName, String name, boolean collection, String jobId) {
+            this.dbName = dbName;
+            this.name = name;
+            this.collection = collection;
+            this.jobId = jobId;
+        }
+        
+        private boolean affects(String dbName, String handle) {
+            if (this.dbName == null ? dbName != null : !this.dbName.equals(dbName)) return false;
+            return collection ? handle.startsWith(name + "/") : handle.equals(name);
+        }
+
+        public String getDbName() {
+            return dbName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isCollection() {
+            return collection;
+        }
+    }
+    
+}
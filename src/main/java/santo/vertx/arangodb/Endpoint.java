@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import org.vertx.java.core.http.HttpClient;
+
+/**
+ * A single ArangoDB server (or cluster coordinator) to which requests can be sent, together with the statistics needed for load balancing
+ *
+ * @author sANTo
+ */
+public class Endpoint {
+    
+    // weight of a new sample in the moving average of the latency
+    private static final double LATENCY_SAMPLE_WEIGHT = 0.2;
+    
+    private final String host;
+    private final int port;
+    private final HttpClient client;
+    
+    private boolean healthy = true;
+    private int inFlight = 0;
+    private long requests = 0;
+    private long samples = 0;
+    private double latency = 0;
+
+    public Endpoint(String host, int port, HttpClient client) {
+        this.host = host;
+        this.port = port;
+        this.client = client;
+    }
+    
+    /**
+     * Registers the start of a request to this endpoint
+     */
+    public void requestStarted() {
+        inFlight++;
+        requests++;
+    }
+    
+    /**
+     * Registers the end of a request to this endpoint
+     * 
+     * @param duration the time (in ms) it took to receive the response
+     * @param completed true if a response was received, false if the request failed without a response
+     */
+    public void requestFinished(long duration, boolean completed) {
+        inFlight--;
+        
+        // failed requests don't tell anything about the response time of the server
+        if (!completed) return;
+        
+        if (samples++ == 0) latency = duration;
+        else latency += LATENCY_SAMPLE_WEIGHT * (duration - latency);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+    
+    /**
+     * @return the address of the endpoint in the form host:port
+     */
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return false if the endpoint is known to be unavailable
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    /**
+     * @return the number of requests that are currently waiting for a response
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the total number of requests sent to this endpoint
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the moving average of the response time (in ms) or 0 if no response was received yet
+     */
+    public double getLatency() {
+        return latency;
+    }
+    
+    @Override
+    public String toString() {
+        return getAddress();
+    }
+
+}
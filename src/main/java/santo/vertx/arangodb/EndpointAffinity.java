@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Remembers on which endpoint the cursors and asynchronous jobs were created.
+ * Cursors and jobs only exist on the server that created them, so the requests that use them have to be sent to that same endpoint
+ * rather than to the endpoint chosen by the load balancer.
+ * The number of bindings is limited, the oldest ones are forgotten first (e.g. cursors that are never read until the end).
+ *
+ * @author sANTo
+ */
+public class EndpointAffinity {
+    
+    public static final int MAX_BINDINGS = 10000;
+    
+    private static final String CURSOR_PATH = "/_api/cursor/";
+    private static final String JOB_PATH = "/_api/job/";
+    private static final String CURSOR_PREFIX = "cursor:";
+    private static final String JOB_PREFIX = "job:";
+    
+    private final Map<String, Endpoint> bindings = new LinkedHashMap<String, Endpoint>() {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Endpoint> eldest) {
+            return size() > MAX_BINDINGS;
+        }
+    };
+    
+    /**
+     * @param apiPath the URL path of the request, optionally prefixed with the database (/_db/{name})
+     * @return the endpoint on which the cursor or job used by the request was created, or null if the request can be sent to any endpoint
+     */
+    public Endpoint select(String apiPath) {
+        String key = getKey(apiPath);
+        return key != null ? bindings.get(key) : null;
+    }
+    
+    /**
+     * Binds the cursor or job created by the request to the endpoint that handled it, or releases the cursor or job once it's gone
+     * 
+     * @param endpoint the endpoint that handled the request
+     * @param method the HTTP method of the request
+     * @param apiPath the URL path of the request
+     * @param statusCode the statuscode of the response
+     * @param jobId the id of the job if the request is executed asynchronously, or null
+     * @param result the body of the response
+     */
+    public void responded(Endpoint endpoint, String method, String apiPath, int statusCode, String jobId, Object result) {
+        if (jobId != null) {
+            bindings.put(JOB_PREFIX + jobId, endpoint);
+            return;
+        }
+        
+        // a cursor lives on until its last batch has been read
+        if (result instanceof JsonObject) {
+            JsonObject document = (JsonObject) result;
+            Object id = document.getValue("id");
+            Boolean hasMore = document.getBoolean("hasMore");
+            if (id != null && hasMore != null) {
+                if (hasMore) bindings.put(CURSOR_PREFIX + id, endpoint);
+                else bindings.remove(CURSOR_PREFIX + id);
+                return;
+            }
+        }
+        
+        // deleted, fetched (the result of a job can only be fetched once) or no longer known by the server
+        String key = getKey(apiPath);
+        if (key == null) return;
+        if (method.equals("DELETE") || statusCode == 404 || (key.startsWith(JOB_PREFIX) && method.equals("PUT") && !isSubresource(apiPath))) {
+            bindings.remove(key);
+        }
+    }
+    
+    /**
+     * Forgets the cursors and jobs of an endpoint that was removed, the requests that use them can't be sent anymore
+     * 
+     * @param endpoint the endpoint that was removed
+     */
+    public void release(Endpoint endpoint) {
+        Iterator<Endpoint> iterator = bindings.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().equals(endpoint)) iterator.remove();
+        }
+    }
+    
+    /**
+     * @return the number of cursors and jobs of which the endpoint is known
+     */
+    public int getBindings() {
+        return bindings.size();
+    }
+    
+    // the key of the cursor or job used by the request, e.g. cursor:12345 for /_db/test/_api/cursor/12345
+    private String getKey(String apiPath) {
+        String path = stripDatabase(apiPath);
+        
+        String prefix;
+        if (path.startsWith(CURSOR_PATH)) prefix = CURSOR_PREFIX;
+        else if (path.startsWith(JOB_PATH)) prefix = JOB_PREFIX;
+        else return null;
+        
+        String id = path.substring(prefix.equals(CURSOR_PREFIX) ? CURSOR_PATH.length() : JOB_PATH.length());
+        int end = indexOfAny(id, "/?");
+        if (end >= 0) id = id.substring(0, end);
+        
+        return id.length() > 0 ? prefix + id : null;
+    }
+    
+    // e.g. /_api/job/12345/cancel
+    private boolean isSubresource(String apiPath) {
+        String path = stripDatabase(apiPath);
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        
+        return path.indexOf('/', JOB_PATH.length()) >= 0;
+    }
+    
+    private String stripDatabase(String apiPath) {
+        if (!apiPath.startsWith("/_db/")) return apiPath;
+        
+        int pathStart = apiPath.indexOf('/', "/_db/".length());
+        return pathStart >= 0 ? apiPath.substring(pathStart) : "";
+    }
+    
+    private int indexOfAny(String value, String characters) {
+        for (int i = 0; i < value.length(); i++) {
+            if (characters.indexOf(value.charAt(i)) >= 0) return i;
+        }
+        
+        return -1;
+    }
+    
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.http.HttpHeaders;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * Periodically retrieves the coordinators of the cluster and keeps the endpoints of the load balancer in line with them.
+ * New coordinators are added to the rotation, retired ones are removed from it and their connections are closed as soon as they're no longer in use.
+ *
+ * @author sANTo
+ */
+public class EndpointDiscovery {
+    
+    public static final String DISCOVERY_PATH = "/_api/cluster/endpoints";
+    
+    private final ArangoPersistor persistor;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final long interval;
+    private final int timeout;
+    private long timerId = -1;
+    
+    // endpoints that were removed but may still have requests waiting for a response
+    private final List<Endpoint> draining = new ArrayList<>();
+
+    /**
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     * @param interval the time (in ms) between two discoveries
+     * @param timeout the time (in ms) the cluster gets to respond
+     */
+    public EndpointDiscovery(ArangoPersistor persistor, Logger logger, long interval, int timeout) {
+        this.persistor = persistor;
+        this.logger = logger;
+        this.interval = interval;
+        this.timeout = timeout;
+    }
+    
+    /**
+     * Discovers the endpoints right away and periodically afterwards
+     */
+    public void start() {
+        discover();
+        timerId = persistor.getVertx().setPeriodic(interval, new Handler<Long>() {
+            @Override
+            public void handle(Long event) {
+                discover();
+            }
+        });
+    }
+    
+    public void stop() {
+        if (timerId >= 0) persistor.getVertx().cancelTimer(timerId);
+        timerId = -1;
+    }
+    
+    /**
+     * Retrieves the current list of coordinators from one of the endpoints and updates the load balancer accordingly
+     */
+    public void discover() {
+        closeDrained();
+        
+        final Endpoint endpoint = persistor.getEndpoint();
+        HttpClientRequest clientRequest = endpoint.getClient().get(DISCOVERY_PATH, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(final HttpClientResponse response) {
+                response.bodyHandler(new Handler<Buffer>() {
+                    @Override
+                    public void handle(Buffer body) {
+                        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                            logger.debug(logPrefix + "endpoint discovery on " + endpoint + " failed with statuscode " + response.statusCode());
+                            return;
+                        }
+                        
+                        try {
+                            update(parseEndpoints(new JsonObject(body.toString("UTF-8"))));
+                        }
+                        catch (Exception e) {
+                            logger.warn(logPrefix + "unable to process the endpoints received from " + endpoint + ": " + e.getMessage());
+                        }
+                    }
+                });
+            }
+        });
+        clientRequest.exceptionHandler(new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable cause) {
+                logger.debug(logPrefix + "endpoint discovery on " + endpoint + " failed: " + cause.getMessage());
+            }
+        });
+        
+        if (persistor.getCredentials() != null) clientRequest.putHeader(HttpHeaders.AUTHORIZATION, "Basic " + persistor.getCredentials());
+        clientRequest.setTimeout(timeout).end();
+    }
+    
+    // converts the endpoints (e.g. "tcp://10.0.0.1:8529") to a map of addresses (host:port) and their host and port
+    private Map<String, Object[]> parseEndpoints(JsonObject result) {
+        Map<String, Object[]> addresses = new LinkedHashMap<>();
+        JsonArray endpoints = result.getArray("endpoints");
+        if (endpoints == null) return addresses;
+        
+        for (Object oEndpoint : endpoints) {
+            if (!(oEndpoint instanceof JsonObject)) continue;
+            String endpoint = ((JsonObject) oEndpoint).getString("endpoint");
+            if (endpoint == null) continue;
+            
+            // strip the protocol
+            int protocolEnd = endpoint.indexOf("://");
+            if (protocolEnd >= 0) endpoint = endpoint.substring(protocolEnd + 3);
+            
+            int separator = endpoint.lastIndexOf(':');
+            if (separator <= 0) continue;
+            String hostname = endpoint.substring(0, separator);
+            int port = Integer.parseInt(endpoint.substring(separator + 1));
+            addresses.put(hostname + ":" + port, new Object[] { hostname, port });
+        }
+        
+        return addresses;
+    }
+    
+    private void update(Map<String, Object[]> addresses) {
+        // a cluster always has at least one coordinator, so an empty list can't be right
+        if (addresses.isEmpty()) return;
+        
+        LoadBalancer loadBalancer = persistor.getLoadBalancer();
+        
+        // add new coordinators
+        for (Map.Entry<String, Object[]> address : addresses.entrySet()) {
+            if (loadBalancer.getEndpoint(address.getKey()) != null) continue;
+            
+            Endpoint endpoint = getDraining(address.getKey());
+            if (endpoint != null) draining.remove(endpoint);
+            else endpoint = persistor.createEndpoint((String) address.getValue()[0], (Integer) address.getValue()[1]);
+            
+            logger.info(logPrefix + "adding discovered endpoint " + endpoint);
+            loadBalancer.addEndpoint(endpoint);
+            persistor.capacityChanged();
+        }
+        
+        // drain retired coordinators
+        for (Endpoint endpoint : new ArrayList<>(loadBalancer.getEndpoints())) {
+            if (addresses.containsKey(endpoint.getAddress())) continue;
+            
+            if (loadBalancer.removeEndpoint(endpoint)) {
+                logger.info(logPrefix + "removing retired endpoint " + endpoint);
+                persistor.getAffinity().release(endpoint);
+                draining.add(endpoint);
+                persistor.capacityChanged();
+            }
+        }
+        
+        closeDrained();
+    }
+    
+    private Endpoint getDraining(String address) {
+        for (Endpoint endpoint : draining) {
+            if (endpoint.getAddress().equals(address)) return endpoint;
+        }
+        
+        return null;
+    }
+    
+    // closes the connections of retired endpoints once all their requests have finished
+    private void closeDrained() {
+        for (Endpoint endpoint : new ArrayList<>(draining)) {
+            if (endpoint.getInFlight() > 0) continue;
+            
+            draining.remove(endpoint);
+            persistor.closeClient(endpoint.getHost(), endpoint.getPort());
+        }
+    }
+
+}
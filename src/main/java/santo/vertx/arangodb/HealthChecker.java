@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.net.ConnectException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.http.HttpHeaders;
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * Periodically probes all endpoints and takes the ones that don't respond out of the rotation of the load balancer until they recover.
+ * An endpoint is only taken out of the rotation after a number of consecutive failures, so a single slow response doesn't make it unavailable.
+ * The probes use a connection of their own, so they don't have to wait for a free connection when the endpoint is busy.
+ *
+ * @author sANTo
+ */
+public class HealthChecker {
+    
+    public static final String PROBE_PATH = "/_api/version";
+    
+    private final ArangoPersistor persistor;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final long interval;
+    private final int timeout;
+    private final int maxFailures;
+    private long timerId = -1;
+    
+    // consecutive failures and the probe client per endpoint
+    private final Map<Endpoint, Integer> failures = new HashMap<>();
+    private final Map<Endpoint, HttpClient> clients = new HashMap<>();
+
+    /**
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     * @param interval the time (in ms) between two probes of an endpoint
+     * @param timeout the time (in ms) an endpoint gets to respond to a probe
+     * @param maxFailures the number of consecutive failures after which an endpoint is taken out of the rotation
+     */
+    public HealthChecker(ArangoPersistor persistor, Logger logger, long interval, int timeout, int maxFailures) {
+        this.persistor = persistor;
+        this.logger = logger;
+        this.interval = interval;
+        this.timeout = timeout;
+        this.maxFailures = Math.max(1, maxFailures);
+    }
+    
+    /**
+     * Probes all endpoints right away and periodically afterwards
+     */
+    public void start() {
+        probeAll();
+        timerId = persistor.getVertx().setPeriodic(interval, new Handler<Long>() {
+            @Override
+            public void handle(Long event) {
+                probeAll();
+            }
+        });
+    }
+    
+    public void stop() {
+        if (timerId >= 0) persistor.getVertx().cancelTimer(timerId);
+        timerId = -1;
+        
+        for (HttpClient client : clients.values()) {
+            client.close();
+        }
+        clients.clear();
+    }
+    
+    private void probeAll() {
+        List<Endpoint> endpoints = persistor.getLoadBalancer().getEndpoints();
+        
+        // forget the endpoints that were removed from the rotation
+        Iterator<Map.Entry<Endpoint, HttpClient>> iterator = clients.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Endpoint, HttpClient> entry = iterator.next();
+            if (endpoints.contains(entry.getKey())) continue;
+            entry.getValue().close();
+            failures.remove(entry.getKey());
+            iterator.remove();
+        }
+        
+        for (Endpoint endpoint : endpoints) {
+            probe(endpoint);
+        }
+    }
+    
+    private HttpClient getClient(Endpoint endpoint) {
+        HttpClient client = clients.get(endpoint);
+        if (client == null) {
+            client = persistor.createClient(endpoint.getHost(), endpoint.getPort()).setMaxPoolSize(1);
+            clients.put(endpoint, client);
+        }
+        
+        return client;
+    }
+    
+    /**
+     * Checks whether the endpoint responds to a request for the server version
+     * 
+     * @param endpoint the endpoint to check
+     */
+    public void probe(final Endpoint endpoint) {
+        HttpClientRequest clientRequest = getClient(endpoint).get(PROBE_PATH, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                // any response other than a server error means the server is up, even if e.g. the credentials are wrong
+                if (response.statusCode() < 500) succeeded(endpoint);
+                else failed(endpoint);
+            }
+        });
+        clientRequest.exceptionHandler(new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable cause) {
+                logger.debug(logPrefix + "health probe of " + endpoint + " failed: " + cause.getMessage());
+                failed(endpoint);
+            }
+        });
+        
+        if (persistor.getCredentials() != null) clientRequest.putHeader(HttpHeaders.AUTHORIZATION, "Basic " + persistor.getCredentials());
+        clientRequest.setTimeout(timeout).end();
+    }
+    
+    /**
+     * Counts a request that failed because no connection could be made as a failed probe, rather than waiting for the next probe
+     * 
+     * @param endpoint the endpoint to which the request was sent
+     * @param cause the reason of the failure
+     */
+    public void failed(Endpoint endpoint, Throwable cause) {
+        if (cause instanceof ConnectException) failed(endpoint);
+    }
+    
+    private void failed(Endpoint endpoint) {
+        Integer count = failures.get(endpoint);
+        count = count != null ? count + 1 : 1;
+        failures.put(endpoint, count);
+        
+        if (count >= maxFailures) setHealthy(endpoint, false);
+    }
+    
+    private void succeeded(Endpoint endpoint) {
+        failures.remove(endpoint);
+        setHealthy(endpoint, true);
+    }
+    
+    private void setHealthy(Endpoint endpoint, boolean healthy) {
+        if (endpoint.isHealthy() == healthy) return;
+        
+        if (healthy) logger.info(logPrefix + "endpoint " + endpoint + " is available again");
+        else logger.warn(logPrefix + "endpoint " + endpoint + " is unavailable, removing it from the rotation");
+        endpoint.setHealthy(healthy);
+        persistor.capacityChanged();
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Decides when a read should be sent to a second endpoint as well.
+ * The latencies of recent reads are recorded per kind of read (e.g. reading a document or executing a query), and a read that
+ * hasn't been answered after the configured percentile of the latencies of its kind (e.g. the 95th) is hedged. Since only the
+ * slowest reads are hedged, this adds few requests while the occasional stall of one endpoint (e.g. a garbage collection pause
+ * of a coordinator) no longer shows up in the latency of the reads.
+ *
+ * @author sANTo
+ */
+public class HedgingPolicy {
+    
+    private static final int MAX_SAMPLES = 1024;
+    private static final int MIN_SAMPLES = 100;
+    private static final int UPDATE_INTERVAL = 100;
+    
+    private final int percentile;
+    private final long minDelay;
+    
+    private final Map<String, Samples> samples = new HashMap<>();
+    private long hedged = 0;
+    private long won = 0;
+
+    /**
+     * @param percentile the percentile of the recent latencies after which a read is hedged
+     * @param minDelay the minimum time (in ms) before a read is hedged
+     */
+    public HedgingPolicy(int percentile, long minDelay) {
+        this.percentile = Math.max(1, Math.min(percentile, 100));
+        this.minDelay = minDelay;
+    }
+    
+    /**
+     * Records the time it took to get an answer to a read, measured from the moment the read was started
+     * 
+     * @param kind the kind of read, e.g. its type and action
+     * @param latency the latency in ms
+     */
+    public void record(String kind, long latency) {
+        Samples kindSamples = samples.get(kind);
+        if (kindSamples == null) {
+            kindSamples = new Samples();
+            samples.put(kind, kindSamples);
+        }
+        
+        kindSamples.record(latency);
+    }
+    
+    /**
+     * @param kind the kind of read, e.g. its type and action
+     * @return the time (in ms) after which a read of this kind should be hedged, or -1 if not enough reads have been recorded yet
+     */
+    public long getDelay(String kind) {
+        Samples kindSamples = samples.get(kind);
+        return kindSamples != null ? kindSamples.delay : -1;
+    }
+    
+    /**
+     * @return the time (in ms) after which a read is hedged for each kind of read that has been recorded
+     */
+    public JsonObject getDelays() {
+        JsonObject delays = new JsonObject();
+        for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+            delays.putNumber(entry.getKey(), entry.getValue().delay);
+        }
+        
+        return delays;
+    }
+    
+    /**
+     * Registers a read that was sent to a second endpoint
+     */
+    public void hedged() {
+        hedged++;
+    }
+    
+    /**
+     * Registers a hedged read for which the second endpoint answered first
+     */
+    public void won() {
+        won++;
+    }
+
+    /**
+     * @return the number of reads that were sent to a second endpoint
+     */
+    public long getHedged() {
+        return hedged;
+    }
+
+    /**
+     * @return the number of hedged reads for which the second endpoint answered first
+     */
+    public long getWon() {
+        return won;
+    }
+    
+    // the most recent latencies of one kind of read
+    private class Samples {
+        private final long[] latencies = new long[MAX_SAMPLES];
+        private int count = 0;
+        private int position = 0;
+        private int sinceUpdate = 0;
+        private long delay = -1;
+        
+        private void record(long latency) {
+            latencies[position] = latency;
+            position = (position + 1) % MAX_SAMPLES;
+            if (count < MAX_SAMPLES) count++;
+
+            // the percentile is recalculated only now and then, sorting the samples for every read would be too expensive
+            if (++sinceUpdate >= UPDATE_INTERVAL && count >= MIN_SAMPLES) {
+                sinceUpdate = 0;
+                long[] sorted = Arrays.copyOf(latencies, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+                delay = Math.max(minDelay, sorted[Math.max(index, 0)]);
+            }
+        }
+    }
+    
+}
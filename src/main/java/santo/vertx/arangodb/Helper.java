@@ -16,6 +16,7 @@
 
 package santo.vertx.arangodb;
 
+import java.util.concurrent.TimeoutException;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
@@ -29,10 +30,10 @@ public class Helper {
     private static final String ERROR_FIELD_MISSING = "Required field missing: ";
     
     private static final String PROPERTY_MSG_STATUS = "status";
-    private static final String PROPERTY_MSG_STATUSCODE = "statuscode";
+    public static final String PROPERTY_MSG_STATUSCODE = "statuscode";
     private static final String PROPERTY_MSG_MESSAGE = "message";
     private static final String PROPERTY_MSG_SEVERITY = "severity";
-    private static final String PROPERTY_MSG_RESULT = "result";
+    public static final String PROPERTY_MSG_RESULT = "result";
 
     private static final String VALUE_MSG_STATUS_OK = "ok";
     private static final String VALUE_MSG_STATUS_ERROR = "error";
@@ -155,6 +156,28 @@ public class Helper {
         return sendResponse(msg, VALUE_MSG_STATUS_DENIED, statuscode, message, severity, result);
     }
     
+    /**
+     * Sends an error for a request that failed without a response from the database.
+     * The result has the same format as an error returned by the database itself, with status code 504 if the request timed out
+     * or 503 if the database couldn't be reached, and the type of the failure in the "exception" attribute.
+     * 
+     * @param msg the Vertx Message object to which the error should be sent
+     * @param cause the reason of the failure
+     * @return true if the error was sent, false if not
+     */
+    public boolean sendFailure(final Message<JsonObject> msg, final Throwable cause) {
+        int statuscode = cause instanceof TimeoutException ? 504 : 503;
+        String message = "request failed: " + (cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+        
+        JsonObject result = new JsonObject();
+        result.putBoolean("error", true);
+        result.putNumber("code", statuscode);
+        result.putString("errorMessage", message);
+        result.putString("exception", cause.getClass().getName());
+        
+        return sendError(msg, statuscode, message, result);
+    }
+    
     public boolean sendResponse(final Message<JsonObject> msg, final String status, final int statuscode, final String message, final String severity, final Object result) {
         boolean success = false;
         
@@ -175,6 +198,16 @@ public class Helper {
         return success;
     }
 
+    /**
+     * Checks whether the specified response (as created by one of the send methods) indicates a successful request
+     * 
+     * @param response the response message
+     * @return true if the status of the response is ok, false if not
+     */
+    public boolean isSuccess(JsonObject response) {
+        return response != null && VALUE_MSG_STATUS_OK.equals(response.getString(PROPERTY_MSG_STATUS));
+    }
+
     public boolean getOptionalBoolean(JsonObject document, String field) {
         return getBoolean(document, field, null, false, false);
     }
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * A {@link Message} that never travels over the eventbus.
+ * It allows the persistor to feed a request to one of the API's internally and to intercept the reply,
+ * which is handed to the specified reply handler instead of being sent to a reply address.
+ * Only JSON object replies are supported since that's the only type of reply the API's produce.
+ *
+ * @author sANTo
+ */
+public class InternalMessage implements Message<JsonObject> {
+
+    private final String address;
+    private final JsonObject body;
+    private Handler<JsonObject> replyHandler;
+    private JsonObject reply = null;
+
+    public InternalMessage(String address, JsonObject body) {
+        this(address, body, null);
+    }
+
+    public InternalMessage(String address, JsonObject body, Handler<JsonObject> replyHandler) {
+        this.address = address;
+        this.body = body;
+        this.replyHandler = replyHandler;
+    }
+
+    /**
+     * @return true if a reply has been sent to this message
+     */
+    public boolean isReplied() {
+        return reply != null;
+    }
+
+    /**
+     * @return the reply that was sent to this message or null if it wasn't replied yet
+     */
+    public JsonObject getReply() {
+        return reply;
+    }
+
+    public void setReplyHandler(Handler<JsonObject> replyHandler) {
+        this.replyHandler = replyHandler;
+    }
+
+    @Override
+    public String address() {
+        return address;
+    }
+
+    @Override
+    public JsonObject body() {
+        return body;
+    }
+
+    @Override
+    public String replyAddress() {
+        return null;
+    }
+
+    @Override
+    public void reply() {
+        reply(new JsonObject());
+    }
+
+    @Override
+    public void reply(JsonObject message) {
+        // only the first reply counts, just like a real reply address can only be used once
+        if (reply != null) return;
+        reply = message;
+        if (replyHandler != null) replyHandler.handle(message);
+    }
+
+    @Override
+    public void reply(Object message) {
+        if (message instanceof JsonObject) reply((JsonObject) message);
+        else throw new UnsupportedOperationException("Only JSON object replies are supported for internal messages");
+    }
+
+    @Override
+    public void reply(JsonArray message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(String message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(Buffer message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(byte[] message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(Integer message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(Long message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(Short message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(Character message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(Boolean message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(Float message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(Double message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public <T> void reply(Handler<Message<T>> replyHandler) {
+        reply();
+    }
+
+    @Override
+    public <T> void replyWithTimeout(long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply();
+    }
+
+    @Override
+    public <T> void reply(Object message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Object message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(JsonObject message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(JsonObject message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(JsonArray message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(JsonArray message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(String message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(String message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(Buffer message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Buffer message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(byte[] message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(byte[] message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(Integer message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Integer message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(Long message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Long message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(Short message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Short message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(Character message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Character message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(Boolean message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Boolean message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(Float message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Float message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void reply(Double message, Handler<Message<T>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public <T> void replyWithTimeout(Double message, long timeout, Handler<AsyncResult<Message<T>>> replyHandler) {
+        reply(message);
+    }
+
+    @Override
+    public void fail(int failureCode, String message) {
+        Helper.getHelper().sendError(this, failureCode, message);
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Records a distribution of durations in a fixed amount of memory, in the same way as an HDR histogram.
+ * Each power of two is divided into 8 buckets, so percentiles are accurate within 12.5% over the full range of values
+ * while recording a value only increments a counter.
+ *
+ * @author sANTo
+ */
+public class LatencyHistogram {
+    
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+    
+    /**
+     * @param value the duration in microseconds
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[getIndex(value)]++;
+        count++;
+        sum += value;
+        if (value > max) max = value;
+    }
+    
+    /**
+     * @param percentile the percentile (e.g. 99.9)
+     * @return the value (in microseconds) below which the specified percentage of the recorded values falls
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        
+        long target = (long) Math.ceil(percentile / 100.0 * count);
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= Math.max(target, 1)) return Math.min(getUpperBound(index), max);
+        }
+        
+        return max;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * @return the number of values, the mean, maximum and most commonly used percentiles, all durations in milliseconds
+     */
+    public JsonObject toJson() {
+        JsonObject stats = new JsonObject();
+        stats.putNumber("count", count);
+        stats.putNumber("mean", count > 0 ? toMillis(sum / count) : 0);
+        stats.putNumber("p50", toMillis(getPercentile(50)));
+        stats.putNumber("p90", toMillis(getPercentile(90)));
+        stats.putNumber("p99", toMillis(getPercentile(99)));
+        stats.putNumber("p999", toMillis(getPercentile(99.9)));
+        stats.putNumber("max", toMillis(max));
+        
+        return stats;
+    }
+    
+    private double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+    
+    // small values have a bucket of their own, larger ones share a bucket with the values that have the same 3 most significant bits
+    private static int getIndex(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    private static long getUpperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        
+        int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+    
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Spreads the requests over the healthy endpoints whose circuit isn't open, using one of the following strategies:
+ * <ul>
+ * <li>round-robin: each endpoint in turn</li>
+ * <li>least-in-flight: the endpoint with the fewest requests waiting for a response</li>
+ * <li>latency: a random endpoint, where faster endpoints are proportionally more likely to be chosen</li>
+ * </ul>
+ *
+ * @author sANTo
+ */
+public class LoadBalancer {
+    
+    public static final String STRATEGY_ROUND_ROBIN = "round-robin";
+    public static final String STRATEGY_LEAST_IN_FLIGHT = "least-in-flight";
+    public static final String STRATEGY_LATENCY = "latency";
+    public static final List<String> STRATEGIES = Arrays.asList(STRATEGY_ROUND_ROBIN, STRATEGY_LEAST_IN_FLIGHT, STRATEGY_LATENCY);
+    
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final String strategy;
+    private final Random random = new Random();
+    private int next = 0;
+    private int maxInFlight = 0;
+    private CircuitBreaker circuitBreaker = null;
+
+    /**
+     * @param endpoints the endpoints over which the requests should be spread
+     * @param strategy the strategy used to select an endpoint
+     */
+    public LoadBalancer(List<Endpoint> endpoints, String strategy) {
+        if (endpoints.isEmpty()) throw new IllegalArgumentException("at least one endpoint is required");
+        if (!STRATEGIES.contains(strategy)) throw new IllegalArgumentException("invalid load balancing strategy (" + strategy + ")");
+        this.endpoints.addAll(endpoints);
+        this.strategy = strategy;
+    }
+    
+    /**
+     * @return the endpoint to which the next request should be sent
+     */
+    public Endpoint select() {
+        return select(null);
+    }
+    
+    /**
+     * @param excluded an endpoint that shouldn't be selected, e.g. because the request was sent to it already
+     * @return the endpoint to which the next request should be sent, or null if there's no other healthy endpoint with a closed circuit
+     * than the excluded one
+     */
+    public Endpoint select(Endpoint excluded) {
+        if (excluded == null && endpoints.size() == 1) return endpoints.get(0);
+        
+        // if no endpoint is healthy, then the request will fail anyway, so let the strategy choose from all endpoints
+        List<Endpoint> candidates = getHealthyEndpoints();
+        if (excluded != null) {
+            candidates = new ArrayList<>(candidates);
+            candidates.remove(excluded);
+            if (candidates.isEmpty()) return null;
+        }
+        if (candidates.isEmpty()) candidates = endpoints;
+        
+        // if every circuit is open, then the request will be rejected anyway, unless another endpoint was requested
+        if (circuitBreaker != null) {
+            List<Endpoint> closed = getEndpointsWithClosedCircuit(candidates);
+            if (!closed.isEmpty()) candidates = closed;
+            else if (excluded != null) return null;
+        }
+        
+        // prefer endpoints that haven't reached their limit yet
+        if (maxInFlight > 0) {
+            List<Endpoint> available = getEndpointsWithCapacity(candidates);
+            if (!available.isEmpty()) candidates = available;
+        }
+        
+        switch (strategy) {
+            case STRATEGY_LEAST_IN_FLIGHT:
+                return selectLeastInFlight(candidates);
+            case STRATEGY_LATENCY:
+                return selectByLatency(candidates);
+                
+            default:
+                return selectRoundRobin(candidates);
+        }
+    }
+    
+    /**
+     * @return true if at least one endpoint is healthy
+     */
+    public boolean isAvailable() {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isHealthy()) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * @return true if at least one usable endpoint (healthy and without an open circuit) can accept another request without exceeding the
+     * limit per endpoint, or if none of the endpoints is usable, since waiting wouldn't help the request in that case
+     */
+    public boolean hasCapacity() {
+        if (maxInFlight <= 0) return true;
+        
+        boolean usable = false;
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isHealthy() || (circuitBreaker != null && circuitBreaker.isOpen(endpoint))) continue;
+            if (endpoint.getInFlight() < maxInFlight) return true;
+            usable = true;
+        }
+        
+        return !usable;
+    }
+    
+    private List<Endpoint> getEndpointsWithCapacity(List<Endpoint> endpoints) {
+        List<Endpoint> available = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getInFlight() < maxInFlight) available.add(endpoint);
+        }
+        
+        return available;
+    }
+    
+    private List<Endpoint> getEndpointsWithClosedCircuit(List<Endpoint> endpoints) {
+        List<Endpoint> closed = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (!circuitBreaker.isOpen(endpoint)) closed.add(endpoint);
+        }
+        
+        return closed;
+    }
+    
+    private List<Endpoint> getHealthyEndpoints() {
+        // avoid creating a new list in the common case where all endpoints are healthy
+        if (isAllHealthy()) return endpoints;
+        
+        List<Endpoint> healthy = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isHealthy()) healthy.add(endpoint);
+        }
+        
+        return healthy;
+    }
+    
+    private boolean isAllHealthy() {
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isHealthy()) return false;
+        }
+        
+        return true;
+    }
+    
+    private Endpoint selectRoundRobin(List<Endpoint> endpoints) {
+        if (next >= endpoints.size()) next = 0;
+        return endpoints.get(next++);
+    }
+    
+    private Endpoint selectLeastInFlight(List<Endpoint> endpoints) {
+        // start at a rotating position so endpoints with the same load are used in turn
+        Endpoint selected = null;
+        int start = next;
+        next = (next + 1) % endpoints.size();
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get((start + i) % endpoints.size());
+            if (selected == null || endpoint.getInFlight() < selected.getInFlight()) selected = endpoint;
+        }
+        
+        return selected;
+    }
+    
+    private Endpoint selectByLatency(List<Endpoint> endpoints) {
+        // the weight of an endpoint is inversely proportional to its latency, endpoints without measurements count as the fastest
+        double[] weights = new double[endpoints.size()];
+        double total = 0;
+        for (int i = 0; i < endpoints.size(); i++) {
+            weights[i] = 1.0 / (endpoints.get(i).getLatency() + 1);
+            total += weights[i];
+        }
+        
+        double choice = random.nextDouble() * total;
+        for (int i = 0; i < endpoints.size(); i++) {
+            choice -= weights[i];
+            if (choice < 0) return endpoints.get(i);
+        }
+        
+        return endpoints.get(endpoints.size() - 1);
+    }
+
+    /**
+     * Adds the endpoint to the rotation
+     * 
+     * @param endpoint the endpoint to add
+     */
+    public void addEndpoint(Endpoint endpoint) {
+        if (getEndpoint(endpoint.getAddress()) == null) endpoints.add(endpoint);
+    }
+    
+    /**
+     * Removes the endpoint from the rotation, requests that were already sent to it are not affected.
+     * The last endpoint can't be removed.
+     * 
+     * @param endpoint the endpoint to remove
+     * @return true if the endpoint was removed
+     */
+    public boolean removeEndpoint(Endpoint endpoint) {
+        if (endpoints.size() <= 1) return false;
+        
+        boolean removed = endpoints.remove(endpoint);
+        if (next >= endpoints.size()) next = 0;
+        
+        return removed;
+    }
+    
+    /**
+     * @param address the address of the endpoint in the form host:port
+     * @return the endpoint with the specified address or null if the load balancer doesn't contain such an endpoint
+     */
+    public Endpoint getEndpoint(String address) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getAddress().equals(address)) return endpoint;
+        }
+        
+        return null;
+    }
+
+    /**
+     * @return all endpoints of the load balancer
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param maxInFlight the maximum number of requests waiting for a response per endpoint, 0 means unlimited
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param circuitBreaker the circuit breaker whose open endpoints should be avoided, or null to ignore the circuits
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.rest.AbstractRestAPI;
+import santo.vertx.arangodb.rest.BatchAPI;
+import santo.vertx.arangodb.rest.BatchPart;
+
+/**
+ * Collects individual requests during a short time window and executes them as a single batch request.
+ * Every request still gets its own reply, as if it was executed separately.
+ * <p>
+ * Only writes are batched. Reads are performed right away, since the document cache, coalescing of identical reads, hedging and retries
+ * only apply to individual requests and would be bypassed by a batch.
+ * 
+ * @author sANTo
+ */
+public class RequestBatcher {
+    
+    private final ArangoPersistor persistor;
+    private final BatchAPI batchAPI;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final long window;
+    private final int maxSize;
+    
+    // pending parts per database
+    private final Map<String, List<BatchPart>> pending = new HashMap<>();
+    private long timerId = -1;
+    private long partSequence = 0;
+
+    /**
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     * @param window the maximum time (in ms) a request is held back before the batch is executed
+     * @param maxSize the maximum number of requests per batch, the batch is executed immediately once it's reached
+     */
+    public RequestBatcher(ArangoPersistor persistor, Logger logger, long window, int maxSize) {
+        this.persistor = persistor;
+        this.logger = logger;
+        this.window = window > 0 ? window : 1;
+        this.maxSize = maxSize > 0 ? maxSize : 1;
+        this.batchAPI = new BatchAPI(logger, persistor);
+    }
+    
+    /**
+     * Adds the request to the current batch
+     * 
+     * @param type the type of the request
+     * @param msg the Vertx Message object containing the request
+     */
+    public void add(String type, final Message<JsonObject> msg) {
+        BatchPart part = new BatchPart(msg.address(), Long.toString(++partSequence), msg.body(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                msg.reply(reply);
+            }
+        });
+        
+        AbstractRestAPI api = persistor.getAPI(type, part);
+        if (api == null) return;
+        api.processRequest(part);
+        
+        // invalid requests have been answered already
+        if (part.isReplied()) return;
+        
+        // perform reads and requests that can't be batched right away
+        if (!part.isCaptured() || isRead(part.getMethod())) {
+            api.processRequest(msg);
+            return;
+        }
+        
+        String dbName = part.getDbName() != null ? part.getDbName() : "";
+        List<BatchPart> parts = pending.get(dbName);
+        if (parts == null) {
+            parts = new ArrayList<>();
+            pending.put(dbName, parts);
+        }
+        parts.add(part);
+        
+        if (parts.size() >= maxSize) {
+            flush(dbName);
+        }
+        else if (timerId < 0) {
+            timerId = persistor.getVertx().setTimer(window, new Handler<Long>() {
+                @Override
+                public void handle(Long event) {
+                    timerId = -1;
+                    flush();
+                }
+            });
+        }
+    }
+    
+    private boolean isRead(String method) {
+        return AbstractRestAPI.HTTP_METHOD_GET.equals(method) || AbstractRestAPI.HTTP_METHOD_HEAD.equals(method);
+    }
+    
+    /**
+     * Executes all pending batches
+     */
+    public void flush() {
+        for (String dbName : new ArrayList<>(pending.keySet())) {
+            flush(dbName);
+        }
+    }
+    
+    private void flush(String dbName) {
+        List<BatchPart> parts = pending.remove(dbName);
+        if (parts == null || parts.isEmpty()) return;
+        
+        // the batch should wait as long as the most patient request
+        int timeout = 0;
+        for (BatchPart part : parts) {
+            timeout = Math.max(timeout, part.getTimeout());
+        }
+        
+        logger.trace(logPrefix + "executing batch of " + parts.size() + " requests");
+        batchAPI.executeParts(parts, dbName.length() > 0 ? dbName : null, null, timeout);
+    }
+    
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * Coalesces identical read requests that are in progress at the same time.
+ * Only the first of them is sent to the database, the others wait for its response which is then delivered to all of them.
+ * 
+ * @author sANTo
+ */
+public class RequestCoalescer {
+    
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    // the messages waiting for the response of each request in progress
+    private final Map<String, List<Message<JsonObject>>> inProgress = new HashMap<>();
+    private long coalesced = 0;
+
+    /**
+     * @param logger the logger to use
+     */
+    public RequestCoalescer(Logger logger) {
+        this.logger = logger;
+    }
+    
+    /**
+     * Registers the message for the request with the specified key
+     * 
+     * @param key the key that uniquely identifies the request, e.g. the path and headers of a GET request
+     * @param msg the Vertx Message object that should receive the response
+     * @return the message to use for performing the request, or null if an identical request is in progress already
+     */
+    public Message<JsonObject> coalesce(final String key, Message<JsonObject> msg) {
+        List<Message<JsonObject>> waiting = inProgress.get(key);
+        if (waiting != null) {
+            waiting.add(msg);
+            coalesced++;
+            logger.trace(logPrefix + "coalescing request for " + key);
+            return null;
+        }
+        
+        waiting = new ArrayList<>();
+        waiting.add(msg);
+        inProgress.put(key, waiting);
+        
+        // the response is delivered to all messages that joined in the meantime
+        return new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                List<Message<JsonObject>> receivers = inProgress.remove(key);
+                for (int i = 0; i < receivers.size(); i++) {
+                    receivers.get(i).reply(i == 0 ? reply : reply.copy());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the total number of requests that were answered with the response of an identical request
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+    
+}
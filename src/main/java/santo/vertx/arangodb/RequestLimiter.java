@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+
+/**
+ * Limits the number of requests that are being processed at the same time, both in total and per endpoint.
+ * Requests that exceed the limits wait in a bounded queue until a running request completes.
+ * Requests are rejected immediately when the queue is full, and once they've waited longer than the maximum wait time.
+ * <p>
+ * Each request belongs to one of three priority lanes (high, normal or low), each with its own queue.
+ * Waiting requests are taken from the lanes in a 4:2:1 ratio, so higher priorities go first without starving the lower ones,
+ * and low priority requests can only use part of the slots so there's always room for the others.
+ * 
+ * @author sANTo
+ */
+public class RequestLimiter {
+    
+    public static final int STATUS_OVERLOADED = 503;
+    
+    public static final String PRIORITY_HIGH = "high";
+    public static final String PRIORITY_NORMAL = "normal";
+    public static final String PRIORITY_LOW = "low";
+    public static final List<String> PRIORITIES = Arrays.asList(PRIORITY_HIGH, PRIORITY_NORMAL, PRIORITY_LOW);
+    
+    private static final int LANE_LOW = 2;
+    private static final int[] LANE_WEIGHTS = { 4, 2, 1 };
+    
+    private final ArangoPersistor persistor;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final int maxInFlight;
+    private final int maxLowInFlight;
+    private final int maxQueueSize;
+    private final long maxWait;
+    
+    private final List<Deque<PendingRequest>> queues = Arrays.<Deque<PendingRequest>>asList(new ArrayDeque<PendingRequest>(), new ArrayDeque<PendingRequest>(), new ArrayDeque<PendingRequest>());
+    private final int[] credits = LANE_WEIGHTS.clone();
+    private final int[] inFlight = new int[3];
+    private int queueSize = 0;
+    private long timerId = -1;
+    private long rejected = 0;
+
+    /**
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     * @param maxInFlight the maximum number of requests being processed at the same time, 0 means unlimited
+     * @param lowPriorityShare the percentage of maxInFlight that low priority requests can use
+     * @param maxQueueSize the maximum number of requests waiting to be processed
+     * @param maxWait the maximum time (in ms) a request waits to be processed
+     */
+    public RequestLimiter(ArangoPersistor persistor, Logger logger, int maxInFlight, int lowPriorityShare, int maxQueueSize, long maxWait) {
+        this.persistor = persistor;
+        this.logger = logger;
+        this.maxInFlight = maxInFlight;
+        this.maxLowInFlight = maxInFlight > 0 ? Math.max(1, maxInFlight * lowPriorityShare / 100) : 0;
+        this.maxQueueSize = maxQueueSize;
+        this.maxWait = maxWait;
+    }
+    
+    /**
+     * Processes the request right away if the limits allow it, otherwise it's queued or rejected
+     * 
+     * @param type the type of the request
+     * @param priority the priority of the request, one of {@link #PRIORITIES}
+     * @param msg the Vertx Message object containing the request
+     */
+    public void submit(String type, String priority, Message<JsonObject> msg) {
+        int lane = PRIORITIES.indexOf(priority);
+        if (lane < 0) lane = PRIORITIES.indexOf(PRIORITY_NORMAL);
+        
+        // requests that are already waiting with the same or a higher priority go first
+        if (!isWaiting(lane) && hasCapacity(lane)) {
+            execute(type, lane, msg, System.nanoTime());
+            return;
+        }
+        
+        if (queueSize >= maxQueueSize) {
+            reject(msg, "overloaded, too many pending requests");
+            return;
+        }
+        
+        queues.get(lane).addLast(new PendingRequest(type, msg, System.currentTimeMillis() + maxWait, System.nanoTime()));
+        queueSize++;
+        scheduleExpiry();
+    }
+    
+    private boolean isWaiting(int lane) {
+        for (int i = 0; i <= lane; i++) {
+            if (!queues.get(i).isEmpty()) return true;
+        }
+        
+        return false;
+    }
+    
+    private boolean hasCapacity(int lane) {
+        if (maxInFlight > 0 && getInFlight() >= maxInFlight) return false;
+        if (lane == LANE_LOW && maxLowInFlight > 0 && inFlight[LANE_LOW] >= maxLowInFlight) return false;
+        
+        // unavailable endpoints don't hold up the requests, those are admitted and fail fast when they're sent
+        return persistor.getLoadBalancer().hasCapacity();
+    }
+    
+    private void execute(String type, final int lane, final Message<JsonObject> msg, long enqueued) {
+        inFlight[lane]++;
+        
+        RequestMetrics metrics = persistor.getMetrics();
+        if (metrics != null) metrics.recordQueueTime(msg.body(), (System.nanoTime() - enqueued) / 1000);
+        
+        // the slot is released as soon as the request is answered
+        InternalMessage limited = new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                inFlight[lane]--;
+                msg.reply(reply);
+                next();
+            }
+        });
+        
+        try {
+            persistor.dispatch(type, limited);
+        }
+        catch (RuntimeException e) {
+            // a request that failed before it was sent would never be answered, and its slot would never be released
+            logger.error(logPrefix + "unable to process request: " + e.getMessage(), e);
+            if (!limited.isReplied()) Helper.getHelper().sendError(limited, "unable to process request: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Processes waiting requests now that more of them may be admitted, because a request to an endpoint finished or an endpoint became
+     * available or unavailable.
+     * Requests that aren't managed by the limiter (e.g. retries or reads sent to a second endpoint) count towards the limit per endpoint as well,
+     * so the waiting requests can't rely on their own replies alone to be processed.
+     */
+    public void capacityChanged() {
+        if (queueSize > 0) next();
+    }
+    
+    // processes waiting requests for as long as the limits allow it
+    private void next() {
+        int lane;
+        while ((lane = nextLane()) >= 0) {
+            PendingRequest request = queues.get(lane).pollFirst();
+            queueSize--;
+            credits[lane]--;
+            execute(request.type, lane, request.msg, request.enqueued);
+        }
+    }
+    
+    // selects the lane of the next request to process, or -1 if none of the waiting requests can be processed yet
+    private int nextLane() {
+        for (int round = 0; round < 2; round++) {
+            boolean eligible = false;
+            for (int lane = 0; lane < queues.size(); lane++) {
+                if (queues.get(lane).isEmpty() || !hasCapacity(lane)) continue;
+                eligible = true;
+                if (credits[lane] > 0) return lane;
+            }
+            
+            // all lanes with waiting requests used up their share, so start a new round
+            if (!eligible) return -1;
+            System.arraycopy(LANE_WEIGHTS, 0, credits, 0, credits.length);
+        }
+        
+        return -1;
+    }
+    
+    private void reject(Message<JsonObject> msg, String message) {
+        rejected++;
+        logger.debug(logPrefix + "rejecting request: " + message);
+        Helper.getHelper().sendError(msg, STATUS_OVERLOADED, message);
+    }
+    
+    // makes sure the oldest waiting request is rejected once it has waited too long
+    private void scheduleExpiry() {
+        if (timerId >= 0 || queueSize == 0) return;
+        
+        long deadline = Long.MAX_VALUE;
+        for (Deque<PendingRequest> queue : queues) {
+            if (!queue.isEmpty()) deadline = Math.min(deadline, queue.peekFirst().deadline);
+        }
+        
+        long delay = Math.max(1, deadline - System.currentTimeMillis());
+        timerId = persistor.getVertx().setTimer(delay, new Handler<Long>() {
+            @Override
+            public void handle(Long event) {
+                timerId = -1;
+                long now = System.currentTimeMillis();
+                for (Deque<PendingRequest> queue : queues) {
+                    while (!queue.isEmpty() && queue.peekFirst().deadline <= now) {
+                        queueSize--;
+                        reject(queue.pollFirst().msg, "overloaded, request waited too long");
+                    }
+                }
+                scheduleExpiry();
+            }
+        });
+    }
+
+    /**
+     * @return the number of requests that are being processed
+     */
+    public int getInFlight() {
+        int total = 0;
+        for (int count : inFlight) {
+            total += count;
+        }
+        
+        return total;
+    }
+
+    /**
+     * @return the number of requests waiting to be processed
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return the total number of rejected requests
+     */
+    public long getRejected() {
+        return rejected;
+    }
+    
+    private static class PendingRequest {
+        private final String type;
+        private final Message<JsonObject> msg;
+        private final long deadline;
+        private final long enqueued;
+
+        private PendingRequest(String type, Message<JsonObject> msg, long deadline, long enqueued) {
+            this.type = type;
+            this.msg = msg;
+            this.deadline = deadline;
+            this.enqueued = enqueued;
+        }
+    }
+    
+}
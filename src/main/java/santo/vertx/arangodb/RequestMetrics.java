@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.rest.AbstractRestAPI;
+
+/**
+ * Collects the latency and throughput of the requests, per type, action and database.
+ * For each combination it keeps the number of requests, the number of errors per status code, the bytes sent and received,
+ * and the distribution of the time spent waiting in the queue of the limiter, waiting for the database to respond and parsing the
+ * response. This shows whether requests are slow because of the persistor or because of the database.
+ *
+ * @author sANTo
+ */
+public class RequestMetrics {
+    
+    private static final String TYPE_INTERNAL = "internal";
+    
+    private final ArangoPersistor persistor;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final Map<String, Map<String, Map<String, Entry>>> entries = new HashMap<>();
+    private long since = System.currentTimeMillis();
+    private long timerId = -1;
+
+    /**
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     */
+    public RequestMetrics(ArangoPersistor persistor, Logger logger) {
+        this.persistor = persistor;
+        this.logger = logger;
+    }
+    
+    /**
+     * Starts publishing the metrics periodically
+     * 
+     * @param address the eventbus address on which the metrics are published
+     * @param interval the time (in ms) between two publications
+     */
+    public void startPublishing(final String address, long interval) {
+        if (timerId >= 0) return;
+        
+        timerId = persistor.getVertx().setPeriodic(interval, new Handler<Long>() {
+            @Override
+            public void handle(Long event) {
+                persistor.getVertx().eventBus().publish(address, toJson());
+            }
+        });
+        logger.info(logPrefix + "publishing metrics on " + address + " every " + interval + " ms");
+    }
+    
+    /**
+     * Records the time a request waited before it could be processed
+     * 
+     * @param request the body of the request
+     * @param micros the time in microseconds
+     */
+    public void recordQueueTime(JsonObject request, long micros) {
+        getEntry(request).queueTime.record(micros);
+    }
+    
+    /**
+     * Records a request that was sent to the database
+     * 
+     * @param request the body of the request
+     * @param statusCode the status code of the response, or the status code of the error if no response was received
+     * @param httpMicros the time in microseconds until the response was received
+     * @param parseMicros the time in microseconds it took to parse the response
+     * @param bytesOut the size of the body that was sent
+     * @param bytesIn the size of the body that was received
+     */
+    public void recordRequest(JsonObject request, int statusCode, long httpMicros, long parseMicros, long bytesOut, long bytesIn) {
+        Entry entry = getEntry(request);
+        entry.requests++;
+        entry.bytesOut += bytesOut;
+        entry.bytesIn += bytesIn;
+        entry.httpTime.record(httpMicros);
+        if (parseMicros >= 0) entry.parseTime.record(parseMicros);
+        
+        if (statusCode < 200 || statusCode >= 300) {
+            entry.errors++;
+            String code = Integer.toString(statusCode);
+            Long errors = entry.statusCodes.get(code);
+            entry.statusCodes.put(code, errors != null ? errors + 1 : 1);
+        }
+    }
+    
+    /**
+     * Forgets all metrics collected so far
+     */
+    public void reset() {
+        entries.clear();
+        since = System.currentTimeMillis();
+    }
+    
+    private Entry getEntry(JsonObject request) {
+        String type = request.getString(ArangoPersistor.MSG_PROPERTY_TYPE, TYPE_INTERNAL);
+        String action = request.getString(AbstractRestAPI.MSG_PROPERTY_ACTION, "");
+        String dbName = request.getString(AbstractRestAPI.MSG_PROPERTY_DATABASE, persistor.SETTING_DBNAME);
+        
+        Map<String, Map<String, Entry>> actions = entries.get(type);
+        if (actions == null) {
+            actions = new HashMap<>();
+            entries.put(type, actions);
+        }
+        Map<String, Entry> databases = actions.get(action);
+        if (databases == null) {
+            databases = new HashMap<>();
+            actions.put(action, databases);
+        }
+        Entry entry = databases.get(dbName);
+        if (entry == null) {
+            entry = new Entry();
+            databases.put(dbName, entry);
+        }
+        
+        return entry;
+    }
+    
+    /**
+     * @return the metrics per type, action and database, and the counters of the other parts of the persistor
+     */
+    public JsonObject toJson() {
+        JsonObject requests = new JsonObject();
+        for (Map.Entry<String, Map<String, Map<String, Entry>>> type : entries.entrySet()) {
+            JsonObject actions = new JsonObject();
+            for (Map.Entry<String, Map<String, Entry>> action : type.getValue().entrySet()) {
+                JsonObject databases = new JsonObject();
+                for (Map.Entry<String, Entry> database : action.getValue().entrySet()) {
+                    databases.putObject(database.getKey(), database.getValue().toJson());
+                }
+                actions.putObject(action.getKey(), databases);
+            }
+            requests.putObject(type.getKey(), actions);
+        }
+        
+        JsonObject metrics = new JsonObject();
+        metrics.putNumber("since", since);
+        metrics.putNumber("timestamp", System.currentTimeMillis());
+        metrics.putObject("requests", requests);
+        metrics.putObject("components", getComponents());
+        
+        return metrics;
+    }
+    
+    // the counters of the optional parts of the persistor that affect the latency of the requests
+    private JsonObject getComponents() {
+        JsonObject components = new JsonObject();
+        
+        RequestLimiter limiter = persistor.getLimiter();
+        if (limiter != null) {
+            components.putObject("limiter", new JsonObject().putNumber("inFlight", limiter.getInFlight()).putNumber("queued", limiter.getQueueSize()).putNumber("rejected", limiter.getRejected()));
+        }
+        RequestCoalescer coalescer = persistor.getCoalescer();
+        if (coalescer != null) {
+            components.putObject("coalescer", new JsonObject().putNumber("coalesced", coalescer.getCoalesced()));
+        }
+        DocumentCache cache = persistor.getDocumentCache();
+        if (cache != null) {
+            components.putObject("cache", new JsonObject().putNumber("entries", cache.getEntries()).putNumber("bytes", cache.getBytes()).putNumber("hits", cache.getHits()).putNumber("revalidations", cache.getRevalidations()).putNumber("misses", cache.getMisses()));
+        }
+        RetryPolicy retryPolicy = persistor.getRetryPolicy();
+        if (retryPolicy != null) {
+            components.putObject("retries", new JsonObject().putNumber("retries", retryPolicy.getRetries()).putNumber("exhausted", retryPolicy.getExhausted()));
+        }
+        HedgingPolicy hedgingPolicy = persistor.getHedgingPolicy();
+        if (hedgingPolicy != null) {
+            components.putObject("hedging", new JsonObject().putObject("delays", hedgingPolicy.getDelays()).putNumber("hedged", hedgingPolicy.getHedged()).putNumber("won", hedgingPolicy.getWon()));
+        }
+        CircuitBreaker circuitBreaker = persistor.getCircuitBreaker();
+        if (circuitBreaker != null) {
+            components.putObject("circuits", new JsonObject().putNumber("rejected", circuitBreaker.getRejected()));
+        }
+        CursorManager cursorManager = persistor.getCursorManager();
+        if (cursorManager != null) {
+            components.putObject("cursors", new JsonObject().putNumber("open", cursorManager.getOpen()).putNumber("leaked", cursorManager.getLeaked()));
+        }
+        
+        return components;
+    }
+    
+    private static class Entry {
+        private long requests = 0;
+        private long errors = 0;
+        private long bytesOut = 0;
+        private long bytesIn = 0;
+        private final Map<String, Long> statusCodes = new HashMap<>();
+        private final LatencyHistogram queueTime = new LatencyHistogram();
+        private final LatencyHistogram httpTime = new LatencyHistogram();
+        private final LatencyHistogram parseTime = new LatencyHistogram();
+        
+        private JsonObject toJson() {
+            JsonObject codes = new JsonObject();
+            for (Map.Entry<String, Long> code : statusCodes.entrySet()) {
+                codes.putNumber(code.getKey(), code.getValue());
+            }
+            
+            JsonObject stats = new JsonObject();
+            stats.putNumber("requests", requests);
+            stats.putNumber("errors", errors);
+            stats.putObject("statusCodes", codes);
+            stats.putNumber("bytesOut", bytesOut);
+            stats.putNumber("bytesIn", bytesIn);
+            stats.putObject("queueTime", queueTime.toJson());
+            stats.putObject("httpTime", httpTime.toJson());
+            stats.putObject("parseTime", parseTime.toJson());
+            
+            return stats;
+        }
+    }
+    
+}
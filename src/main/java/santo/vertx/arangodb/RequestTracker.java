@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpClientResponse;
+
+/**
+ * Keeps track of a single request to an endpoint.
+ * The request is considered finished as soon as the response arrives or the request fails, whichever comes first.
+ *
+ * @author sANTo
+ */
+public class RequestTracker implements Handler<HttpClientResponse> {
+    
+    private final Endpoint endpoint;
+    private final Handler<HttpClientResponse> responseHandler;
+    private final Handler<Endpoint> finishHandler;
+    private final long start = System.nanoTime();
+    private boolean finished = false;
+
+    /**
+     * @param endpoint the endpoint to which the request is sent
+     * @param responseHandler the handler that will process the response
+     */
+    public RequestTracker(Endpoint endpoint, Handler<HttpClientResponse> responseHandler) {
+        this(endpoint, responseHandler, null);
+    }
+
+    /**
+     * @param endpoint the endpoint to which the request is sent
+     * @param responseHandler the handler that will process the response
+     * @param finishHandler optional handler that is notified as soon as the endpoint has room for another request
+     */
+    public RequestTracker(Endpoint endpoint, Handler<HttpClientResponse> responseHandler, Handler<Endpoint> finishHandler) {
+        this.endpoint = endpoint;
+        this.responseHandler = responseHandler;
+        this.finishHandler = finishHandler;
+        endpoint.requestStarted();
+    }
+
+    @Override
+    public void handle(HttpClientResponse response) {
+        finish(true);
+        responseHandler.handle(response);
+    }
+    
+    /**
+     * Marks the request as failed, e.g. because the connection was refused or the request timed out
+     * 
+     * @param cause the reason of the failure
+     */
+    public void failed(Throwable cause) {
+        finish(false);
+    }
+    
+    private void finish(boolean completed) {
+        if (finished) return;
+        finished = true;
+        endpoint.requestFinished((System.nanoTime() - start) / 1000000, completed);
+        if (finishHandler != null) finishHandler.handle(endpoint);
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+    
+    /**
+     * @return true if the response was received or the request failed
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+}
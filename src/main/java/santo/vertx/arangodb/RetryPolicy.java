@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Decides whether a failed request should be performed again, and how long to wait before doing so.
+ * <p>
+ * Requests that never reached the database (connection refused) can always be retried. Requests that may have reached it
+ * are only retried if they are idempotent, i.e. reads or requests that were explicitly marked as safe to retry, since performing
+ * a modification twice could have a different outcome. These are retried after a timeout, a 503 (service unavailable) response
+ * or a cluster error indicating the leader of a shard is changing.
+ * <p>
+ * The delay between attempts grows exponentially and is randomized (full jitter), so clients that failed at the same time don't
+ * retry at the same time. Retries are also limited by a budget that grows with the number of requests, which prevents retries from
+ * multiplying the load on a database that is already overloaded.
+ *
+ * @author sANTo
+ */
+public class RetryPolicy {
+    
+    // cluster errors: leadership challenge ongoing, not a leader
+    public static final List<Integer> LEADER_CHANGED_ERRORS = Arrays.asList(1495, 1496);
+    
+    private static final double MAX_TOKENS = 10;
+    
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final double tokensPerRequest;
+    private final Random random = new Random();
+    
+    private double tokens = MAX_TOKENS;
+    private long retries = 0;
+    private long exhausted = 0;
+
+    /**
+     * @param maxRetries the maximum number of times a request is retried
+     * @param baseDelay the maximum delay (in ms) before the first retry, which doubles for every next retry
+     * @param maxDelay the maximum delay (in ms) before any retry
+     * @param budget the number of retries allowed per 100 requests, on top of a small reserve for the occasional failure
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay, int budget) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = Math.max(baseDelay, 1);
+        this.maxDelay = Math.max(maxDelay, this.baseDelay);
+        this.tokensPerRequest = budget / 100.0;
+    }
+    
+    /**
+     * Registers a new request, which adds to the retry budget
+     */
+    public void requestStarted() {
+        tokens = Math.min(MAX_TOKENS, tokens + tokensPerRequest);
+    }
+    
+    /**
+     * Checks whether the response should be retried
+     * 
+     * @param reply the reply that would be sent for the request
+     * @param idempotent whether performing the request multiple times has the same effect as performing it once
+     * @return true if the request may succeed if it's retried
+     */
+    public boolean isRetryable(JsonObject reply, boolean idempotent) {
+        if (!idempotent || Helper.getHelper().isSuccess(reply)) return false;
+        
+        Integer statusCode = reply.getInteger(Helper.PROPERTY_MSG_STATUSCODE);
+        if (statusCode != null && statusCode == 503) return true;
+        
+        Object result = reply.getValue(Helper.PROPERTY_MSG_RESULT);
+        return result instanceof JsonObject && LEADER_CHANGED_ERRORS.contains(((JsonObject) result).getInteger("errorNum"));
+    }
+    
+    /**
+     * Checks whether the failed request should be retried
+     * 
+     * @param cause the reason why the request failed
+     * @param idempotent whether performing the request multiple times has the same effect as performing it once
+     * @return true if the request may succeed if it's retried
+     */
+    public boolean isRetryable(Throwable cause, boolean idempotent) {
+        // a refused connection means the request was never sent
+        return idempotent || cause instanceof ConnectException;
+    }
+    
+    /**
+     * Takes a retry from the budget
+     * 
+     * @param attempt the number of retries that were performed for the request so far
+     * @return the delay (in ms) before the request should be retried, or -1 if it shouldn't be retried anymore
+     */
+    public long acquire(int attempt) {
+        if (attempt >= maxRetries) return -1;
+        if (tokens < 1) {
+            exhausted++;
+            return -1;
+        }
+        
+        tokens--;
+        retries++;
+        
+        long ceiling = attempt < 30 ? Math.min(maxDelay, baseDelay << attempt) : maxDelay;
+        return 1 + (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * @return the number of retries that were performed
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the number of retries that were denied because the retry budget was used up
+     */
+    public long getExhausted() {
+        return exhausted;
+    }
+    
+}
@@ -18,13 +18,28 @@ package santo.vertx.arangodb.rest;
 
 import java.util.Arrays;
 import java.util.List;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpHeaders;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.CacheInvalidator;
+import santo.vertx.arangodb.CircuitBreaker;
+import santo.vertx.arangodb.CircuitOpenException;
+import santo.vertx.arangodb.DocumentCache;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.EndpointUnavailableException;
+import santo.vertx.arangodb.HedgingPolicy;
 import santo.vertx.arangodb.Helper;
+import santo.vertx.arangodb.InternalMessage;
+import santo.vertx.arangodb.RequestCoalescer;
+import santo.vertx.arangodb.RequestLimiter;
+import santo.vertx.arangodb.RequestTracker;
+import santo.vertx.arangodb.RetryPolicy;
 
 /**
  *
@@ -35,12 +50,33 @@ public abstract class AbstractRestAPI {
     protected static final String API_BASE_PATH = "/_api";
     protected int DEFAULT_REQUEST_TIMEOUT = 10000;
 
+    // HTTP METHODS
+    public static final String HTTP_METHOD_GET = "GET";
+    public static final String HTTP_METHOD_POST = "POST";
+    public static final String HTTP_METHOD_PUT = "PUT";
+    public static final String HTTP_METHOD_PATCH = "PATCH";
+    public static final String HTTP_METHOD_DELETE = "DELETE";
+    public static final String HTTP_METHOD_HEAD = "HEAD";
+
+    // HTTP HEADERS
+    public static final String HEADER_ASYNC = "x-arango-async";
+    public static final String HEADER_ASYNC_ID = "x-arango-async-id";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    public static final String HEADER_IF_MATCH = "If-Match";
+
+    // ASYNC EXECUTION MODES
+    public static final String ASYNC_MODE_TRUE = "true";
+    public static final String ASYNC_MODE_STORE = "store";
+
     // MESSAGE PROPERTIES
     public static final String MSG_PROPERTY_ACTION = "action";
     public static final String MSG_PROPERTY_HEADERS = "headers";
     public static final String MSG_PROPERTY_DATABASE = "database";
     public static final String MSG_PROPERTY_DOCUMENT = "document";
     public static final String MSG_PROPERTY_TIMEOUT = "timeout";
+    public static final String MSG_PROPERTY_ASYNC = "async";
+    public static final String MSG_PROPERTY_RETRY = "retry";
+    public static final String MSG_PROPERTY_CLIENT = "client";
     public static final String MSG_PROPERTY_ID = "id";
     public static final String MSG_PROPERTY_COLLECTION = "collection";
     public static final String MSG_PROPERTY_CREATE_COLLECTION = "createCollection";
@@ -123,6 +159,19 @@ public abstract class AbstractRestAPI {
         // OPTIONAL: database on which the action should be performed (will default to the database specified in the config or _system if none was specified)
         String dbName = helper.getOptionalString(request, MSG_PROPERTY_DATABASE, persistor.SETTING_DBNAME);
         
+        // OPTIONAL: execute the action asynchronously on the server, either without (true) or with (store) keeping the result
+        Object async = request.getValue(MSG_PROPERTY_ASYNC);
+        if (async != null && !"false".equals(async.toString())) {
+            if (!ASYNC_MODE_TRUE.equals(async.toString()) && !ASYNC_MODE_STORE.equals(async.toString())) {
+                helper.sendError(msg, "Invalid attribute value! Attribute \"" + MSG_PROPERTY_ASYNC + "\" should have one of the following values: " + ASYNC_MODE_TRUE + "," + ASYNC_MODE_STORE);
+                return;
+            }
+            
+            // don't modify the headers of the original request
+            headers = headers != null ? headers.copy() : new JsonObject();
+            headers.putString(HEADER_ASYNC, async.toString());
+        }
+        
         performAction(msg, action, headers, timeout, dbName);
     }
     
@@ -138,6 +187,133 @@ public abstract class AbstractRestAPI {
         return clientRequest;
     }
     
+    /**
+     * Creates a request to one of the available endpoints, with the authorization and specified headers already set
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param method the HTTP method of the request
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param timeout timeout for the HTTP connection
+     * @param responseHandler the handler that will process the response
+     * @return the request, which still needs to be ended by the caller, or null if the circuit of the endpoint or database is open
+     */
+    protected HttpClientRequest createRequest(final ArangoPersistor persistor, String method, final String apiPath, JsonObject headers, int timeout, Handler<HttpClientResponse> responseHandler) {
+        return createRequest(persistor, method, apiPath, headers, timeout, responseHandler, null);
+    }
+    
+    /**
+     * Creates a request to one of the available endpoints, with the authorization and specified headers already set
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param method the HTTP method of the request
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param timeout timeout for the HTTP connection
+     * @param responseHandler the handler that will process the response
+     * @param failureHandler optional handler that is notified if the request fails without a response (e.g. connection refused or timeout),
+     * if it's not specified then a response handler that is a {@link RequestFailureHandler} is notified instead
+     * @return the request, which still needs to be ended by the caller, or null if the circuit of the endpoint or database is open
+     */
+    protected HttpClientRequest createRequest(final ArangoPersistor persistor, String method, final String apiPath, JsonObject headers, int timeout, final Handler<HttpClientResponse> responseHandler, final Handler<Throwable> failureHandler) {
+        return createRequest(persistor, null, method, apiPath, headers, timeout, responseHandler, failureHandler);
+    }
+    
+    /**
+     * Creates a request to the specified endpoint, with the authorization and specified headers already set
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param target the endpoint to which the request should be sent, or null to use the endpoint of the cursor or job in the path, or to let the
+     * load balancer choose one
+     * @param method the HTTP method of the request
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param timeout timeout for the HTTP connection
+     * @param responseHandler the handler that will process the response
+     * @param failureHandler optional handler that is notified if the request fails without a response (e.g. connection refused or timeout),
+     * if it's not specified then a response handler that is a {@link RequestFailureHandler} is notified instead
+     * @return the request, which still needs to be ended by the caller, or null if the endpoint is unavailable or removed, or the circuit of the endpoint
+     * or database is open (in which case the failure has been reported already)
+     */
+    protected HttpClientRequest createRequest(final ArangoPersistor persistor, Endpoint target, String method, final String apiPath, JsonObject headers, int timeout, final Handler<HttpClientResponse> responseHandler, final Handler<Throwable> failureHandler) {
+        // cursors and jobs only exist on the endpoint that created them
+        if (target == null) target = persistor.getAffinity().select(apiPath);
+        final Endpoint endpoint = target != null ? target : persistor.getEndpoint();
+        
+        // the endpoint of a cursor or job may have been removed in the meantime, and its client may be closed already
+        if (target != null && !persistor.getLoadBalancer().getEndpoints().contains(target)) {
+            logger.debug(logPrefix + "endpoint removed, not sending request to " + target.getAddress() + apiPath);
+            notifyFailure(responseHandler, failureHandler, new EndpointUnavailableException(target.getAddress()));
+            return null;
+        }
+        
+        // fail fast rather than letting the request time out, the load balancer only selects an unhealthy endpoint if none of them is healthy
+        if (!endpoint.isHealthy()) {
+            logger.debug(logPrefix + "no endpoint available, not sending request to " + endpoint.getAddress() + apiPath);
+            notifyFailure(responseHandler, failureHandler, new EndpointUnavailableException(endpoint.getAddress()));
+            return null;
+        }
+        
+        // fail fast while the endpoint or database keeps failing
+        final CircuitBreaker breaker = persistor.getCircuitBreaker();
+        final String dbName = getDatabase(apiPath);
+        if (breaker != null && !breaker.allowRequest(endpoint, dbName)) {
+            logger.debug(logPrefix + "circuit open, not sending request to " + endpoint.getAddress() + apiPath);
+            notifyFailure(responseHandler, failureHandler, new CircuitOpenException(endpoint.getAddress(), dbName));
+            return null;
+        }
+        
+        final long start = System.currentTimeMillis();
+        final RequestLimiter limiter = persistor.getLimiter();
+        final RequestTracker tracker = new RequestTracker(endpoint, breaker == null ? responseHandler : new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(HttpClientResponse response) {
+                breaker.record(endpoint, dbName, response.statusCode() < 500, System.currentTimeMillis() - start);
+                responseHandler.handle(response);
+            }
+        }, limiter == null ? null : new Handler<Endpoint>() {
+            @Override
+            public void handle(Endpoint endpoint) {
+                limiter.capacityChanged();
+            }
+        });
+        
+        // launch the request
+        HttpClientRequest clientRequest = endpoint.getClient().request(method, apiPath, tracker);
+        clientRequest.exceptionHandler(new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable cause) {
+                // a failure after the response was received (e.g. while reading the body) has been counted already
+                if (breaker != null && !tracker.isFinished()) breaker.recordFailure(endpoint, dbName);
+                tracker.failed(cause);
+                persistor.endpointFailed(endpoint, cause);
+                logger.error(logPrefix + "request to " + endpoint.getAddress() + apiPath + " failed: " + cause.getMessage());
+                notifyFailure(responseHandler, failureHandler, cause);
+            }
+        });
+        
+        // remember the endpoint of the cursor or job created by the request
+        if (responseHandler instanceof RestResponseHandler) ((RestResponseHandler) responseHandler).setAffinity(persistor.getAffinity(), endpoint, method, apiPath);
+        
+        // set headers
+        addRequestHeaders(clientRequest, persistor, headers);
+        
+        return clientRequest.setTimeout(timeout);
+    }
+    
+    private void notifyFailure(Handler<HttpClientResponse> responseHandler, Handler<Throwable> failureHandler, Throwable cause) {
+        if (failureHandler != null) failureHandler.handle(cause);
+        else if (responseHandler instanceof RequestFailureHandler) ((RequestFailureHandler) responseHandler).failed(cause);
+    }
+    
+    // requests without a database in their path are executed in the _system database
+    private String getDatabase(String apiPath) {
+        if (!apiPath.startsWith("/_db/")) return persistor.SYSTEM_DATABASE;
+        
+        int end = apiPath.indexOf('/', "/_db/".length());
+        return end > 0 ? apiPath.substring("/_db/".length(), end) : apiPath.substring("/_db/".length());
+    }
+    
     /**
      * Checks whether the specified parameter is available, sends an error message if it's not and finally returns a boolean indicating the availability
      * 
@@ -283,6 +459,27 @@ public abstract class AbstractRestAPI {
         return valid;
     }
 
+    /**
+     * Captures the request rather than performing it when the message is part of a batch.
+     * A part that was captured already is performed as a regular request.
+     * 
+     * @param msg the Vertx Message object for which the request should be performed
+     * @param method the HTTP method of the request
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param body optional JSON document to send in the body of the request
+     * @param timeout timeout for the HTTP connection
+     * @return true if the request was captured, false if it should be performed
+     */
+    protected boolean captureBatchPart(Message<JsonObject> msg, String method, String apiPath, JsonObject headers, JsonObject body, int timeout) {
+        if (msg instanceof BatchPart && !((BatchPart) msg).isCaptured()) {
+            ((BatchPart) msg).capture(method, apiPath, headers, body, timeout);
+            return true;
+        }
+        
+        return false;
+    }
+
     /**
      * Performs a HTTP GET request on the specified address
      * 
@@ -293,11 +490,137 @@ public abstract class AbstractRestAPI {
      * @param msg the Vertx Message object to which the error message can be send
      */
     protected void httpGet(ArangoPersistor persistor, String apiPath, JsonObject headers, int timeout, Message<JsonObject> msg) {
-        // launch the request
-        HttpClientRequest clientRequest = persistor.getClient().get(apiPath, new RestResponseHandler(msg, logger, helper));
+        // batch operations are collected and sent to the database as a whole
+        if (captureBatchPart(msg, HTTP_METHOD_GET, apiPath, headers, null, timeout)) return;
+
+        // identical reads that are in progress at the same time share a single request, except async ones since each of them creates a job
+        RequestCoalescer coalescer = persistor.getCoalescer();
+        if (coalescer != null && (headers == null || !headers.containsField(HEADER_ASYNC))) {
+            msg = coalescer.coalesce(apiPath + (headers != null ? headers.encode() : ""), msg);
+            if (msg == null) return;
+        }
 
-        // set Headers and end the request
-        addRequestHeaders(clientRequest, persistor, headers).setTimeout(timeout).end();        
+        // launch the request
+        performRequest(persistor, HTTP_METHOD_GET, apiPath, headers, null, timeout, msg);
+    }
+    
+    /**
+     * Reads a document, using the document cache if it's enabled.
+     * A cached document is returned right away while it's fresh, otherwise it's revalidated with an If-None-Match request.
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param dbName the database of the document
+     * @param handle the document handle (collection/key)
+     * @param variant the variant of the document, see {@link DocumentCache}
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param timeout timeout for the HTTP connection
+     * @param msg the Vertx Message object to which the error message can be send
+     */
+    protected void httpGetCached(ArangoPersistor persistor, final String dbName, final String handle, final String variant, String apiPath, JsonObject headers, int timeout, final Message<JsonObject> msg) {
+        final DocumentCache cache = persistor.getDocumentCache();
+        
+        // conditional and async requests are sent as specified
+        if (cache == null || msg instanceof BatchPart || (headers != null && (headers.containsField(HEADER_ASYNC) || headers.containsField(HEADER_IF_NONE_MATCH) || headers.containsField(HEADER_IF_MATCH)))) {
+            httpGet(persistor, apiPath, headers, timeout, msg);
+            return;
+        }
+        
+        final DocumentCache.Entry entry = cache.get(dbName, handle, variant);
+        if (entry != null && entry.isFresh()) {
+            msg.reply(entry.getReply());
+            return;
+        }
+        
+        JsonObject requestHeaders = headers != null ? headers.copy() : new JsonObject();
+        if (entry != null) requestHeaders.putString(HEADER_IF_NONE_MATCH, "\"" + entry.getRevision() + "\"");
+        
+        httpGet(persistor, apiPath, requestHeaders, timeout, new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                Integer statusCode = reply.getInteger(Helper.PROPERTY_MSG_STATUSCODE);
+                if (statusCode != null && statusCode == 304 && entry != null) {
+                    // not modified, so the cached document can be used
+                    cache.refresh(entry);
+                    msg.reply(entry.getReply());
+                    return;
+                }
+                
+                if (statusCode != null && statusCode == 200) cache.put(dbName, handle, variant, reply);
+                else cache.invalidate(dbName, handle);
+                msg.reply(reply);
+            }
+        }));
+    }
+    
+    /**
+     * Removes the document from the document cache (if it's enabled), both now and once the request that modifies it has been answered,
+     * and notifies the other instances of the modification (if cache invalidation is enabled)
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param dbName the database of the document
+     * @param handle the document handle (collection/key)
+     * @param msg the Vertx Message object containing the request that modifies the document
+     * @return the message to use for performing the request
+     */
+    protected Message<JsonObject> invalidateDocument(ArangoPersistor persistor, String dbName, String handle, Message<JsonObject> msg) {
+        return invalidate(persistor, dbName, handle, false, msg);
+    }
+    
+    /**
+     * Removes all documents of the collection from the document cache (if it's enabled), both now and once the request that modifies
+     * the collection has been answered, and notifies the other instances of the modification (if cache invalidation is enabled)
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param dbName the database of the collection
+     * @param collection the name of the collection
+     * @param msg the Vertx Message object containing the request that modifies the collection
+     * @return the message to use for performing the request
+     */
+    protected Message<JsonObject> invalidateCollection(ArangoPersistor persistor, String dbName, String collection, Message<JsonObject> msg) {
+        return invalidate(persistor, dbName, collection, true, msg);
+    }
+    
+    private Message<JsonObject> invalidate(ArangoPersistor persistor, final String dbName, final String name, final boolean collection, final Message<JsonObject> msg) {
+        final DocumentCache cache = persistor.getDocumentCache();
+        final CacheInvalidator invalidator = persistor.getCacheInvalidator();
+        if (cache == null && invalidator == null) return msg;
+        
+        if (cache != null) {
+            if (collection) cache.invalidateCollection(dbName, name);
+            else cache.invalidate(dbName, name);
+        }
+        
+        // batch parts have to be captured as they are, so they're only invalidated up front
+        if (msg instanceof BatchPart) {
+            publishInvalidation(invalidator, dbName, name, collection);
+            return msg;
+        }
+        
+        // a read that was in progress during the modification could have cached the old document again
+        return new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                if (cache != null) {
+                    // an async modification is only accepted yet, so the old document can still be read until its job is done
+                    Integer statusCode = reply.getInteger(Helper.PROPERTY_MSG_STATUSCODE);
+                    JsonObject result = reply.getObject(Helper.PROPERTY_MSG_RESULT);
+                    if (statusCode != null && statusCode == 202) cache.addPendingWrite(dbName, name, collection, result != null ? result.getString(MSG_PROPERTY_ID) : null);
+                    else if (collection) cache.invalidateCollection(dbName, name);
+                    else cache.invalidate(dbName, name);
+                }
+                publishInvalidation(invalidator, dbName, name, collection);
+                msg.reply(reply);
+            }
+        });
+    }
+    
+    // lets the other instances know about the modification
+    protected void publishInvalidation(CacheInvalidator invalidator, String dbName, String name, boolean collection) {
+        if (invalidator == null) return;
+        
+        if (collection) invalidator.publishCollection(dbName, name);
+        else invalidator.publishDocument(dbName, name);
     }
     
     /**
@@ -311,19 +634,11 @@ public abstract class AbstractRestAPI {
      * @param msg the Vertx Message object to which the error message can be send
      */
     protected void httpPost(ArangoPersistor persistor, String apiPath, JsonObject headers, JsonObject body, int timeout, Message<JsonObject> msg) {
+        // batch operations are collected and sent to the database as a whole
+        if (captureBatchPart(msg, HTTP_METHOD_POST, apiPath, headers, body, timeout)) return;
+
         // launch the request
-        HttpClientRequest clientRequest = persistor.getClient().post(apiPath, new RestResponseHandler(msg, logger, helper));
-        
-        // set headers
-        clientRequest = addRequestHeaders(clientRequest, persistor, headers);
-        // set content-length before we write the body !
-        clientRequest.putHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(body.toString().length()));
-        
-        // write the body
-        clientRequest.write(body.toString());
-        
-        // end the request
-        clientRequest.setTimeout(timeout).end();
+        performRequest(persistor, HTTP_METHOD_POST, apiPath, headers, body, timeout, msg);
     }
     
     /**
@@ -337,21 +652,11 @@ public abstract class AbstractRestAPI {
      * @param msg the Vertx Message object to which the error message can be send
      */
     protected void httpPut(ArangoPersistor persistor, String apiPath, JsonObject headers, JsonObject body, int timeout, Message<JsonObject> msg) {
+        // batch operations are collected and sent to the database as a whole
+        if (captureBatchPart(msg, HTTP_METHOD_PUT, apiPath, headers, body, timeout)) return;
+
         // launch the request
-        HttpClientRequest clientRequest = persistor.getClient().put(apiPath, new RestResponseHandler(msg, logger, helper));
-        
-        // set Headers and end the request
-        addRequestHeaders(clientRequest, persistor, headers);
-        
-        if (body != null) {
-        // set content-length before we write the body !
-            clientRequest.putHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(body.toString().length()));
-            // write the body
-            clientRequest.write(body.toString());
-        }
-        
-        // end the request
-        clientRequest.setTimeout(timeout).end();        
+        performRequest(persistor, HTTP_METHOD_PUT, apiPath, headers, body, timeout, msg);
     }
 
     /**
@@ -364,11 +669,11 @@ public abstract class AbstractRestAPI {
      * @param msg the Vertx Message object to which the error message can be send
      */
     protected void httpDelete(ArangoPersistor persistor, String apiPath, JsonObject headers, int timeout, Message<JsonObject> msg) {
+        // batch operations are collected and sent to the database as a whole
+        if (captureBatchPart(msg, HTTP_METHOD_DELETE, apiPath, headers, null, timeout)) return;
+
         // launch the request
-        HttpClientRequest clientRequest = persistor.getClient().delete(apiPath, new RestResponseHandler(msg, logger, helper));
-        
-        // set Headers and end the request
-        addRequestHeaders(clientRequest, persistor, null).setTimeout(timeout).end();        
+        performRequest(persistor, HTTP_METHOD_DELETE, apiPath, headers, null, timeout, msg);
     }
     
     /**
@@ -382,21 +687,151 @@ public abstract class AbstractRestAPI {
      * @param msg the Vertx Message object to which the error message can be send
      */
     protected void httpPatch(ArangoPersistor persistor, String apiPath, JsonObject headers, JsonObject body, int timeout, Message<JsonObject> msg) {
+        // batch operations are collected and sent to the database as a whole
+        if (captureBatchPart(msg, HTTP_METHOD_PATCH, apiPath, headers, body, timeout)) return;
+
         // launch the request
-        HttpClientRequest clientRequest = persistor.getClient().patch(apiPath, new RestResponseHandler(msg, logger, helper));
+        performRequest(persistor, HTTP_METHOD_PATCH, apiPath, headers, body, timeout, msg);
+    }
+    
+    /**
+     * Performs the request and replies to the message with the response.
+     * If a retry policy is configured, then the request is performed again when it fails and the policy allows it.
+     * Reads are considered idempotent, as well as any request that is marked as safe to retry with the "retry" property.
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param method the HTTP method of the request
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param body optional JSON document to send in the body of the request
+     * @param timeout timeout for the HTTP connection
+     * @param msg the Vertx Message object to which the response will be sent
+     */
+    protected void performRequest(ArangoPersistor persistor, String method, String apiPath, JsonObject headers, JsonObject body, int timeout, Message<JsonObject> msg) {
+        performRequest(persistor, method, apiPath, headers, body, timeout, HTTP_METHOD_GET.equals(method) || HTTP_METHOD_HEAD.equals(method), msg);
+    }
+    
+    /**
+     * Performs the request and replies to the message with the response.
+     * Read-only requests are sent to a second endpoint as well if hedging is enabled and the first endpoint doesn't answer in time.
+     * Requests are retried if a retry policy is configured and the request fails (or, if it was hedged, both endpoints failed).
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param method the HTTP method of the request
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param body optional JSON document to send in the body of the request
+     * @param timeout timeout for the HTTP connection
+     * @param readOnly whether the request only reads data, regardless of its method
+     * @param msg the Vertx Message object to which the response will be sent
+     */
+    protected void performRequest(ArangoPersistor persistor, String method, String apiPath, JsonObject headers, JsonObject body, int timeout, boolean readOnly, Message<JsonObject> msg) {
+        // async requests create a job on the server, so they're never sent twice
+        HedgingPolicy hedging = persistor.getHedgingPolicy();
+        RetryPolicy policy = persistor.getRetryPolicy();
+        if (hedging != null && readOnly && (headers == null || !headers.containsField(HEADER_ASYNC))) {
+            if (policy != null) policy.requestStarted();
+            new HedgedRequest(persistor, hedging, policy, 0, method, apiPath, headers, body, timeout, msg).start();
+            return;
+        }
         
-        // set headers
-        clientRequest = addRequestHeaders(clientRequest, persistor, headers);
-        // set content-length before we write the body !
-        clientRequest.putHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(body.toString().length()));
+        if (policy == null) {
+            sendRequest(persistor, null, method, apiPath, headers, body, timeout, new RestResponseHandler(msg, logger, helper), null);
+            return;
+        }
+        
+        policy.requestStarted();
+        boolean idempotent = readOnly || helper.getOptionalBoolean(msg.body(), MSG_PROPERTY_RETRY, false);
+        performAttempt(persistor, policy, idempotent, 0, method, apiPath, headers, body, timeout, msg);
+    }
+    
+    private void performAttempt(final ArangoPersistor persistor, final RetryPolicy policy, final boolean idempotent, final int attempt, final String method, final String apiPath, final JsonObject headers, final JsonObject body, final int timeout, final Message<JsonObject> msg) {
+        final Handler<Long> retryHandler = new Handler<Long>() {
+            @Override
+            public void handle(Long event) {
+                performAttempt(persistor, policy, idempotent, attempt + 1, method, apiPath, headers, body, timeout, msg);
+            }
+        };
+        
+        final RestResponseHandler responseHandler = new RestResponseHandler(new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                long delay = policy.isRetryable(reply, idempotent) ? policy.acquire(attempt) : -1;
+                if (delay < 0) {
+                    msg.reply(reply);
+                    return;
+                }
+                
+                logger.debug(logPrefix + "retrying " + method + " " + apiPath + " in " + delay + " ms (statuscode " + reply.getInteger(Helper.PROPERTY_MSG_STATUSCODE) + ")");
+                persistor.getVertx().setTimer(delay, retryHandler);
+            }
+        }), logger, helper);
         
-        // write the body
-        clientRequest.write(body.toString());
+        sendRequest(persistor, null, method, apiPath, headers, body, timeout, responseHandler, new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable cause) {
+                // a response that still arrives for this attempt is ignored
+                responseHandler.cancel();
+                
+                long delay = policy.isRetryable(cause, idempotent) ? policy.acquire(attempt) : -1;
+                if (delay < 0) {
+                    helper.sendFailure(msg, cause);
+                    return;
+                }
+                
+                logger.debug(logPrefix + "retrying " + method + " " + apiPath + " in " + delay + " ms (" + cause.getMessage() + ")");
+                persistor.getVertx().setTimer(delay, retryHandler);
+            }
+        });
+    }
+    
+    private void sendRequest(ArangoPersistor persistor, Endpoint endpoint, String method, String apiPath, JsonObject headers, JsonObject body, int timeout, RestResponseHandler responseHandler, Handler<Throwable> failureHandler) {
+        responseHandler.setMetrics(persistor.getMetrics());
+        HttpClientRequest clientRequest = createRequest(persistor, endpoint, method, apiPath, headers, timeout, responseHandler, failureHandler);
+        if (clientRequest == null) return;
         
-        // end the request
-        clientRequest.setTimeout(timeout).end();        
+        // write the body (if any) and end the request
+        if (body != null) responseHandler.setBytesOut(endWithBody(clientRequest, body));
+        else clientRequest.end();
+    }
+    
+    /**
+     * Performs a request that only reads data even though it isn't a GET request (e.g. a query), so it can be hedged and retried like a read
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param method the HTTP method of the request
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param body the JSON document to send in the body of the request
+     * @param timeout timeout for the HTTP connection
+     * @param msg the Vertx Message object to which the response will be sent
+     */
+    protected void httpQuery(ArangoPersistor persistor, String method, String apiPath, JsonObject headers, JsonObject body, int timeout, Message<JsonObject> msg) {
+        // batch operations are collected and sent to the database as a whole
+        if (captureBatchPart(msg, method, apiPath, headers, body, timeout)) return;
+
+        // launch the request
+        performRequest(persistor, method, apiPath, headers, body, timeout, true, msg);
     }
     
+    /**
+     * Writes the JSON document as the body of the request and ends the request.
+     * The document is serialized only once and the content-length is the number of UTF-8 encoded bytes, not the number of characters.
+     * 
+     * @param clientRequest the request to which the body should be written
+     * @param body the JSON document to send in the body of the request
+     * @return the number of bytes that were written
+     */
+    protected int endWithBody(HttpClientRequest clientRequest, JsonObject body) {
+        Buffer encodedBody = new Buffer(body.encode(), "UTF-8");
+        
+        // set content-length before we write the body !
+        clientRequest.putHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(encodedBody.length()));
+        clientRequest.end(encodedBody);
+        
+        return encodedBody.length();
+    }
+
     /**
      * Performs a HTTP HEAD request on the specified address
      * 
@@ -407,12 +842,251 @@ public abstract class AbstractRestAPI {
      * @param msg the Vertx Message object to which the error message can be send
      */
     protected void httpHead(ArangoPersistor persistor, String apiPath, JsonObject headers, int timeout, Message<JsonObject> msg) {
+        // batch operations are collected and sent to the database as a whole
+        if (captureBatchPart(msg, HTTP_METHOD_HEAD, apiPath, headers, null, timeout)) return;
+
+        // launch the request
+        performRequest(persistor, HTTP_METHOD_HEAD, apiPath, headers, null, timeout, msg);
+    }
+
+    /**
+     * Performs a HTTP POST request on the specified address, using a raw body with the specified content type
+     * 
+     * @param persistor instance of the RestPersistor
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param body the raw content to send in the body of the request
+     * @param contentType the content type of the body
+     * @param timeout timeout for the HTTP connection
+     * @param responseHandler the handler that will process the response
+     */
+    protected void httpPost(ArangoPersistor persistor, String apiPath, JsonObject headers, Buffer body, String contentType, int timeout, Handler<HttpClientResponse> responseHandler) {
+        // batch requests are recorded like any other request
+        if (responseHandler instanceof BatchResponseHandler) {
+            ((BatchResponseHandler) responseHandler).setMetrics(persistor.getMetrics());
+            ((BatchResponseHandler) responseHandler).setBytesOut(body.length());
+        }
+        
         // launch the request
-        HttpClientRequest clientRequest = persistor.getClient().head(apiPath, new RestResponseHandler(msg, logger, helper));
+        HttpClientRequest clientRequest = createRequest(persistor, HTTP_METHOD_POST, apiPath, headers, timeout, responseHandler);
+        if (clientRequest == null) return;
+        
+        // set headers
+        clientRequest.putHeader(HttpHeaders.CONTENT_TYPE, contentType);
+        clientRequest.putHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(body.length()));
         
-        // set Headers and end the request
-        addRequestHeaders(clientRequest, persistor, headers).setTimeout(timeout).end();        
+        // write the body and end the request
+        clientRequest.end(body);
+    }
+
+    /**
+     * Starts a chunked HTTP POST request on the specified address.
+     * The caller is responsible for writing the body and ending the request, which allows large bodies to be streamed to the database.
+     *
+     * @param persistor instance of the RestPersistor
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param contentType the content type of the body
+     * @param timeout timeout for the HTTP connection
+     * @param msg the Vertx Message object to which the response will be sent
+     * @return the started request or null if the request can't be performed (in which case an error has been sent already)
+     */
+    protected HttpClientRequest httpPostChunked(ArangoPersistor persistor, String apiPath, JsonObject headers, String contentType, int timeout, Message<JsonObject> msg) {
+        return httpPostChunked(persistor, apiPath, headers, contentType, timeout, msg, new RestResponseHandler(msg, logger, helper));
+    }
+
+    /**
+     * Starts a chunked HTTP POST request on the specified address, using the specified handler for the response.
+     * This allows the caller to cancel the response handler if it has to give up on the request before the body is complete.
+     *
+     * @param persistor instance of the RestPersistor
+     * @param apiPath URL path to use for the request
+     * @param headers optional headers to set in the request
+     * @param contentType the content type of the body
+     * @param timeout timeout for the HTTP connection
+     * @param msg the Vertx Message object to which the response will be sent
+     * @param responseHandler the handler that will send the response to the message
+     * @return the started request or null if the request can't be performed (in which case an error has been sent already)
+     */
+    protected HttpClientRequest httpPostChunked(ArangoPersistor persistor, String apiPath, JsonObject headers, String contentType, int timeout, Message<JsonObject> msg, RestResponseHandler responseHandler) {
+        // streamed requests can't be captured
+        if (msg instanceof BatchPart) {
+            helper.sendError(msg, "streamed requests can't be part of a batch");
+            return null;
+        }
+
+        // launch the request
+        responseHandler.setMetrics(persistor.getMetrics());
+        HttpClientRequest clientRequest = createRequest(persistor, HTTP_METHOD_POST, apiPath, headers, timeout, responseHandler);
+        if (clientRequest == null) return null;
+
+        // set headers
+        clientRequest.putHeader(HttpHeaders.CONTENT_TYPE, contentType);
+
+        return clientRequest.setChunked(true);
     }
 
     protected abstract void performAction(Message<JsonObject> msg, String action, JsonObject headers, int timeout, String dbName);
+    
+    // a read that is sent to a second endpoint if the first one doesn't answer in time, the first answer wins
+    private class HedgedRequest {
+        
+        private final ArangoPersistor persistor;
+        private final HedgingPolicy policy;
+        private final RetryPolicy retryPolicy;
+        private final int attempt;
+        private final String method;
+        private final String apiPath;
+        private final JsonObject headers;
+        private final JsonObject body;
+        private final int timeout;
+        private final Message<JsonObject> msg;
+        private final String kind;
+        
+        private Endpoint primary = null;
+        private Endpoint secondary = null;
+        private long start = 0;
+        private long timerId = -1;
+        private int pending = 0;
+        private boolean done = false;
+        
+        private HedgedRequest(ArangoPersistor persistor, HedgingPolicy policy, RetryPolicy retryPolicy, int attempt, String method, String apiPath, JsonObject headers, JsonObject body, int timeout, Message<JsonObject> msg) {
+            this.persistor = persistor;
+            this.policy = policy;
+            this.retryPolicy = retryPolicy;
+            this.attempt = attempt;
+            this.method = method;
+            this.apiPath = apiPath;
+            this.headers = headers;
+            this.body = body;
+            this.timeout = timeout;
+            this.msg = msg;
+            this.kind = msg.body().getString(ArangoPersistor.MSG_PROPERTY_TYPE) + "." + msg.body().getString(MSG_PROPERTY_ACTION);
+        }
+        
+        private void start() {
+            start = System.currentTimeMillis();
+            primary = persistor.getEndpoint();
+            send(primary, false);
+            
+            long delay = policy.getDelay(kind);
+            if (delay >= 0 && !done) {
+                timerId = persistor.getVertx().setTimer(delay, new Handler<Long>() {
+                    @Override
+                    public void handle(Long event) {
+                        timerId = -1;
+                        hedge();
+                    }
+                });
+            }
+        }
+        
+        private void hedge() {
+            if (done || secondary != null) return;
+            
+            secondary = persistor.getEndpoint(primary);
+            if (secondary == null) return;
+            
+            policy.hedged();
+            logger.debug(logPrefix + "no answer from " + primary.getAddress() + " yet, also sending " + method + " " + apiPath + " to " + secondary.getAddress());
+            send(secondary, true);
+        }
+        
+        private void send(final Endpoint endpoint, final boolean hedged) {
+            pending++;
+            final RestResponseHandler responseHandler = new RestResponseHandler(new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+                @Override
+                public void handle(JsonObject reply) {
+                    pending--;
+                    completed(endpoint, hedged, reply, null);
+                }
+            }), logger, helper);
+            
+            sendRequest(persistor, endpoint, method, apiPath, headers, body, timeout, responseHandler, new Handler<Throwable>() {
+                @Override
+                public void handle(Throwable cause) {
+                    // a response that still arrives for this leg is ignored
+                    responseHandler.cancel();
+                    pending--;
+                    completed(endpoint, hedged, null, cause);
+                }
+            });
+        }
+        
+        // either the reply or the cause of the failure is specified
+        private void completed(Endpoint endpoint, boolean hedged, JsonObject reply, Throwable cause) {
+            // the latency is measured from the start of the read, so a hedged answer also counts the time spent waiting for the first endpoint
+            long latency = System.currentTimeMillis() - start;
+            Integer statusCode = reply != null ? reply.getInteger(Helper.PROPERTY_MSG_STATUSCODE) : null;
+            boolean answered = statusCode != null && statusCode < 500;
+            
+            if (done) {
+                // the latency of the slower first endpoint still belongs to the distribution, leaving it out would make it look faster
+                if (answered && !hedged) policy.record(kind, latency);
+                if (reply != null) discard(endpoint, reply);
+                return;
+            }
+            
+            // a server error or failure isn't an answer as long as the other endpoint may still provide one
+            if (!answered) {
+                if (secondary == null) {
+                    cancelTimer();
+                    hedge();
+                    if (secondary != null) return;
+                }
+                else if (pending > 0) {
+                    return;
+                }
+            }
+            else {
+                policy.record(kind, latency);
+                if (hedged) policy.won();
+            }
+            
+            done = true;
+            cancelTimer();
+            if (!answered && retry(reply, cause)) return;
+            
+            if (reply != null) msg.reply(reply);
+            else helper.sendFailure(msg, cause);
+        }
+        
+        // starts the read all over again (including hedging) if none of the endpoints answered and the retry policy allows it
+        private boolean retry(JsonObject reply, Throwable cause) {
+            if (retryPolicy == null) return false;
+            
+            boolean retryable = reply != null ? retryPolicy.isRetryable(reply, true) : retryPolicy.isRetryable(cause, true);
+            long delay = retryable ? retryPolicy.acquire(attempt) : -1;
+            if (delay < 0) return false;
+            
+            logger.debug(logPrefix + "retrying " + method + " " + apiPath + " in " + delay + " ms (" + (reply != null ? "statuscode " + reply.getInteger(Helper.PROPERTY_MSG_STATUSCODE) : cause.getMessage()) + ")");
+            persistor.getVertx().setTimer(delay, new Handler<Long>() {
+                @Override
+                public void handle(Long event) {
+                    new HedgedRequest(persistor, policy, retryPolicy, attempt + 1, method, apiPath, headers, body, timeout, msg).start();
+                }
+            });
+            
+            return true;
+        }
+        
+        // the answer of the slower endpoint isn't needed, but a cursor it created would remain open until it expires
+        private void discard(Endpoint endpoint, JsonObject reply) {
+            Object result = reply.getValue(Helper.PROPERTY_MSG_RESULT);
+            if (!(result instanceof JsonObject) || !((JsonObject) result).getBoolean("hasMore", false)) return;
+            String id = ((JsonObject) result).getString(MSG_PROPERTY_ID);
+            if (id == null) return;
+            
+            StringBuilder cursorPath = new StringBuilder();
+            if (apiPath.startsWith("/_db/")) cursorPath.append(apiPath, 0, apiPath.indexOf('/', "/_db/".length()));
+            cursorPath.append(API_BASE_PATH).append("/cursor/").append(id);
+            sendRequest(persistor, endpoint, HTTP_METHOD_DELETE, cursorPath.toString(), null, null, timeout, new RestResponseHandler(logger), null);
+        }
+        
+        private void cancelTimer() {
+            if (timerId >= 0) persistor.getVertx().cancelTimer(timerId);
+            timerId = -1;
+        }
+        
+    }
 }
@@ -16,10 +16,13 @@
 
 package santo.vertx.arangodb.rest;
 
+import java.util.regex.Pattern;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.CursorManager;
+import santo.vertx.arangodb.InternalMessage;
 import static santo.vertx.arangodb.rest.AbstractRestAPI.API_BASE_PATH;
 
 /**
@@ -48,6 +51,18 @@ public class AqlAPI extends AbstractRestAPI {
     public static final String MSG_ACTION_CREATE_FUNCTION = "create-function";
     public static final String MSG_ACTION_GET_FUNCTION = "get-function";
     public static final String MSG_ACTION_DELETE_FUNCTION = "delete-function";
+    public static final String MSG_ACTION_STREAM = "stream";
+    public static final String MSG_ACTION_CURSORS = "cursors";
+    
+    public static final String MSG_PROPERTY_ADDRESS = "address";
+    public static final String MSG_PROPERTY_BATCH_SIZE = "batchSize";
+    public static final String MSG_PROPERTY_WINDOW = "window";
+    public static final String MSG_PROPERTY_ACK_TIMEOUT = "ackTimeout";
+    
+    private static final int DEFAULT_STREAM_WINDOW = 2;
+    
+    // a query containing any of these keywords is considered to modify documents, even if the keyword is only used as a name
+    private static final Pattern MODIFYING_QUERY = Pattern.compile("\\b(INSERT|UPDATE|REPLACE|REMOVE|UPSERT)\\b", Pattern.CASE_INSENSITIVE);
 
     public AqlAPI(Logger logger, ArangoPersistor persistor) {
         this.logger = logger;
@@ -64,6 +79,12 @@ public class AqlAPI extends AbstractRestAPI {
             case MSG_ACTION_EXECUTE_CURSOR:
                 execute(msg, timeout, headers, dbName);
                 break;                
+            case MSG_ACTION_STREAM:
+                stream(msg, timeout, dbName);
+                break;                
+            case MSG_ACTION_CURSORS:
+                cursors(msg);
+                break;                
             case MSG_ACTION_VALIDATE:
             case MSG_ACTION_VALIDATE_QUERY:
                 validate(msg, timeout, headers, dbName);
@@ -111,7 +132,35 @@ public class AqlAPI extends AbstractRestAPI {
         if (dbName != null) apiPath.append("/_db/").append(dbName);
         apiPath.append(API_PATH_CURSOR);
 
-        httpPost(persistor, apiPath.toString(), headers, document, timeout, msg);
+        // queries that don't modify any documents are performed as reads
+        if (MODIFYING_QUERY.matcher(document.getString(DOC_ATTRIBUTE_QUERY)).find()) httpPost(persistor, apiPath.toString(), headers, document, timeout, trackCursor(dbName, msg));
+        else httpQuery(persistor, HTTP_METHOD_POST, apiPath.toString(), headers, document, timeout, trackCursor(dbName, msg));
+    }
+
+    // executes a query and delivers all batches of the cursor to the specified address
+    private void stream(Message<JsonObject> msg, int timeout, String dbName) {
+        // check required params
+        JsonObject document = helper.getMandatoryObject(msg.body(), MSG_PROPERTY_DOCUMENT, msg);
+        if (document == null) return;
+        
+        // Check required attributes
+        if (!ensureAttribute(document, DOC_ATTRIBUTE_QUERY, msg)) return;
+        
+        // REQUIRED: the eventbus address to which the batches are delivered
+        String address = helper.getMandatoryString(msg.body(), MSG_PROPERTY_ADDRESS, msg);
+        if (address == null) return;
+        
+        // OPTIONAL: the number of results per batch
+        int batchSize = helper.getOptionalInt(msg.body(), MSG_PROPERTY_BATCH_SIZE, 0);
+        if (batchSize > 0) document = document.copy().putNumber(MSG_PROPERTY_BATCH_SIZE, batchSize);
+        
+        // OPTIONAL: the maximum number of batches that are delivered but not acknowledged yet
+        int window = helper.getOptionalInt(msg.body(), MSG_PROPERTY_WINDOW, DEFAULT_STREAM_WINDOW);
+        
+        // OPTIONAL: the time (in ms) the consumer gets to acknowledge a batch
+        int ackTimeout = helper.getOptionalInt(msg.body(), MSG_PROPERTY_ACK_TIMEOUT, timeout);
+        
+        new CursorStream(this, persistor, logger, address, dbName, window, ackTimeout, timeout).start(msg, document);
     }
 
     // parses the specified query and validates it
@@ -145,7 +194,7 @@ public class AqlAPI extends AbstractRestAPI {
         apiPath.append(API_PATH_CURSOR);
         apiPath.append("/").append(id);
 
-        httpPut(persistor, apiPath.toString(), headers, null, timeout, msg);
+        httpPut(persistor, apiPath.toString(), headers, null, timeout, trackCursor(dbName, msg));
     }
 
     // deletes a cursor
@@ -162,9 +211,35 @@ public class AqlAPI extends AbstractRestAPI {
         apiPath.append(API_PATH_CURSOR);
         apiPath.append("/").append(id);
 
+        if (persistor.getCursorManager() != null) persistor.getCursorManager().release(dbName, id);
         httpDelete(persistor, apiPath.toString(), headers, timeout, msg);
     }
 
+    // returns the cursors that are being tracked, and the number of cursors that were deleted because they weren't used anymore
+    private void cursors(Message<JsonObject> msg) {
+        CursorManager manager = persistor.getCursorManager();
+        if (manager == null) {
+            helper.sendError(msg, "cursors aren't tracked, cursor_ttl isn't configured");
+            return;
+        }
+        
+        helper.sendSuccess(msg, "success", manager.toJson());
+    }
+    
+    // registers the cursor used by the request, so it's deleted if it isn't read until the end
+    private Message<JsonObject> trackCursor(String dbName, Message<JsonObject> msg) {
+        CursorManager manager = persistor.getCursorManager();
+        
+        // batch parts have to be captured as they are
+        if (manager == null || msg instanceof BatchPart) return msg;
+        
+        // the message may have been wrapped (e.g. while it was queued), in which case its reply address doesn't identify the client anymore
+        String client = helper.getOptionalString(msg.body(), MSG_PROPERTY_CLIENT);
+        if (client == null && !(msg instanceof InternalMessage)) client = msg.replyAddress();
+        
+        return manager.track(dbName, client, msg);
+    }
+
     // explains how an AQL query would be executed
     private void explain(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
         // check required params
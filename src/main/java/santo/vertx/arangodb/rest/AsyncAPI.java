@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import java.util.Arrays;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.DocumentCache;
+import santo.vertx.arangodb.Helper;
+import santo.vertx.arangodb.InternalMessage;
+
+/**
+ * Manages the results of actions that were executed asynchronously (using the async property of a request)
+ *
+ * @author sANTo
+ */
+public class AsyncAPI extends AbstractRestAPI {
+    
+    public static final String API_PATH = API_BASE_PATH + "/job";
+
+    public static final String MSG_ACTION_STATUS = "status";
+    public static final String MSG_ACTION_FETCH = "fetch";
+    public static final String MSG_ACTION_RESULT = "result";
+    public static final String MSG_ACTION_CANCEL = "cancel";
+    public static final String MSG_ACTION_DELETE = "delete";
+    public static final String MSG_ACTION_LIST = "list";
+    
+    public static final String MSG_PROPERTY_STAMP = "stamp";
+    public static final String MSG_PROPERTY_STATE = "state";
+    public static final String MSG_PROPERTY_COUNT = "count";
+    
+    public static final String JOB_STATE_DONE = "done";
+    public static final String JOB_STATE_PENDING = "pending";
+    public static final String JOB_ID_ALL = "all";
+    public static final String JOB_ID_EXPIRED = "expired";
+
+    public AsyncAPI(Logger logger, ArangoPersistor persistor) {
+        this.logger = logger;
+        this.persistor = persistor;
+    }
+    
+    @Override
+    protected void performAction(Message<JsonObject> msg, String action, JsonObject headers, int timeout, String dbName) {
+        logger.trace(logPrefix + "Action: " + action);
+        
+        switch (action) {
+            case MSG_ACTION_STATUS:
+                getJobStatus(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_FETCH:
+            case MSG_ACTION_RESULT:
+                fetchJobResult(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_CANCEL:
+                cancelJob(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_DELETE:
+                deleteJob(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_LIST:
+                getJobList(msg, timeout, headers, dbName);
+                break;
+
+            default:
+                logger.info(logPrefix + "invalid action, ignoring (" + action + ")");
+                helper.sendError(msg, "invalid action, ignoring (" + action + ")");
+        }
+    }
+
+    // retrieves the status of the specified job (200 if done, 204 if still pending)
+    private void getJobStatus(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        String id = helper.getMandatoryString(msg.body(), MSG_PROPERTY_ID, msg);
+        if (id == null) return;
+
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+        apiPath.append("/").append(id);
+
+        httpGet(persistor, apiPath.toString(), headers, timeout, completeJob(id, false, msg));
+    }
+
+    // retrieves the result of the specified job, the result is removed from the server afterwards
+    private void fetchJobResult(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        String id = helper.getMandatoryString(msg.body(), MSG_PROPERTY_ID, msg);
+        if (id == null) return;
+
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+        apiPath.append("/").append(id);
+
+        httpPut(persistor, apiPath.toString(), headers, null, timeout, completeJob(id, true, msg));
+    }
+
+    // cancels the specified job if it's still running
+    private void cancelJob(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        String id = helper.getMandatoryString(msg.body(), MSG_PROPERTY_ID, msg);
+        if (id == null) return;
+
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+        apiPath.append("/").append(id).append("/").append(MSG_ACTION_CANCEL);
+
+        httpPut(persistor, apiPath.toString(), headers, null, timeout, msg);
+    }
+
+    // deletes the result of the specified job, of all jobs or of all jobs that are older than the specified stamp
+    private void deleteJob(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        // the id of a job or one of the special values "all" or "expired"
+        String id = helper.getMandatoryString(msg.body(), MSG_PROPERTY_ID, msg);
+        if (id == null) return;
+
+        // OPTIONAL: unix timestamp before which the results of all jobs are deleted (only applicable to expired)
+        long stamp = helper.getOptionalLong(msg.body(), MSG_PROPERTY_STAMP, -1);
+        if (id.equals(JOB_ID_EXPIRED) && !ensureParameter(stamp >= 0 ? stamp : null, MSG_PROPERTY_STAMP, msg)) return;
+
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+        apiPath.append("/").append(id);
+        if (id.equals(JOB_ID_EXPIRED)) apiPath.append("?").append(MSG_PROPERTY_STAMP).append("=").append(stamp);
+
+        httpDelete(persistor, apiPath.toString(), headers, timeout, msg);
+    }
+
+    // retrieves the ids of the jobs that are done or still pending
+    private void getJobList(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        String state = helper.getMandatoryString(msg.body(), MSG_PROPERTY_STATE, msg);
+        if (state == null) return;
+        if (!ensureAttributeValue(MSG_PROPERTY_STATE, state, Arrays.asList(JOB_STATE_DONE, JOB_STATE_PENDING), msg)) return;
+
+        // OPTIONAL: maximum number of job ids to return
+        int count = helper.getOptionalInt(msg.body(), MSG_PROPERTY_COUNT, -1);
+
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+        apiPath.append("/").append(state);
+        if (count > 0) apiPath.append("?").append(MSG_PROPERTY_COUNT).append("=").append(count);
+
+        httpGet(persistor, apiPath.toString(), headers, timeout, msg);
+    }
+    
+    // lets the document cache know when the job of an async modification is done, since the modification has been applied by then
+    private Message<JsonObject> completeJob(final String id, final boolean fetch, final Message<JsonObject> msg) {
+        final DocumentCache cache = persistor.getDocumentCache();
+        if (cache == null) return msg;
+        
+        return new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                // 204 means the job is still pending, the status of a job that is done is 200 and its result has the original status code
+                Integer statusCode = reply.getInteger(Helper.PROPERTY_MSG_STATUSCODE);
+                boolean done = statusCode != null && (fetch ? statusCode != 204 && statusCode < 500 : statusCode == 200);
+                
+                DocumentCache.PendingWrite write = done ? cache.completePendingWrite(id) : null;
+                if (write != null) publishInvalidation(persistor.getCacheInvalidator(), write.getDbName(), write.getName(), write.isCollection());
+                msg.reply(reply);
+            }
+        });
+    }
+
+}
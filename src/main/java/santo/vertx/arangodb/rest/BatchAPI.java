@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+
+/**
+ *
+ * @author sANTo
+ */
+public class BatchAPI extends AbstractRestAPI {
+
+    public static final String API_PATH = API_BASE_PATH + "/batch";
+
+    public static final String MSG_ACTION_EXECUTE = "execute";
+
+    public static final String MSG_PROPERTY_REQUESTS = "requests";
+
+    public static final String CONTENT_TYPE_BATCH = "multipart/form-data";
+    public static final String CONTENT_TYPE_BATCH_PART = "application/x-arango-batchpart";
+
+    private static final String CRLF = "\r\n";
+
+    public BatchAPI(Logger logger, ArangoPersistor persistor) {
+        this.logger = logger;
+        this.persistor = persistor;
+    }
+
+    @Override
+    protected void performAction(Message<JsonObject> msg, String action, JsonObject headers, int timeout, String dbName) {
+        logger.trace(logPrefix + "Action: " + action);
+
+        switch (action) {
+            case MSG_ACTION_EXECUTE:
+                executeBatch(msg, timeout, headers, dbName);
+                break;
+
+            default:
+                logger.info(logPrefix + "invalid action, ignoring (" + action + ")");
+                helper.sendError(msg, "invalid action, ignoring (" + action + ")");
+        }
+    }
+
+    // executes all requests in a single batch request
+    private void executeBatch(final Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        // REQUIRED: the requests that should be executed, each using the same format as a regular request
+        JsonArray requests = helper.getMandatoryArray(msg.body(), MSG_PROPERTY_REQUESTS, msg);
+        if (requests == null) return;
+        if (requests.size() == 0) {
+            helper.sendError(msg, "batch doesn't contain any requests");
+            return;
+        }
+
+        final List<BatchPart> parts = new ArrayList<>();
+        final int partCount = requests.size();
+        Handler<JsonObject> partHandler = new Handler<JsonObject>() {
+            private int replies = 0;
+            
+            @Override
+            public void handle(JsonObject reply) {
+                // reply as soon as all parts have been answered
+                if (++replies == partCount) sendBatchReply(msg, parts);
+            }
+        };
+
+        // create all parts before processing them, so the batch can't be considered complete too early
+        for (Object oRequest : requests) {
+            JsonObject request = oRequest instanceof JsonObject ? (JsonObject) oRequest : new JsonObject();
+            parts.add(new BatchPart(msg.address(), Integer.toString(parts.size() + 1), request, partHandler));
+        }
+
+        // let the responsible API's capture the HTTP request for each part
+        List<BatchPart> capturedParts = new ArrayList<>();
+        int index = 0;
+        for (Object oRequest : requests) {
+            BatchPart part = parts.get(index++);
+            if (!(oRequest instanceof JsonObject)) {
+                helper.sendError(part, "invalid batch request, JSON object expected");
+                continue;
+            }
+
+            String type = helper.getMandatoryString(part.body(), ArangoPersistor.MSG_PROPERTY_TYPE, part);
+            if (type == null) continue;
+            if (type.equals(ArangoPersistor.MSG_TYPE_BATCH)) {
+                helper.sendError(part, "batch requests can't be nested");
+                continue;
+            }
+
+            // the individual requests are executed in the database of the batch
+            if (!part.body().containsField(MSG_PROPERTY_DATABASE)) part.body().putString(MSG_PROPERTY_DATABASE, dbName);
+
+            AbstractRestAPI api = persistor.getAPI(type, part);
+            if (api != null) api.processRequest(part);
+
+            if (part.isCaptured()) {
+                if (part.getDbName() != null && !part.getDbName().equals(dbName)) {
+                    helper.sendError(part, "all requests in a batch should use the same database (" + dbName + ")");
+                }
+                else {
+                    capturedParts.add(part);
+                }
+            }
+            else if (!part.isReplied()) {
+                helper.sendError(part, "request type can't be used in a batch (" + type + ")");
+            }
+        }
+
+        executeParts(capturedParts, dbName, headers, timeout);
+    }
+
+    /**
+     * Executes the specified parts as one batch request.
+     * The requests of the parts should have been captured already, and a reply will be sent to each part once the batch request completes.
+     * 
+     * @param parts the parts of the batch
+     * @param dbName the database in which the requests should be executed
+     * @param headers optional headers to set in the batch request
+     * @param timeout timeout for the HTTP connection
+     */
+    public void executeParts(List<BatchPart> parts, String dbName, JsonObject headers, int timeout) {
+        // nothing to send if all parts were rejected
+        if (parts.isEmpty()) return;
+        
+        // no need for the overhead of a batch request if there's only one operation
+        if (parts.size() == 1) {
+            executePart(parts.get(0), dbName);
+            return;
+        }
+
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+
+        String boundary = "batch-" + UUID.randomUUID().toString();
+        Buffer body = encodeParts(parts, boundary);
+
+        httpPost(persistor, apiPath.toString(), headers, body, CONTENT_TYPE_BATCH + "; boundary=" + boundary, timeout, new BatchResponseHandler(parts, boundary, dbName, logger, helper));
+    }
+
+    // performs the captured request of a single part as a regular request
+    private void executePart(BatchPart part, String dbName) {
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(part.getPath());
+
+        switch (part.getMethod()) {
+            case HTTP_METHOD_GET:
+                httpGet(persistor, apiPath.toString(), part.getHeaders(), part.getTimeout(), part);
+                break;
+            case HTTP_METHOD_POST:
+                httpPost(persistor, apiPath.toString(), part.getHeaders(), part.getDocument(), part.getTimeout(), part);
+                break;
+            case HTTP_METHOD_PUT:
+                httpPut(persistor, apiPath.toString(), part.getHeaders(), part.getDocument(), part.getTimeout(), part);
+                break;
+            case HTTP_METHOD_PATCH:
+                httpPatch(persistor, apiPath.toString(), part.getHeaders(), part.getDocument(), part.getTimeout(), part);
+                break;
+            case HTTP_METHOD_DELETE:
+                httpDelete(persistor, apiPath.toString(), part.getHeaders(), part.getTimeout(), part);
+                break;
+            case HTTP_METHOD_HEAD:
+                httpHead(persistor, apiPath.toString(), part.getHeaders(), part.getTimeout(), part);
+                break;
+
+            default:
+                helper.sendError(part, "unsupported method for batch part (" + part.getMethod() + ")");
+        }
+    }
+
+    // encodes the parts as a multipart/form-data body
+    private Buffer encodeParts(List<BatchPart> parts, String boundary) {
+        StringBuilder body = new StringBuilder();
+        for (BatchPart part : parts) {
+            body.append("--").append(boundary).append(CRLF);
+            body.append("Content-Type: ").append(CONTENT_TYPE_BATCH_PART).append(CRLF);
+            body.append("Content-Id: ").append(part.getContentId()).append(CRLF);
+            body.append(CRLF);
+
+            // the embedded HTTP request
+            body.append(part.getMethod()).append(" ").append(part.getPath()).append(" HTTP/1.1").append(CRLF);
+            JsonObject partHeaders = part.getHeaders();
+            if (partHeaders != null) {
+                for (String header : partHeaders.getFieldNames()) {
+                    body.append(header).append(": ").append(partHeaders.getString(header)).append(CRLF);
+                }
+            }
+            body.append(CRLF);
+            if (part.getDocument() != null) body.append(part.getDocument().encode());
+            body.append(CRLF);
+        }
+        body.append("--").append(boundary).append("--").append(CRLF);
+
+        return new Buffer(body.toString(), "UTF-8");
+    }
+
+    // replies to the batch request with the replies of the individual parts, in the same order as the requests
+    private void sendBatchReply(Message<JsonObject> msg, List<BatchPart> parts) {
+        JsonArray results = new JsonArray();
+        int errors = 0;
+        for (BatchPart part : parts) {
+            JsonObject reply = part.getReply();
+            if (!helper.isSuccess(reply)) errors++;
+            results.addObject(reply);
+        }
+
+        if (errors == 0) helper.sendSuccess(msg, "success", results);
+        else helper.sendSuccess(msg, errors + " of " + parts.size() + " requests failed", results);
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+import santo.vertx.arangodb.InternalMessage;
+
+/**
+ * A single operation of a batch request.
+ * Instead of being sent to the database, the HTTP request that an API would perform for this message is captured so it can be
+ * encoded as one part of a multipart /_api/batch request. The reply for the part is delivered through the reply handler.
+ *
+ * @author sANTo
+ */
+public class BatchPart extends InternalMessage {
+
+    private final String contentId;
+
+    private boolean captured = false;
+    private String method = null;
+    private String path = null;
+    private String dbName = null;
+    private JsonObject headers = null;
+    private JsonObject document = null;
+    private int timeout = 0;
+
+    public BatchPart(String address, String contentId, JsonObject body) {
+        this(address, contentId, body, null);
+    }
+
+    public BatchPart(String address, String contentId, JsonObject body, Handler<JsonObject> replyHandler) {
+        super(address, body, replyHandler);
+        this.contentId = contentId;
+    }
+
+    /**
+     * Captures the HTTP request that should be performed for this part
+     *
+     * @param method the HTTP method of the request
+     * @param apiPath the URL path of the request, optionally prefixed with the database (/_db/{name})
+     * @param headers optional headers for the request
+     * @param document optional JSON document to send in the body of the request
+     * @param timeout timeout for the request
+     */
+    protected void capture(String method, String apiPath, JsonObject headers, JsonObject document, int timeout) {
+        this.captured = true;
+        this.method = method;
+        this.headers = headers;
+        this.document = document;
+        this.timeout = timeout;
+
+        // the database is determined by the batch request itself, so it can't be part of the path of the individual parts
+        if (apiPath.startsWith("/_db/")) {
+            int pathStart = apiPath.indexOf('/', "/_db/".length());
+            if (pathStart < 0) pathStart = apiPath.length();
+            this.dbName = apiPath.substring("/_db/".length(), pathStart);
+            this.path = apiPath.substring(pathStart);
+        }
+        else {
+            this.path = apiPath;
+        }
+    }
+
+    public String getContentId() {
+        return contentId;
+    }
+
+    public boolean isCaptured() {
+        return captured;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getDbName() {
+        return dbName;
+    }
+
+    public JsonObject getHeaders() {
+        return headers;
+    }
+
+    public JsonObject getDocument() {
+        return document;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.http.HttpHeaders;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.Helper;
+import santo.vertx.arangodb.RequestMetrics;
+
+/**
+ * Handles the multipart response of a /_api/batch request and replies to each individual batch part
+ *
+ * @author sANTo
+ */
+public class BatchResponseHandler implements Handler<HttpClientResponse>, RequestFailureHandler {
+
+    private static final String CRLF = "\r\n";
+    private static final String HEADER_SEPARATOR = CRLF + CRLF;
+    private static final String HEADER_CONTENT_ID = "content-id";
+    private static final String BOUNDARY_PARAMETER = "boundary=";
+
+    private final Map<String, BatchPart> parts = new HashMap<>();
+    private final String boundary;
+    private final String dbName;
+
+    private Logger logger;
+    private final String logPrefix = "";
+    private Helper helper;
+    
+    private RequestMetrics metrics = null;
+    private long started = 0;
+    private long bytesOut = 0;
+
+    public BatchResponseHandler(List<BatchPart> parts, String boundary, String dbName, Logger logger, Helper helper) {
+        for (BatchPart part : parts) {
+            this.parts.put(part.getContentId(), part);
+        }
+        this.boundary = boundary;
+        this.dbName = dbName;
+        this.logger = logger;
+        this.helper = helper;
+    }
+
+    @Override
+    public void handle(final HttpClientResponse response) {
+        final int statusCode = response.statusCode();
+        final long received = System.nanoTime();
+        logger.trace(logPrefix + "[BATCH] statuscode: " + statusCode);
+
+        // the server uses the boundary of the request unless it explicitly specifies another one
+        String responseBoundary = boundary;
+        String contentType = response.headers().get(HttpHeaders.CONTENT_TYPE);
+        if (contentType != null && contentType.contains(BOUNDARY_PARAMETER)) {
+            responseBoundary = contentType.substring(contentType.indexOf(BOUNDARY_PARAMETER) + BOUNDARY_PARAMETER.length()).trim();
+            if (responseBoundary.startsWith("\"") && responseBoundary.endsWith("\"")) responseBoundary = responseBoundary.substring(1, responseBoundary.length() - 1);
+        }
+        final String delimiter = "--" + responseBoundary;
+
+        response.bodyHandler(new Handler<Buffer>() {
+            @Override
+            public void handle(Buffer body) {
+                long parseStarted = System.nanoTime();
+                String data = body.toString("UTF-8");
+                if (logger.isTraceEnabled()) logger.trace(logPrefix + "> batch response: " + data);
+
+                if (statusCode < 200 || statusCode >= 300) {
+                    // the batch as a whole failed, so all parts failed
+                    Object result = null;
+                    try {
+                        result = RestResponseHandler.parseBody(data);
+                    }
+                    catch (Exception e) {
+                        logger.debug(logPrefix + "unable to parse batch error response: " + e.getMessage());
+                    }
+                    record(statusCode, received, (System.nanoTime() - parseStarted) / 1000, body.length());
+                    for (BatchPart part : parts.values()) {
+                        helper.sendError(part, statusCode, "error", result);
+                    }
+                    return;
+                }
+
+                try {
+                    parseParts(data, delimiter);
+                }
+                catch (Exception e) {
+                    logger.error(logPrefix + "unable to parse batch response", e);
+                }
+                record(statusCode, received, (System.nanoTime() - parseStarted) / 1000, body.length());
+
+                // make sure every part gets a reply, even if the server didn't respond to it
+                for (BatchPart part : parts.values()) {
+                    if (!part.isReplied()) helper.sendError(part, "no response received for batch part " + part.getContentId());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void failed(Throwable cause) {
+        record(cause instanceof TimeoutException ? 504 : 503, System.nanoTime(), -1, 0);
+        
+        // parts that were answered already ignore this
+        for (BatchPart part : parts.values()) {
+            if (!part.isReplied()) helper.sendFailure(part, cause);
+        }
+    }
+
+    /**
+     * Records the latency and size of the batch request in the specified metrics, as a request of the batch type.
+     * The request is considered to be started when this method is called.
+     * 
+     * @param metrics the metrics to update, or null if metrics are disabled
+     */
+    public void setMetrics(RequestMetrics metrics) {
+        this.metrics = metrics;
+        this.started = System.nanoTime();
+    }
+    
+    /**
+     * @param bytesOut the size of the body that was sent
+     */
+    public void setBytesOut(long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+    
+    private void record(int statusCode, long received, long parseMicros, long bytesIn) {
+        if (metrics == null) return;
+        
+        JsonObject request = new JsonObject().putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_BATCH);
+        if (dbName != null) request.putString(AbstractRestAPI.MSG_PROPERTY_DATABASE, dbName);
+        metrics.recordRequest(request, statusCode, (received - started) / 1000, parseMicros, bytesOut, bytesIn);
+    }
+
+    private void parseParts(String data, String delimiter) {
+        int partIndex = 0;
+        int position = data.indexOf(delimiter);
+        while (position >= 0) {
+            int partStart = position + delimiter.length();
+
+            // closing delimiter
+            if (data.startsWith("--", partStart)) break;
+
+            int nextPosition = data.indexOf(delimiter, partStart);
+            int partEnd = nextPosition >= 0 ? nextPosition : data.length();
+
+            parsePart(data.substring(partStart, partEnd), partIndex++);
+            position = nextPosition;
+        }
+    }
+
+    private void parsePart(String part, int partIndex) {
+        // strip the line breaks surrounding the part
+        if (part.startsWith(CRLF)) part = part.substring(CRLF.length());
+        if (part.endsWith(CRLF)) part = part.substring(0, part.length() - CRLF.length());
+
+        // part headers
+        int headerEnd = part.indexOf(HEADER_SEPARATOR);
+        if (headerEnd < 0) return;
+        String contentId = getHeader(part.substring(0, headerEnd), HEADER_CONTENT_ID);
+        if (contentId == null) contentId = Integer.toString(partIndex + 1);
+
+        BatchPart batchPart = parts.get(contentId);
+        if (batchPart == null) {
+            logger.warn(logPrefix + "received response for unknown batch part: " + contentId);
+            return;
+        }
+
+        // the embedded HTTP response: status line, headers and body
+        String embedded = part.substring(headerEnd + HEADER_SEPARATOR.length());
+        int statusLineEnd = embedded.indexOf(CRLF);
+        String statusLine = statusLineEnd >= 0 ? embedded.substring(0, statusLineEnd) : embedded;
+        String[] statusParts = statusLine.split(" ");
+        int statusCode = statusParts.length > 1 ? Integer.parseInt(statusParts[1]) : 0;
+
+        String partBody = null;
+        int bodyStart = embedded.indexOf(HEADER_SEPARATOR);
+        if (bodyStart >= 0) partBody = embedded.substring(bodyStart + HEADER_SEPARATOR.length()).trim();
+
+        Object result;
+        try {
+            result = RestResponseHandler.parseBody(partBody);
+        }
+        catch (IOException e) {
+            logger.error(logPrefix + "unable to parse response of batch part " + contentId + ": " + e.getMessage());
+            helper.sendError(batchPart, statusCode, "error");
+            return;
+        }
+        if (statusCode >= 200 && statusCode < 300) helper.sendSuccess(batchPart, statusCode, "success", result);
+        else helper.sendError(batchPart, statusCode, "error", result);
+    }
+
+    private String getHeader(String headers, String name) {
+        for (String header : headers.split(CRLF)) {
+            int separator = header.indexOf(':');
+            if (separator > 0 && header.substring(0, separator).trim().equalsIgnoreCase(name)) {
+                return header.substring(separator + 1).trim();
+            }
+        }
+
+        return null;
+    }
+
+}
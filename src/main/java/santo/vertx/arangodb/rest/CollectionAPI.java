@@ -123,7 +123,7 @@ public class CollectionAPI extends AbstractRestAPI {
         apiPath.append(API_PATH);
         apiPath.append("/").append(collection);
         
-        httpDelete(persistor, apiPath.toString(), headers, timeout, msg);
+        httpDelete(persistor, apiPath.toString(), headers, timeout, invalidateCollection(persistor, dbName, collection, msg));
     }
 
     // modified the specified collection
@@ -149,6 +149,9 @@ public class CollectionAPI extends AbstractRestAPI {
         apiPath.append("/").append(collection);
         apiPath.append("/").append(subAction);
         
+        // truncating or renaming a collection affects all of its documents
+        if (subAction.equals(MSG_ACTION_TRUNCATE) || subAction.equals(MSG_ACTION_RENAME)) msg = invalidateCollection(persistor, dbName, collection, msg);
+        
         httpPut(persistor, apiPath.toString(), headers, document, timeout, msg);
     }
 
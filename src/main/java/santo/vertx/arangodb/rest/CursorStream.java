@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import java.util.UUID;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.Helper;
+import santo.vertx.arangodb.InternalMessage;
+
+/**
+ * Drains the cursor of a query and delivers each batch to an eventbus address as soon as it arrives.
+ * The consumer acknowledges each batch by replying to it, and at most a limited number of batches is unacknowledged at any time,
+ * so the results are delivered at the pace of the consumer while only a few batches are held in memory.
+ * The consumer can stop the stream by replying with { "cancel": true }, in which case the cursor is deleted right away.
+ *
+ * @author sANTo
+ */
+public class CursorStream {
+    
+    public static final String MSG_PROPERTY_STREAM = "stream";
+    public static final String MSG_PROPERTY_SEQUENCE = "sequence";
+    public static final String MSG_PROPERTY_HAS_MORE = "hasMore";
+    public static final String MSG_PROPERTY_CANCEL = "cancel";
+    
+    private final AqlAPI api;
+    private final ArangoPersistor persistor;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final String id = UUID.randomUUID().toString();
+    private final String address;
+    private final String dbName;
+    private final int window;
+    private final long ackTimeout;
+    private final int timeout;
+    
+    private String client = null;
+    private String cursorId = null;
+    private boolean hasMore = false;
+    private boolean fetching = false;
+    private boolean stopped = false;
+    private int unacknowledged = 0;
+    private long sequence = 0;
+
+    /**
+     * @param api the AQL API used to read the cursor
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     * @param address the eventbus address to which the batches are delivered
+     * @param dbName the database in which the query is executed
+     * @param window the maximum number of unacknowledged batches
+     * @param ackTimeout the time (in ms) the consumer gets to acknowledge a batch before the stream is stopped
+     * @param timeout timeout for the HTTP connection
+     */
+    public CursorStream(AqlAPI api, ArangoPersistor persistor, Logger logger, String address, String dbName, int window, long ackTimeout, int timeout) {
+        this.api = api;
+        this.persistor = persistor;
+        this.logger = logger;
+        this.address = address;
+        this.dbName = dbName;
+        this.window = window > 0 ? window : 1;
+        this.ackTimeout = ackTimeout;
+        this.timeout = timeout;
+    }
+    
+    /**
+     * Executes the query, the request is answered as soon as the first batch is available
+     * 
+     * @param msg the Vertx Message object containing the request
+     * @param query the query document, as for a regular execute request
+     */
+    public void start(final Message<JsonObject> msg, JsonObject query) {
+        client = Helper.getHelper().getOptionalString(msg.body(), AbstractRestAPI.MSG_PROPERTY_CLIENT, "stream to " + address);
+        JsonObject request = createRequest(AqlAPI.MSG_ACTION_EXECUTE);
+        request.putObject(AbstractRestAPI.MSG_PROPERTY_DOCUMENT, query);
+        api.processRequest(new InternalMessage(msg.address(), request, new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                if (!Helper.getHelper().isSuccess(reply)) {
+                    msg.reply(reply);
+                    return;
+                }
+                
+                JsonObject cursor = reply.getObject(Helper.PROPERTY_MSG_RESULT);
+                JsonObject info = new JsonObject().putString(MSG_PROPERTY_STREAM, id);
+                if (cursor.containsField("count")) info.putValue("count", cursor.getValue("count"));
+                Helper.getHelper().sendSuccess(msg, reply.getInteger(Helper.PROPERTY_MSG_STATUSCODE), "success", info);
+                
+                deliver(cursor);
+            }
+        }));
+    }
+    
+    // fetches the next batch from the cursor
+    private void fetch() {
+        fetching = true;
+        JsonObject request = createRequest(AqlAPI.MSG_ACTION_NEXT);
+        request.putString(AbstractRestAPI.MSG_PROPERTY_ID, cursorId);
+        api.processRequest(new InternalMessage(address, request, new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                fetching = false;
+                if (stopped) {
+                    deleteCursor();
+                    return;
+                }
+                
+                if (!Helper.getHelper().isSuccess(reply)) {
+                    logger.error(logPrefix + "unable to read the next batch of stream " + id + ": " + reply.getString("message"));
+                    hasMore = false;
+                    stopped = true;
+                    persistor.getVertx().eventBus().send(address, reply.putString(MSG_PROPERTY_STREAM, id));
+                    return;
+                }
+                
+                deliver(reply.getObject(Helper.PROPERTY_MSG_RESULT));
+            }
+        }));
+    }
+    
+    // sends a batch to the consumer and prefetches the next one if the window allows it
+    private void deliver(JsonObject cursor) {
+        cursorId = cursor.getString(AbstractRestAPI.MSG_PROPERTY_ID, cursorId);
+        hasMore = cursor.getBoolean(MSG_PROPERTY_HAS_MORE, false);
+        
+        JsonArray result = cursor.getArray("result");
+        JsonObject batch = new JsonObject();
+        batch.putString(MSG_PROPERTY_STREAM, id);
+        batch.putNumber(MSG_PROPERTY_SEQUENCE, ++sequence);
+        batch.putArray("result", result != null ? result : new JsonArray());
+        batch.putBoolean(MSG_PROPERTY_HAS_MORE, hasMore);
+        
+        unacknowledged++;
+        persistor.getVertx().eventBus().sendWithTimeout(address, batch, ackTimeout, new Handler<AsyncResult<Message<Object>>>() {
+            @Override
+            public void handle(AsyncResult<Message<Object>> ack) {
+                unacknowledged--;
+                if (ack.failed()) {
+                    logger.warn(logPrefix + "batch of stream " + id + " wasn't acknowledged, stopping: " + ack.cause().getMessage());
+                    stop();
+                    return;
+                }
+                
+                Object body = ack.result().body();
+                if (body instanceof JsonObject && ((JsonObject) body).getBoolean(MSG_PROPERTY_CANCEL, false)) {
+                    logger.debug(logPrefix + "stream " + id + " cancelled by the consumer");
+                    stop();
+                    return;
+                }
+                
+                next();
+            }
+        });
+        
+        next();
+    }
+    
+    private void next() {
+        if (!stopped && hasMore && !fetching && unacknowledged < window) fetch();
+    }
+    
+    private void stop() {
+        if (stopped) return;
+        stopped = true;
+        
+        // a fetch in progress deletes the cursor once it completes
+        if (!fetching) deleteCursor();
+    }
+    
+    private void deleteCursor() {
+        if (!hasMore || cursorId == null) return;
+        hasMore = false;
+        
+        JsonObject request = createRequest(AqlAPI.MSG_ACTION_DELETE);
+        request.putString(AbstractRestAPI.MSG_PROPERTY_ID, cursorId);
+        api.processRequest(new InternalMessage(address, request));
+    }
+    
+    private JsonObject createRequest(String action) {
+        JsonObject request = new JsonObject();
+        request.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_AQL);
+        request.putString(AbstractRestAPI.MSG_PROPERTY_ACTION, action);
+        request.putNumber(AbstractRestAPI.MSG_PROPERTY_TIMEOUT, timeout);
+        if (dbName != null) request.putString(AbstractRestAPI.MSG_PROPERTY_DATABASE, dbName);
+        if (client != null) request.putString(AbstractRestAPI.MSG_PROPERTY_CLIENT, client);
+        
+        return request;
+    }
+
+    public String getId() {
+        return id;
+    }
+    
+}
@@ -20,6 +20,7 @@ import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.DocumentCache;
 
 /**
  *
@@ -94,7 +95,7 @@ public class DocumentAPI extends AbstractRestAPI {
         apiPath.append(API_PATH);
         apiPath.append("/").append(id);
 
-        httpGet(persistor, apiPath.toString(), headers, timeout, msg);
+        httpGetCached(persistor, dbName, id, DocumentCache.VARIANT_DOCUMENT, apiPath.toString(), headers, timeout, msg);
     }
 
     // creates a new document
@@ -162,7 +163,7 @@ public class DocumentAPI extends AbstractRestAPI {
             apiPath.append(MSG_PROPERTY_POLICY).append("=").append(policy);
         }
         
-        httpPut(persistor, apiPath.toString(), headers, document, timeout, msg);
+        httpPut(persistor, apiPath.toString(), headers, document, timeout, invalidateDocument(persistor, dbName, id, msg));
     }
 
     // updates (patches) the specified document
@@ -210,7 +211,7 @@ public class DocumentAPI extends AbstractRestAPI {
             apiPath.append(MSG_PROPERTY_KEEPNULL).append("=").append(keepNull);
         }
         
-        httpPatch(persistor, apiPath.toString(), headers, document, timeout, msg);
+        httpPatch(persistor, apiPath.toString(), headers, document, timeout, invalidateDocument(persistor, dbName, id, msg));
     }
 
     // deletes the specified document
@@ -247,7 +248,7 @@ public class DocumentAPI extends AbstractRestAPI {
             apiPath.append(MSG_PROPERTY_POLICY).append("=").append(policy);
         }
         
-        httpDelete(persistor, apiPath.toString(), headers, timeout, msg);
+        httpDelete(persistor, apiPath.toString(), headers, timeout, invalidateDocument(persistor, dbName, id, msg));
     }
 
     // reads a document header
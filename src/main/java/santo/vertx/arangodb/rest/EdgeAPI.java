@@ -175,7 +175,7 @@ public class EdgeAPI extends AbstractRestAPI {
             apiPath.append(MSG_PROPERTY_POLICY).append("=").append(policy);
         }
         
-        httpPut(persistor, apiPath.toString(), headers, document, timeout, msg);
+        httpPut(persistor, apiPath.toString(), headers, document, timeout, invalidateDocument(persistor, dbName, id, msg));
     }
 
     // updates (patches) the specified edge
@@ -223,7 +223,7 @@ public class EdgeAPI extends AbstractRestAPI {
             apiPath.append(MSG_PROPERTY_KEEPNULL).append("=").append(keepNull);
         }
         
-        httpPatch(persistor, apiPath.toString(), headers, document, timeout, msg);
+        httpPatch(persistor, apiPath.toString(), headers, document, timeout, invalidateDocument(persistor, dbName, id, msg));
     }
 
     // deletes the specified edge
@@ -260,7 +260,7 @@ public class EdgeAPI extends AbstractRestAPI {
             apiPath.append(MSG_PROPERTY_POLICY).append("=").append(policy);
         }
         
-        httpDelete(persistor, apiPath.toString(), headers, timeout, msg);
+        httpDelete(persistor, apiPath.toString(), headers, timeout, invalidateDocument(persistor, dbName, id, msg));
     }
 
     // reads an edge header
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.CircuitBreaker;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.EndpointDiscovery;
+
+/**
+ * Provides information about the endpoints of the server or cluster, and about the endpoints that are currently used by the persistor
+ *
+ * @author sANTo
+ */
+public class EndpointAPI extends AbstractRestAPI {
+    
+    public static final String API_PATH = API_BASE_PATH + "/endpoint";
+
+    public static final String MSG_ACTION_LIST = "list";
+    public static final String MSG_ACTION_CLUSTER = "cluster";
+    public static final String MSG_ACTION_ACTIVE = "active";
+    public static final String MSG_ACTION_CIRCUITS = "circuits";
+
+    public EndpointAPI(Logger logger, ArangoPersistor persistor) {
+        this.logger = logger;
+        this.persistor = persistor;
+    }
+    
+    @Override
+    protected void performAction(Message<JsonObject> msg, String action, JsonObject headers, int timeout, String dbName) {
+        logger.trace(logPrefix + "Action: " + action);
+        
+        switch (action) {
+            case MSG_ACTION_LIST:
+                getServerEndpoints(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_CLUSTER:
+                getClusterEndpoints(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_ACTIVE:
+                getActiveEndpoints(msg);
+                break;
+            case MSG_ACTION_CIRCUITS:
+                getCircuits(msg);
+                break;
+
+            default:
+                logger.info(logPrefix + "invalid action, ignoring (" + action + ")");
+                helper.sendError(msg, "invalid action, ignoring (" + action + ")");
+        }
+    }
+
+    // retrieves the endpoints the server is listening on
+    private void getServerEndpoints(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+
+        httpGet(persistor, apiPath.toString(), headers, timeout, msg);
+    }
+
+    // retrieves the endpoints of the coordinators in the cluster
+    private void getClusterEndpoints(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(EndpointDiscovery.DISCOVERY_PATH);
+
+        httpGet(persistor, apiPath.toString(), headers, timeout, msg);
+    }
+
+    // replies with the endpoints that are currently used by the persistor, without contacting the database
+    private void getActiveEndpoints(Message<JsonObject> msg) {
+        JsonArray endpoints = new JsonArray();
+        for (Endpoint endpoint : persistor.getLoadBalancer().getEndpoints()) {
+            JsonObject info = new JsonObject();
+            info.putString("endpoint", endpoint.getAddress());
+            info.putBoolean("healthy", endpoint.isHealthy());
+            info.putNumber("inFlight", endpoint.getInFlight());
+            info.putNumber("requests", endpoint.getRequests());
+            info.putNumber("latency", endpoint.getLatency());
+            endpoints.addObject(info);
+        }
+        
+        helper.sendSuccess(msg, "success", endpoints);
+    }
+
+    // replies with the state of the circuit of each endpoint and database
+    private void getCircuits(Message<JsonObject> msg) {
+        CircuitBreaker breaker = persistor.getCircuitBreaker();
+        if (breaker == null) {
+            helper.sendError(msg, "circuit breaker isn't enabled");
+            return;
+        }
+        
+        helper.sendSuccess(msg, "success", breaker.toJson());
+    }
+
+}
@@ -418,7 +418,7 @@ public class GharialAPI extends AbstractRestAPI {
         apiPath.append("/vertex");
         apiPath.append("/").append(colName).append("/").append(vertexKey);
 
-        httpGet(persistor, apiPath.toString(), headers, timeout, msg);
+        httpGetCached(persistor, dbName, colName + "/" + vertexKey, graphName, apiPath.toString(), headers, timeout, msg);
     }
 
     // updates the data of the specified vertex
@@ -458,7 +458,7 @@ public class GharialAPI extends AbstractRestAPI {
             apiPath.append(MSG_PROPERTY_KEEPNULL).append("=").append(keepNull);
         }
         
-        httpPatch(persistor, apiPath.toString(), headers, document, timeout, msg);
+        httpPatch(persistor, apiPath.toString(), headers, document, timeout, invalidateDocument(persistor, dbName, colName + "/" + vertexKey, msg));
     }
 
     // replaces the data of the specified vertex
@@ -490,7 +490,7 @@ public class GharialAPI extends AbstractRestAPI {
         apiPath.append("/").append(colName).append("/").append(vertexKey);
         if (waitForSync) apiPath.append("/?").append(MSG_PROPERTY_WAIT_FOR_SYNC).append("=").append(waitForSync);
         
-        httpPut(persistor, apiPath.toString(), headers, document, timeout, msg);
+        httpPut(persistor, apiPath.toString(), headers, document, timeout, invalidateDocument(persistor, dbName, colName + "/" + vertexKey, msg));
     }
 
     // deletes the specified vertex (will also remove all edge documents that are linked to this vertex)
@@ -519,7 +519,7 @@ public class GharialAPI extends AbstractRestAPI {
         apiPath.append("/").append(colName).append("/").append(vertexKey);
         if (waitForSync) apiPath.append("/?").append(MSG_PROPERTY_WAIT_FOR_SYNC).append("=").append(waitForSync);
         
-        httpDelete(persistor, apiPath.toString(), headers, timeout, msg);
+        httpDelete(persistor, apiPath.toString(), headers, timeout, invalidateDocument(persistor, dbName, colName + "/" + vertexKey, msg));
     }
 
     // creates a new edge in the specified collection
@@ -615,7 +615,7 @@ public class GharialAPI extends AbstractRestAPI {
             apiPath.append(MSG_PROPERTY_KEEPNULL).append("=").append(keepNull);
         }
         
-        httpPatch(persistor, apiPath.toString(), headers, document, timeout, msg);
+        httpPatch(persistor, apiPath.toString(), headers, document, timeout, invalidateDocument(persistor, dbName, colName + "/" + edgeKey, msg));
     }
 
     // replaces the data of the specified edge
@@ -647,7 +647,7 @@ public class GharialAPI extends AbstractRestAPI {
         apiPath.append("/").append(colName).append("/").append(edgeKey);
         if (waitForSync) apiPath.append("/?").append(MSG_PROPERTY_WAIT_FOR_SYNC).append("=").append(waitForSync);
         
-        httpPut(persistor, apiPath.toString(), headers, document, timeout, msg);
+        httpPut(persistor, apiPath.toString(), headers, document, timeout, invalidateDocument(persistor, dbName, colName + "/" + edgeKey, msg));
     }
 
     // deletes the specified edge
@@ -676,7 +676,7 @@ public class GharialAPI extends AbstractRestAPI {
         apiPath.append("/").append(colName).append("/").append(edgeKey);
         if (waitForSync) apiPath.append("/?").append(MSG_PROPERTY_WAIT_FOR_SYNC).append("=").append(waitForSync);
         
-        httpDelete(persistor, apiPath.toString(), headers, timeout, msg);
+        httpDelete(persistor, apiPath.toString(), headers, timeout, invalidateDocument(persistor, dbName, colName + "/" + edgeKey, msg));
     }
 
 }
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.file.AsyncFile;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.json.impl.Json;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.InternalMessage;
+
+/**
+ *
+ * @author sANTo
+ */
+public class ImportAPI extends AbstractRestAPI {
+    
+    public static final String API_PATH = API_BASE_PATH + "/import";
+
+    public static final String MSG_ACTION_IMPORT = "import";
+    public static final String MSG_ACTION_IMPORT_FILE = "import-file";
+    
+    public static final String MSG_PROPERTY_DOCUMENTS = "documents";
+    public static final String MSG_PROPERTY_DATA = "data";
+    public static final String MSG_PROPERTY_FILE = "file";
+    public static final String MSG_PROPERTY_COMPLETE = "complete";
+    public static final String MSG_PROPERTY_DETAILS = "details";
+    public static final String MSG_PROPERTY_ON_DUPLICATE = "onDuplicate";
+    
+    public static final String IMPORT_TYPE_DOCUMENTS = "documents";
+    public static final String IMPORT_TYPE_AUTO = "auto";
+    public static final String CONTENT_TYPE_IMPORT = "application/x-ldjson";
+    
+    // makes the database reject a body that was cut off because the file couldn't be read completely
+    private static final String ABORTED_MARKER = "\n<import aborted>\n";
+    
+    // number of characters (or bytes when importing a file) that are written to the request at once
+    private final int chunkSize;
+
+    public ImportAPI(Logger logger, ArangoPersistor persistor) {
+        this.logger = logger;
+        this.persistor = persistor;
+        this.chunkSize = persistor.SETTING_IMPORT_CHUNK_SIZE > 0 ? persistor.SETTING_IMPORT_CHUNK_SIZE : 1;
+    }
+    
+    @Override
+    protected void performAction(Message<JsonObject> msg, String action, JsonObject headers, int timeout, String dbName) {
+        logger.trace(logPrefix + "Action: " + action);
+        
+        switch (action) {
+            case MSG_ACTION_IMPORT:
+                importDocuments(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_IMPORT_FILE:
+                importFile(msg, timeout, headers, dbName);
+                break;
+
+            default:
+                logger.info(logPrefix + "invalid action, ignoring (" + action + ")");
+                helper.sendError(msg, "invalid action, ignoring (" + action + ")");
+        }
+    }
+
+    // imports the specified documents, either provided as an array of documents or as line-delimited JSON documents
+    private void importDocuments(Message<JsonObject> msg, int requestTimeout, JsonObject headers, String dbName) {
+        final int timeout = getImportTimeout(msg, requestTimeout);
+
+        // check required params
+        String collection = helper.getMandatoryString(msg.body(), MSG_PROPERTY_COLLECTION, msg);
+        if (collection == null) return;
+
+        JsonArray documents = helper.getOptionalArray(msg.body(), MSG_PROPERTY_DOCUMENTS);
+        String data = helper.getOptionalString(msg.body(), MSG_PROPERTY_DATA, null);
+        if (!ensureParameter(Arrays.asList(documents, data), Arrays.asList(MSG_PROPERTY_DOCUMENTS, MSG_PROPERTY_DATA), msg)) return;
+
+        final HttpClientRequest clientRequest = startImport(msg, new RestResponseHandler(msg, logger, helper), collection, IMPORT_TYPE_DOCUMENTS, timeout, headers, dbName);
+        if (clientRequest == null) return;
+
+        // the documents are only encoded once the request has a connection, one chunk at a time
+        final Iterator<Buffer> chunks = documents != null ? new DocumentChunks(documents.iterator()) : new DataChunks(data);
+        sendHead(clientRequest, new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                writeChunks(clientRequest, chunks, timeout);
+            }
+        });
+    }
+    
+    // the request timeout of vert.x also expires while the body is still being sent, so imports get a timeout of their own
+    private int getImportTimeout(Message<JsonObject> msg, int timeout) {
+        return msg.body().containsField(MSG_PROPERTY_TIMEOUT) ? timeout : persistor.SETTING_IMPORT_TIMEOUT;
+    }
+
+    // imports the documents from the specified file (JSON lines or a JSON array) without loading the file into memory
+    private void importFile(final Message<JsonObject> msg, int requestTimeout, final JsonObject headers, final String dbName) {
+        final int timeout = getImportTimeout(msg, requestTimeout);
+
+        // check required params
+        final String collection = helper.getMandatoryString(msg.body(), MSG_PROPERTY_COLLECTION, msg);
+        if (collection == null) return;
+
+        final String file = helper.getMandatoryString(msg.body(), MSG_PROPERTY_FILE, msg);
+        if (file == null) return;
+        
+        // only files in the import directory can be imported, since any client on the eventbus can send this request
+        final String path = resolveImportFile(file, msg);
+        if (path == null) return;
+
+        // open the file for reading only
+        persistor.getVertx().fileSystem().open(path, null, true, false, false, new AsyncResultHandler<AsyncFile>() {
+            @Override
+            public void handle(AsyncResult<AsyncFile> result) {
+                if (result.failed()) {
+                    logger.info(logPrefix + "unable to open import file (" + file + "): " + result.cause().getMessage());
+                    helper.sendError(msg, "unable to open import file (" + file + "): " + result.cause().getMessage());
+                    return;
+                }
+
+                new FileImport(msg, result.result(), timeout).start(collection, headers, dbName);
+            }
+        });
+    }
+    
+    // the absolute path of the file, or null if the import of the file isn't allowed (in which case an error has been sent already)
+    private String resolveImportFile(String file, Message<JsonObject> msg) {
+        if (persistor.SETTING_IMPORT_DIR == null) {
+            helper.sendError(msg, "importing files is disabled, no import directory is configured");
+            return null;
+        }
+        
+        // relative paths are relative to the import directory, links are followed so they can't point outside of it
+        Path path;
+        try {
+            Path importDir = Paths.get(persistor.SETTING_IMPORT_DIR).toRealPath();
+            path = importDir.resolve(file).normalize();
+            if (path.startsWith(importDir)) path = path.toRealPath();
+            if (!path.startsWith(importDir)) {
+                logger.warn(logPrefix + "refusing to import file outside of the import directory (" + file + ")");
+                helper.sendError(msg, "import file is not located in the import directory (" + file + ")");
+                return null;
+            }
+        }
+        catch (IOException e) {
+            logger.info(logPrefix + "unable to open import file (" + file + "): " + e.getMessage());
+            helper.sendError(msg, "unable to open import file (" + file + "): " + e.getMessage());
+            return null;
+        }
+        
+        return path.toString();
+    }
+    
+    /**
+     * Starts the import request for the specified collection, using the optional parameters of the message
+     * 
+     * @param msg the Vertx Message object containing the import parameters
+     * @param responseHandler the handler that will send the response to the message
+     * @param collection the collection in which the documents should be imported
+     * @param importType the format of the documents in the request body
+     * @param timeout timeout for the HTTP connection
+     * @param headers optional headers to set in the request
+     * @param dbName the database in which the documents should be imported
+     * @return the started request or null if the import can't be started
+     */
+    protected HttpClientRequest startImport(Message<JsonObject> msg, RestResponseHandler responseHandler, String collection, String importType, int timeout, JsonObject headers, String dbName) {
+        // get optional params
+        
+        // OPTIONAL: whether the collection should be created if it doesn't exist
+        boolean createCollection = helper.getOptionalBoolean(msg.body(), MSG_PROPERTY_CREATE_COLLECTION, false);
+
+        // OPTIONAL: Wait until the documents have been synced to disk
+        boolean waitForSync = helper.getOptionalBoolean(msg.body(), MSG_PROPERTY_WAIT_FOR_SYNC, false);
+
+        // OPTIONAL: if true, then the whole import fails if any error occurs
+        boolean complete = helper.getOptionalBoolean(msg.body(), MSG_PROPERTY_COMPLETE, false);
+
+        // OPTIONAL: if true, then the result will contain details about documents that could not be imported
+        boolean details = helper.getOptionalBoolean(msg.body(), MSG_PROPERTY_DETAILS, false);
+
+        // OPTIONAL: how to handle unique key constraint violations (error, update, replace or ignore)
+        String onDuplicate = helper.getOptionalString(msg.body(), MSG_PROPERTY_ON_DUPLICATE, null);
+
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+        apiPath.append("?").append(ArangoPersistor.MSG_PROPERTY_TYPE).append("=").append(importType);
+        apiPath.append("&").append(MSG_PROPERTY_COLLECTION).append("=").append(collection);
+        if (createCollection) apiPath.append("&").append(MSG_PROPERTY_CREATE_COLLECTION).append("=").append(createCollection);
+        if (waitForSync) apiPath.append("&").append(MSG_PROPERTY_WAIT_FOR_SYNC).append("=").append(waitForSync);
+        if (complete) apiPath.append("&").append(MSG_PROPERTY_COMPLETE).append("=").append(complete);
+        if (details) apiPath.append("&").append(MSG_PROPERTY_DETAILS).append("=").append(details);
+        if (onDuplicate != null) apiPath.append("&").append(MSG_PROPERTY_ON_DUPLICATE).append("=").append(onDuplicate);
+
+        return httpPostChunked(persistor, apiPath.toString(), headers, CONTENT_TYPE_IMPORT, timeout, msg, responseHandler);
+    }
+    
+    // writes the chunks to the request, pausing whenever the write queue of the connection is full
+    private void writeChunks(final HttpClientRequest clientRequest, final Iterator<Buffer> chunks, final int timeout) {
+        while (chunks.hasNext()) {
+            clientRequest.write(chunks.next());
+            if (clientRequest.writeQueueFull()) {
+                whenDrained(clientRequest, new Handler<Void>() {
+                    @Override
+                    public void handle(Void event) {
+                        writeChunks(clientRequest, chunks, timeout);
+                    }
+                });
+                return;
+            }
+        }
+        
+        end(clientRequest, timeout);
+    }
+    
+    // the database only starts importing once the whole body has been received, so it gets the full timeout for that
+    private void end(HttpClientRequest clientRequest, int timeout) {
+        clientRequest.end();
+        clientRequest.setTimeout(timeout);
+    }
+    
+    /**
+     * Sends the head of the request and calls the handler once the request has a connection.
+     * Until then vert.x buffers everything that is written in memory and writeQueueFull() is always false, so the body shouldn't be
+     * produced before this handler is called. The write queue is limited to a single byte, so the connection only signals (by draining)
+     * once the head has been sent, and from then on after every chunk that has been handed to the socket. At most one chunk of the body is
+     * held in memory that way.
+     * 
+     * @param clientRequest the request whose body will be written
+     * @param connectedHandler the handler that starts writing the body
+     */
+    protected void sendHead(HttpClientRequest clientRequest, Handler<Void> connectedHandler) {
+        clientRequest.setWriteQueueMaxSize(1);
+        whenDrained(clientRequest, connectedHandler);
+        clientRequest.sendHead();
+    }
+    
+    // calls the handler once, the next time the write queue of the request has room again
+    private void whenDrained(final HttpClientRequest clientRequest, final Handler<Void> handler) {
+        clientRequest.drainHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                clientRequest.drainHandler(null);
+                handler.handle(null);
+            }
+        });
+    }
+    
+    // streams a file to the import request, the next chunk is only read once the previous one has been handed to the connection
+    private class FileImport {
+        
+        private final Message<JsonObject> msg;
+        private final AsyncFile file;
+        private final int timeout;
+        private final RestResponseHandler responseHandler;
+        private HttpClientRequest clientRequest;
+        private long position = 0;
+        private boolean closed = false;
+        
+        private FileImport(final Message<JsonObject> msg, AsyncFile file, int timeout) {
+            this.msg = msg;
+            this.file = file;
+            this.timeout = timeout;
+            
+            // the import is over once it's answered, also when the request failed before the whole file was sent (e.g. no connection)
+            this.responseHandler = new RestResponseHandler(new InternalMessage(msg.address(), msg.body(), new Handler<JsonObject>() {
+                @Override
+                public void handle(JsonObject reply) {
+                    close();
+                    msg.reply(reply);
+                }
+            }), logger, helper);
+        }
+        
+        private void start(String collection, JsonObject headers, String dbName) {
+            // the file is sent as is, so let the database detect its format
+            clientRequest = startImport(msg, responseHandler, collection, IMPORT_TYPE_AUTO, timeout, headers, dbName);
+            if (clientRequest == null) {
+                close();
+                return;
+            }
+            
+            sendHead(clientRequest, new Handler<Void>() {
+                @Override
+                public void handle(Void event) {
+                    read();
+                }
+            });
+        }
+        
+        private void read() {
+            file.read(new Buffer(chunkSize), 0, position, chunkSize, new AsyncResultHandler<Buffer>() {
+                @Override
+                public void handle(AsyncResult<Buffer> result) {
+                    if (closed) return;
+                    
+                    if (result.failed()) {
+                        close();
+                        logger.info(logPrefix + "unable to read import file: " + result.cause().getMessage());
+                        helper.sendError(msg, "unable to read import file: " + result.cause().getMessage());
+
+                        // the request can't be aborted, so end it with an invalid line rather than keeping the connection busy until the timeout,
+                        // the response is of no interest anymore
+                        responseHandler.cancel();
+                        clientRequest.end(new Buffer(ABORTED_MARKER, "UTF-8"));
+                        return;
+                    }
+
+                    Buffer chunk = result.result();
+                    if (chunk.length() == 0) {
+                        // end of file reached
+                        close();
+                        end(clientRequest, timeout);
+                        return;
+                    }
+
+                    clientRequest.write(chunk);
+                    position += chunk.length();
+                    if (clientRequest.writeQueueFull()) {
+                        whenDrained(clientRequest, new Handler<Void>() {
+                            @Override
+                            public void handle(Void event) {
+                                read();
+                            }
+                        });
+                    }
+                    else {
+                        read();
+                    }
+                }
+            });
+        }
+        
+        private void close() {
+            if (closed) return;
+            closed = true;
+            file.close();
+        }
+        
+    }
+    
+    // encodes the documents as line-delimited JSON, one chunk at a time
+    private class DocumentChunks implements Iterator<Buffer> {
+        
+        private final Iterator<Object> documents;
+        private final StringBuilder chunk = new StringBuilder();
+        
+        public DocumentChunks(Iterator<Object> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return documents.hasNext();
+        }
+
+        @Override
+        public Buffer next() {
+            chunk.setLength(0);
+            while (documents.hasNext() && chunk.length() < chunkSize) {
+                Object document = documents.next();
+                if (document instanceof JsonObject) chunk.append(((JsonObject) document).encode());
+                else if (document instanceof JsonArray) chunk.append(((JsonArray) document).encode());
+                else chunk.append(Json.encode(document));
+                chunk.append('\n');
+            }
+            
+            return new Buffer(chunk.toString(), "UTF-8");
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+    }
+    
+    // splits data that is already line-delimited into chunks
+    private class DataChunks implements Iterator<Buffer> {
+        
+        private final String data;
+        private int position = 0;
+        
+        public DataChunks(String data) {
+            this.data = data;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < data.length();
+        }
+
+        @Override
+        public Buffer next() {
+            int end = Math.min(position + chunkSize, data.length());
+            // don't split a surrogate pair over two chunks
+            if (end < data.length() && Character.isHighSurrogate(data.charAt(end - 1))) end++;
+            Buffer chunk = new Buffer(data.substring(position, end), "UTF-8");
+            position = end;
+            
+            return chunk;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.RequestMetrics;
+
+/**
+ * Provides the latency and throughput metrics collected by the persistor, without contacting the database
+ *
+ * @author sANTo
+ */
+public class MetricsAPI extends AbstractRestAPI {
+    
+    public static final String MSG_ACTION_GET = "get";
+    public static final String MSG_ACTION_RESET = "reset";
+
+    public MetricsAPI(Logger logger, ArangoPersistor persistor) {
+        this.logger = logger;
+        this.persistor = persistor;
+    }
+    
+    @Override
+    protected void performAction(Message<JsonObject> msg, String action, JsonObject headers, int timeout, String dbName) {
+        logger.trace(logPrefix + "Action: " + action);
+        
+        RequestMetrics metrics = persistor.getMetrics();
+        if (metrics == null) {
+            helper.sendError(msg, "metrics aren't enabled");
+            return;
+        }
+        
+        switch (action) {
+            case MSG_ACTION_GET:
+                helper.sendSuccess(msg, "success", metrics.toJson());
+                break;
+            case MSG_ACTION_RESET:
+                // the metrics collected so far are returned, so nothing gets lost
+                JsonObject collected = metrics.toJson();
+                metrics.reset();
+                helper.sendSuccess(msg, "success", collected);
+                break;
+
+            default:
+                logger.info(logPrefix + "invalid action, ignoring (" + action + ")");
+                helper.sendError(msg, "invalid action, ignoring (" + action + ")");
+        }
+    }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.json.DecodeException;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.Helper;
+import santo.vertx.arangodb.InternalMessage;
+
+/**
+ * Provides access to the replication logger of the database and follows it continuously to publish the changes on the eventbus
+ *
+ * @author sANTo
+ */
+public class ReplicationAPI extends AbstractRestAPI {
+    
+    public static final String API_PATH = API_BASE_PATH + "/replication";
+
+    public static final String MSG_ACTION_LOGGER_STATE = "logger-state";
+    public static final String MSG_ACTION_LOGGER_FOLLOW = "logger-follow";
+    public static final String MSG_ACTION_FOLLOW = "follow";
+    public static final String MSG_ACTION_UNFOLLOW = "unfollow";
+    public static final String MSG_ACTION_FOLLOWERS = "followers";
+    
+    public static final String MSG_PROPERTY_CHUNK_SIZE = "chunkSize";
+    public static final String MSG_PROPERTY_ADDRESS = "address";
+    public static final String MSG_PROPERTY_COLLECTIONS = "collections";
+    public static final String MSG_PROPERTY_INTERVAL = "interval";
+    public static final String MSG_PROPERTY_EVENTS = "events";
+    public static final String MSG_PROPERTY_EVENT = "event";
+    public static final String MSG_PROPERTY_LAST_INCLUDED = "lastIncluded";
+    public static final String MSG_PROPERTY_CHECK_MORE = "checkMore";
+    public static final String MSG_PROPERTY_SKIPPED = "skipped";
+    
+    // reported when the log entries can't be parsed
+    
+    public static final String HEADER_CHECK_MORE = "x-arango-replication-checkmore";
+    public static final String HEADER_LAST_INCLUDED = "x-arango-replication-lastincluded";
+    
+    // the types of the log entries
+    private static final Map<Integer, String> EVENT_TYPES = new HashMap<>();
+    static {
+        EVENT_TYPES.put(1000, "replication-start");
+        EVENT_TYPES.put(1001, "replication-stop");
+        EVENT_TYPES.put(2000, "collection-create");
+        EVENT_TYPES.put(2001, "collection-drop");
+        EVENT_TYPES.put(2002, "collection-rename");
+        EVENT_TYPES.put(2003, "collection-change");
+        EVENT_TYPES.put(2100, "index-create");
+        EVENT_TYPES.put(2101, "index-drop");
+        EVENT_TYPES.put(2200, "transaction-start");
+        EVENT_TYPES.put(2201, "transaction-commit");
+        EVENT_TYPES.put(2202, "transaction-abort");
+        EVENT_TYPES.put(2300, "document");
+        EVENT_TYPES.put(2301, "edge");
+        EVENT_TYPES.put(2302, "remove");
+    }
+    
+    private final Map<String, ReplicationFollower> followers = new HashMap<>();
+
+    public ReplicationAPI(Logger logger, ArangoPersistor persistor) {
+        this.logger = logger;
+        this.persistor = persistor;
+    }
+    
+    @Override
+    protected void performAction(Message<JsonObject> msg, String action, JsonObject headers, int timeout, String dbName) {
+        logger.trace(logPrefix + "Action: " + action);
+        
+        switch (action) {
+            case MSG_ACTION_LOGGER_STATE:
+                getLoggerState(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_LOGGER_FOLLOW:
+                getLogEntries(msg, timeout, headers, dbName);
+                break;
+            case MSG_ACTION_FOLLOW:
+                follow(msg, timeout, dbName);
+                break;
+            case MSG_ACTION_UNFOLLOW:
+                unfollow(msg);
+                break;
+            case MSG_ACTION_FOLLOWERS:
+                getFollowers(msg);
+                break;
+
+            default:
+                logger.info(logPrefix + "invalid action, ignoring (" + action + ")");
+                helper.sendError(msg, "invalid action, ignoring (" + action + ")");
+        }
+    }
+
+    // retrieves the state of the replication logger, including the last tick
+    private void getLoggerState(Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        httpGet(persistor, getLoggerStatePath(dbName), headers, timeout, msg);
+    }
+    
+    /**
+     * Retrieves the state of the replication logger of the specified endpoint
+     * 
+     * @param dbName the database of which the state should be retrieved
+     * @param target the endpoint of which the state should be retrieved
+     * @param timeout timeout for the HTTP connection
+     * @param msg the Vertx Message object to which the response will be sent
+     */
+    protected void getLoggerState(String dbName, Endpoint target, int timeout, Message<JsonObject> msg) {
+        HttpClientRequest clientRequest = createRequest(persistor, target, HTTP_METHOD_GET, getLoggerStatePath(dbName), null, timeout, new RestResponseHandler(msg, logger, helper), null);
+        if (clientRequest != null) clientRequest.end();
+    }
+    
+    private String getLoggerStatePath(String dbName) {
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+        apiPath.append("/").append(MSG_ACTION_LOGGER_STATE);
+        
+        return apiPath.toString();
+    }
+
+    // retrieves one chunk of log entries
+    private void getLogEntries(final Message<JsonObject> msg, int timeout, JsonObject headers, String dbName) {
+        // OPTIONAL: the ticks of the first and last entry to return
+        String from = helper.getOptionalString(msg.body(), MSG_PROPERTY_FROM);
+        String to = helper.getOptionalString(msg.body(), MSG_PROPERTY_TO);
+        
+        // OPTIONAL: the approximate maximum size of the returned entries (in bytes)
+        int chunkSize = helper.getOptionalInt(msg.body(), MSG_PROPERTY_CHUNK_SIZE, 0);
+
+        followLog(dbName, null, from, to, chunkSize, headers, timeout, new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject result) {
+                int statusCode = result.getInteger(Helper.PROPERTY_MSG_STATUSCODE);
+                if (statusCode >= 200 && statusCode < 300) helper.sendSuccess(msg, statusCode, "success", result);
+                else helper.sendError(msg, statusCode, "error", result);
+            }
+        }, new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable cause) {
+                helper.sendError(msg, "unable to follow the replication log: " + cause.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Retrieves the log entries after the specified tick.
+     * The result contains the decoded entries (events), the tick of the last entry (lastIncluded) and whether more entries are available (checkMore).
+     * 
+     * @param dbName the database of which the log should be followed
+     * @param target the endpoint of which the log should be followed, or null to let the load balancer choose one
+     * @param from optional tick after which the entries should be returned, all entries are returned if it's not specified
+     * @param to optional tick of the last entry to return
+     * @param chunkSize the approximate maximum size of the returned entries (in bytes), 0 to use the default of the server
+     * @param headers optional headers to set in the request
+     * @param timeout timeout for the HTTP connection
+     * @param resultHandler the handler that receives the result, including the statuscode of the response
+     * @param failureHandler the handler that is notified if no response was received
+     */
+    protected void followLog(String dbName, Endpoint target, String from, String to, int chunkSize, JsonObject headers, int timeout, final Handler<JsonObject> resultHandler, Handler<Throwable> failureHandler) {
+        // prepare PATH
+        StringBuilder apiPath = new StringBuilder();
+        if (dbName != null) apiPath.append("/_db/").append(dbName);
+        apiPath.append(API_PATH);
+        apiPath.append("/").append(MSG_ACTION_LOGGER_FOLLOW);
+        char separator = '?';
+        if (from != null) {
+            apiPath.append(separator).append(MSG_PROPERTY_FROM).append("=").append(from);
+            separator = '&';
+        }
+        if (to != null) {
+            apiPath.append(separator).append(MSG_PROPERTY_TO).append("=").append(to);
+            separator = '&';
+        }
+        if (chunkSize > 0) apiPath.append(separator).append(MSG_PROPERTY_CHUNK_SIZE).append("=").append(chunkSize);
+        
+        final String database = dbName;
+        HttpClientRequest clientRequest = createRequest(persistor, target, HTTP_METHOD_GET, apiPath.toString(), headers, timeout, new Handler<HttpClientResponse>() {
+            @Override
+            public void handle(final HttpClientResponse response) {
+                response.bodyHandler(new Handler<Buffer>() {
+                    @Override
+                    public void handle(Buffer body) {
+                        resultHandler.handle(parseLog(response, body, database));
+                    }
+                });
+            }
+        }, failureHandler);
+        if (clientRequest != null) clientRequest.end();
+    }
+    
+    // the log entries are returned as one JSON document per line
+    private JsonObject parseLog(HttpClientResponse response, Buffer body, String dbName) {
+        JsonObject result = new JsonObject();
+        int statusCode = response.statusCode();
+        result.putNumber(Helper.PROPERTY_MSG_STATUSCODE, statusCode);
+        
+        if (statusCode < 200 || statusCode >= 300) {
+            try {
+                Object error = RestResponseHandler.parseBody(body);
+                if (error instanceof JsonObject) result.mergeIn((JsonObject) error);
+            }
+            catch (Exception e) {
+                logger.debug(logPrefix + "unable to parse replication error response: " + e.getMessage());
+            }
+            return result;
+        }
+        
+        // a single entry that can't be parsed is skipped, failing the whole chunk would only make a follower request it again and again
+        JsonArray events = new JsonArray();
+        int skipped = 0;
+        for (String line : body.toString("UTF-8").split("\n")) {
+            if (line.trim().length() == 0) continue;
+            try {
+                events.addObject(decode(new JsonObject(line), dbName));
+            }
+            catch (DecodeException e) {
+                logger.error(logPrefix + "skipping replication log entry that can't be parsed: " + e.getMessage());
+                skipped++;
+            }
+        }
+        result.putArray(MSG_PROPERTY_EVENTS, events);
+        result.putNumber(MSG_PROPERTY_SKIPPED, skipped);
+        result.putString(MSG_PROPERTY_LAST_INCLUDED, response.headers().get(HEADER_LAST_INCLUDED));
+        result.putBoolean(MSG_PROPERTY_CHECK_MORE, Boolean.parseBoolean(response.headers().get(HEADER_CHECK_MORE)));
+        
+        return result;
+    }
+    
+    // adds the name of the event type and the database to a log entry
+    private JsonObject decode(JsonObject entry, String dbName) {
+        Number type = entry.getNumber("type");
+        String event = type != null ? EVENT_TYPES.get(type.intValue()) : null;
+        entry.putString(MSG_PROPERTY_EVENT, event != null ? event : "unknown");
+        if (dbName != null) entry.putString(MSG_PROPERTY_DATABASE, dbName);
+        
+        return entry;
+    }
+
+    // starts following the log continuously, publishing the changes to the specified address
+    private void follow(Message<JsonObject> msg, int timeout, String dbName) {
+        // REQUIRED: the name of the follower, which is also used to persist its position in the log
+        String id = helper.getMandatoryString(msg.body(), MSG_PROPERTY_ID, msg);
+        if (id == null) return;
+        
+        // REQUIRED: the eventbus address to which the changes are published
+        String address = helper.getMandatoryString(msg.body(), MSG_PROPERTY_ADDRESS, msg);
+        if (address == null) return;
+        
+        if (followers.containsKey(id)) {
+            helper.sendError(msg, "follower already exists (" + id + ")");
+            return;
+        }
+        
+        // OPTIONAL: only publish the changes of the specified collections (names or ids)
+        JsonArray collections = helper.getOptionalArray(msg.body(), MSG_PROPERTY_COLLECTIONS);
+        
+        // OPTIONAL: the tick after which to start, instead of the persisted tick or the current end of the log
+        String from = helper.getOptionalString(msg.body(), MSG_PROPERTY_FROM);
+        
+        // OPTIONAL: the time (in ms) between two requests once all entries have been received
+        int interval = helper.getOptionalInt(msg.body(), MSG_PROPERTY_INTERVAL, persistor.SETTING_REPLICATION_INTERVAL);
+
+        ReplicationFollower follower = new ReplicationFollower(this, persistor, logger, id, dbName, address, collections, from, interval, persistor.SETTING_REPLICATION_CHUNK_SIZE, timeout);
+        followers.put(id, follower);
+        follower.start();
+        
+        helper.sendSuccess(msg, "success", follower.toJson());
+    }
+
+    // stops the specified follower, its position in the log remains persisted
+    private void unfollow(Message<JsonObject> msg) {
+        String id = helper.getMandatoryString(msg.body(), MSG_PROPERTY_ID, msg);
+        if (id == null) return;
+        
+        ReplicationFollower follower = followers.remove(id);
+        if (follower == null) {
+            helper.sendError(msg, "unknown follower (" + id + ")");
+            return;
+        }
+        
+        follower.stop();
+        helper.sendSuccess(msg, "success", follower.toJson());
+    }
+
+    // lists the active followers and their position in the log
+    private void getFollowers(Message<JsonObject> msg) {
+        JsonArray result = new JsonArray();
+        for (ReplicationFollower follower : followers.values()) {
+            result.addObject(follower.toJson());
+        }
+        
+        helper.sendSuccess(msg, "success", result);
+    }
+    
+    /**
+     * Starts the followers defined in the configuration
+     * 
+     * @param definitions the followers, each using the same format as a follow request
+     */
+    public void startFollowers(JsonArray definitions) {
+        if (definitions == null) return;
+        
+        for (Object oDefinition : definitions) {
+            if (!(oDefinition instanceof JsonObject)) continue;
+            
+            final JsonObject request = ((JsonObject) oDefinition).copy();
+            request.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_REPLICATION);
+            request.putString(MSG_PROPERTY_ACTION, MSG_ACTION_FOLLOW);
+            processRequest(new InternalMessage(null, request, new Handler<JsonObject>() {
+                @Override
+                public void handle(JsonObject reply) {
+                    if (!helper.isSuccess(reply)) logger.error(logPrefix + "unable to start replication follower " + request.getString(MSG_PROPERTY_ID) + ": " + reply.getString("message"));
+                }
+            }));
+        }
+    }
+
+}
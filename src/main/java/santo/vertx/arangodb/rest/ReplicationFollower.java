@@ -0,0 +1,275 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.Helper;
+import santo.vertx.arangodb.InternalMessage;
+
+/**
+ * Follows the replication log of a database continuously and publishes every change on the eventbus.
+ * The tick of the last published change is persisted in a file, so the follower resumes where it left off after a restart.
+ * Without a persisted tick, the follower starts at the current end of the log.
+ * The ticks are specific to a server, so all requests of a follower are sent to the same endpoint.
+ *
+ * @author sANTo
+ */
+public class ReplicationFollower {
+    
+    private final ReplicationAPI api;
+    private final ArangoPersistor persistor;
+    private final Logger logger;
+    private final String logPrefix = "";
+    
+    private final String id;
+    private final String dbName;
+    private final String address;
+    private final JsonArray collections;
+    private final long interval;
+    private final int chunkSize;
+    private final int timeout;
+    private final String tickFile;
+    
+    private String tick;
+    private Endpoint endpoint = null;
+    private boolean running = false;
+    private int run = 0;
+    private long timerId = -1;
+    private long published = 0;
+    private long skipped = 0;
+
+    /**
+     * @param api the replication API used to retrieve the log entries
+     * @param persistor instance of the ArangoPersistor
+     * @param logger the logger to use
+     * @param id the name of the follower
+     * @param dbName the database of which the log should be followed
+     * @param address the eventbus address to which the changes are published
+     * @param collections optional names or ids of the collections of which the changes should be published, all changes are published if not specified
+     * @param from optional tick after which to start, instead of the persisted tick
+     * @param interval the time (in ms) between two requests once all entries have been received
+     * @param chunkSize the approximate maximum size (in bytes) of the entries per request, 0 to use the default of the server
+     * @param timeout timeout for the HTTP connection
+     */
+    public ReplicationFollower(ReplicationAPI api, ArangoPersistor persistor, Logger logger, String id, String dbName, String address, JsonArray collections, String from, long interval, int chunkSize, int timeout) {
+        this.api = api;
+        this.persistor = persistor;
+        this.logger = logger;
+        this.id = id;
+        this.dbName = dbName;
+        this.address = address;
+        this.collections = collections;
+        this.tick = from;
+        this.interval = interval > 0 ? interval : 1;
+        this.chunkSize = chunkSize;
+        this.timeout = timeout;
+        this.tickFile = persistor.SETTING_REPLICATION_TICK_DIR + "/" + id.replaceAll("[^A-Za-z0-9._-]", "_") + ".tick";
+    }
+    
+    public void start() {
+        running = true;
+        run++;
+        endpoint = persistor.getEndpoint();
+        if (tick != null) follow();
+        else loadTick();
+    }
+    
+    public void stop() {
+        // callbacks of requests that are still in progress belong to the previous run, so they end the loop instead of continuing it
+        running = false;
+        run++;
+        if (timerId >= 0) persistor.getVertx().cancelTimer(timerId);
+        timerId = -1;
+    }
+    
+    // resumes from the persisted tick, or from the current end of the log if there is none
+    private void loadTick() {
+        final int currentRun = run;
+        persistor.getVertx().fileSystem().readFile(tickFile, new AsyncResultHandler<Buffer>() {
+            @Override
+            public void handle(AsyncResult<Buffer> result) {
+                if (currentRun != run) return;
+                
+                if (result.succeeded() && result.result().toString().trim().length() > 0) {
+                    tick = result.result().toString().trim();
+                    logger.info(logPrefix + "replication follower " + id + " resuming after tick " + tick);
+                    follow();
+                }
+                else {
+                    loadCurrentTick();
+                }
+            }
+        });
+    }
+    
+    private void loadCurrentTick() {
+        final int currentRun = run;
+        replaceEndpoint();
+        
+        JsonObject request = new JsonObject();
+        request.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_REPLICATION);
+        request.putString(AbstractRestAPI.MSG_PROPERTY_ACTION, ReplicationAPI.MSG_ACTION_LOGGER_STATE);
+        request.putString(AbstractRestAPI.MSG_PROPERTY_DATABASE, dbName);
+        api.getLoggerState(dbName, endpoint, timeout, new InternalMessage(address, request, new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                if (currentRun != run) return;
+                
+                JsonObject result = reply.getObject(Helper.PROPERTY_MSG_RESULT);
+                JsonObject state = result != null ? result.getObject("state") : null;
+                if (!Helper.getHelper().isSuccess(reply) || state == null) {
+                    logger.warn(logPrefix + "replication follower " + id + " unable to retrieve the logger state, retrying");
+                    schedule(ReplicationFollower.this.interval, true);
+                    return;
+                }
+                
+                tick = state.getString("lastLogTick");
+                logger.info(logPrefix + "replication follower " + id + " starting after tick " + tick);
+                follow();
+            }
+        }));
+    }
+    
+    // retrieves the next chunk of log entries
+    private void follow() {
+        if (!running) return;
+        final int currentRun = run;
+        if (replaceEndpoint()) {
+            loadCurrentTick();
+            return;
+        }
+        
+        api.followLog(dbName, endpoint, tick, null, chunkSize, null, timeout, new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject result) {
+                if (currentRun != run) return;
+                
+                int statusCode = result.getInteger(Helper.PROPERTY_MSG_STATUSCODE);
+                if (statusCode < 200 || statusCode >= 300) {
+                    logger.warn(logPrefix + "replication follower " + id + " received statuscode " + statusCode + ", retrying");
+                    schedule(interval, false);
+                    return;
+                }
+                
+                publish(result.getArray(ReplicationAPI.MSG_PROPERTY_EVENTS));
+                skipped += result.getLong(ReplicationAPI.MSG_PROPERTY_SKIPPED, 0);
+                
+                final boolean checkMore = result.getBoolean(ReplicationAPI.MSG_PROPERTY_CHECK_MORE, false);
+                String lastIncluded = result.getString(ReplicationAPI.MSG_PROPERTY_LAST_INCLUDED);
+                if (lastIncluded == null || lastIncluded.equals("0") || lastIncluded.equals(tick)) {
+                    schedule(interval, false);
+                    return;
+                }
+                
+                // only continue once the position has been persisted, so no change is skipped after a restart
+                tick = lastIncluded;
+                persistTick(new Handler<Void>() {
+                    @Override
+                    public void handle(Void event) {
+                        if (currentRun != run) return;
+                        if (checkMore) follow();
+                        else schedule(interval, false);
+                    }
+                });
+            }
+        }, new Handler<Throwable>() {
+            @Override
+            public void handle(Throwable cause) {
+                if (currentRun == run) schedule(interval, false);
+            }
+        });
+    }
+    
+    // the endpoint is only replaced if it was removed from the cluster, since the ticks of another server don't match
+    private boolean replaceEndpoint() {
+        if (persistor.getLoadBalancer().getEndpoints().contains(endpoint)) return false;
+        
+        Endpoint previous = endpoint;
+        endpoint = persistor.getEndpoint();
+        logger.warn(logPrefix + "replication follower " + id + " switching from " + previous + " to " + endpoint + ", continuing at the current end of its log");
+        
+        return true;
+    }
+    
+    private void publish(JsonArray events) {
+        if (events == null) return;
+        
+        for (Object oEvent : events) {
+            JsonObject event = (JsonObject) oEvent;
+            if (collections != null && !collections.contains(event.getString("cid")) && !collections.contains(event.getString("cname"))) continue;
+            
+            persistor.getVertx().eventBus().publish(address, event);
+            published++;
+        }
+    }
+    
+    private void persistTick(final Handler<Void> doneHandler) {
+        persistor.getVertx().fileSystem().mkdir(persistor.SETTING_REPLICATION_TICK_DIR, true, new AsyncResultHandler<Void>() {
+            @Override
+            public void handle(AsyncResult<Void> result) {
+                // the directory usually exists already
+                persistor.getVertx().fileSystem().writeFile(tickFile, new Buffer(tick), new AsyncResultHandler<Void>() {
+                    @Override
+                    public void handle(AsyncResult<Void> result) {
+                        if (result.failed()) logger.error(logPrefix + "replication follower " + id + " unable to persist tick " + tick + ": " + result.cause().getMessage());
+                        doneHandler.handle(null);
+                    }
+                });
+            }
+        });
+    }
+    
+    private void schedule(long delay, final boolean restart) {
+        final int currentRun = run;
+        timerId = persistor.getVertx().setTimer(delay, new Handler<Long>() {
+            @Override
+            public void handle(Long event) {
+                if (currentRun != run) return;
+                timerId = -1;
+                if (restart) loadCurrentTick();
+                else follow();
+            }
+        });
+    }
+    
+    /**
+     * @return the name, configuration and position of the follower
+     */
+    public JsonObject toJson() {
+        JsonObject info = new JsonObject();
+        info.putString(AbstractRestAPI.MSG_PROPERTY_ID, id);
+        info.putString(AbstractRestAPI.MSG_PROPERTY_DATABASE, dbName);
+        info.putString(ReplicationAPI.MSG_PROPERTY_ADDRESS, address);
+        if (collections != null) info.putArray(ReplicationAPI.MSG_PROPERTY_COLLECTIONS, collections);
+        info.putString("tick", tick);
+        if (endpoint != null) info.putString("endpoint", endpoint.getAddress());
+        info.putNumber("published", published);
+        info.putNumber("skipped", skipped);
+        info.putBoolean("running", running);
+        
+        return info;
+    }
+    
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.rest;
+
+/**
+ * A response handler that also takes care of requests which fail without a response (e.g. connection refused, reset or timeout),
+ * so whoever is waiting for the response gets an answer right away instead of waiting until its own timeout expires.
+ *
+ * @author sANTo
+ */
+public interface RequestFailureHandler {
+    
+    /**
+     * Called when the request failed before a complete response was received
+     * 
+     * @param cause the reason of the failure
+     */
+    void failed(Throwable cause);
+    
+}
@@ -16,10 +16,13 @@
 
 package santo.vertx.arangodb.rest;
 
-import java.text.DateFormat;
-import java.util.Date;
-import java.util.Locale;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeoutException;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.eventbus.Message;
@@ -27,30 +30,42 @@ import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.EndpointAffinity;
 import santo.vertx.arangodb.Helper;
+import santo.vertx.arangodb.RequestMetrics;
 
 /**
  *
  * @author sANTo
  */
-public class RestResponseHandler implements Handler<HttpClientResponse> {
+public class RestResponseHandler implements Handler<HttpClientResponse>, RequestFailureHandler {
 
-    private String id = "";
-    final StringBuffer responseData = new StringBuffer();
+    private static final ObjectMapper mapper = new ObjectMapper();
     
-    DateFormat timeFormatter = DateFormat.getTimeInstance(DateFormat.DEFAULT, Locale.GERMAN);
+    private String id = null;
     
     private Logger logger;
     private final String logPrefix = "";
     private Helper helper;
     private Message<JsonObject> msg = null;
+    private boolean replied = false;
+    
+    private RequestMetrics metrics = null;
+    private long started = 0;
+    private long bytesOut = 0;
+    
+    private EndpointAffinity affinity = null;
+    private Endpoint endpoint = null;
+    private String method = null;
+    private String apiPath = null;
 
     public RestResponseHandler(Logger logger) {
-        this(null, UUID.randomUUID().toString(), logger, Helper.getHelper());
+        this(null, null, logger, Helper.getHelper());
     }
 
     public RestResponseHandler(Message<JsonObject> msg, Logger logger, Helper helper) {
-        this(msg, UUID.randomUUID().toString(), logger, helper);
+        this(msg, null, logger, helper);
     }
 
     public RestResponseHandler(Message<JsonObject> msg, String id, Logger logger, Helper helper) {
@@ -63,29 +78,136 @@ public class RestResponseHandler implements Handler<HttpClientResponse> {
     @Override
     public void handle(final HttpClientResponse response) {
         final int statusCode = response.statusCode();                    
-        logger.trace("[RESPONSE-" + getId() + "] statuscode: " + statusCode + ", time: " + timeFormatter.format(new Date()));
+        final long received = System.nanoTime();
+        if (logger.isTraceEnabled()) logger.trace("[RESPONSE-" + getId() + "] statuscode: " + statusCode);
         response.bodyHandler(new Handler<Buffer>() {
             @Override
             public void handle(Buffer body) {
                 // The entire response body has been received
-                JsonObject restResponse = new JsonObject();
-                responseData.append(body);
-                logger.trace("> response: (" + getId() + ")" + responseData);
-                if (responseData != null && responseData.length() > 0) {
-                    if (responseData.toString().startsWith("[")) restResponse = new JsonArray(responseData.toString()).get(0);
-                    else restResponse = new JsonObject(responseData.toString());
+                if (logger.isTraceEnabled()) logger.trace("> response: (" + getId() + ")" + body.toString("UTF-8"));
+                long parseStarted = System.nanoTime();
+                Object restResponse;
+                try {
+                    restResponse = parseBody(body);
+                }
+                catch (IOException e) {
+                    logger.error(logPrefix + "unable to parse response (" + statusCode + "): " + e.getMessage());
+                    record(statusCode, received, -1, body.length());
+                    sendResponse(false, statusCode, null);
+                    return;
                 }
+                record(statusCode, received, (System.nanoTime() - parseStarted) / 1000, body.length());
+                
+                // the id of a job that is executed asynchronously (and whose result is stored) is only provided as a header
+                String jobId = statusCode == 202 ? response.headers().get(AbstractRestAPI.HEADER_ASYNC_ID) : null;
+                if (jobId != null && restResponse instanceof JsonObject) ((JsonObject) restResponse).putString(AbstractRestAPI.MSG_PROPERTY_ID, jobId);
+                if (affinity != null) affinity.responded(endpoint, method, apiPath, statusCode, jobId, restResponse);
                 
                 // send response
                 if (statusCode >= 200 && statusCode < 300) sendResponse(true, statusCode, restResponse);
                 else sendResponse(false, statusCode, restResponse);
                 
-                logger.trace("[RESPONSE-" + getId() + "] body parsed" + ", time: " + timeFormatter.format(new Date()));
+                if (logger.isTraceEnabled()) logger.trace("[RESPONSE-" + getId() + "] body parsed");
             }
         });
     }
     
+    @Override
+    public void failed(Throwable cause) {
+        record(cause instanceof TimeoutException ? 504 : 503, System.nanoTime(), -1, 0);
+        if (replied || getMsg() == null) return;
+        replied = true;
+        helper.sendFailure(getMsg(), cause);
+    }
+    
+    /**
+     * Records the latency and size of the request in the specified metrics.
+     * The request is considered to be started when this method is called.
+     * 
+     * @param metrics the metrics to update, or null if metrics are disabled
+     */
+    public void setMetrics(RequestMetrics metrics) {
+        this.metrics = metrics;
+        this.started = System.nanoTime();
+    }
+    
+    /**
+     * Keeps track of the endpoint on which the cursor or job created by the request lives
+     * 
+     * @param affinity the bindings to update once the response is received
+     * @param endpoint the endpoint to which the request is sent
+     * @param method the HTTP method of the request
+     * @param apiPath the URL path of the request
+     */
+    public void setAffinity(EndpointAffinity affinity, Endpoint endpoint, String method, String apiPath) {
+        this.affinity = affinity;
+        this.endpoint = endpoint;
+        this.method = method;
+        this.apiPath = apiPath;
+    }
+    
+    /**
+     * @param bytesOut the size of the body that was sent
+     */
+    public void setBytesOut(long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+    
+    private void record(int statusCode, long received, long parseMicros, long bytesIn) {
+        if (metrics == null) return;
+        
+        JsonObject request = getMsg() != null ? getMsg().body() : new JsonObject();
+        metrics.recordRequest(request, statusCode, (received - started) / 1000, parseMicros, bytesOut, bytesIn);
+    }
+    
+    /**
+     * Makes sure no reply is sent anymore, e.g. because the request is performed again
+     */
+    public void cancel() {
+        replied = true;
+    }
+    
+    /**
+     * Parses the body of an ArangoDB response directly from the received bytes
+     * 
+     * @param data the raw response body
+     * @return the parsed response (a JSON object or a JSON array) or an empty JSON object if the body was empty
+     * @throws IOException if the body doesn't contain valid JSON
+     */
+    protected static Object parseBody(Buffer data) throws IOException {
+        if (data == null || data.length() == 0) return new JsonObject();
+        
+        // read from a duplicate so the buffer itself remains untouched
+        return toJson(mapper.readValue(new ByteBufInputStream(data.getByteBuf().duplicate()), Object.class));
+    }
+    
+    /**
+     * Parses the body of an ArangoDB response
+     * 
+     * @param data the raw response body
+     * @return the parsed response (a JSON object or a JSON array) or an empty JSON object if the body was empty
+     * @throws IOException if the body doesn't contain valid JSON
+     */
+    protected static Object parseBody(String data) throws IOException {
+        if (data == null || data.length() == 0) return new JsonObject();
+        
+        return toJson(mapper.readValue(data, Object.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Object toJson(Object value) {
+        if (value instanceof Map) return new JsonObject((Map<String, Object>) value);
+        if (value instanceof List) return new JsonArray((List<Object>) value);
+        if (value == null) return new JsonObject();
+        
+        return value;
+    }
+    
     private void sendResponse(boolean success, int statuscode, Object result) {
+        // the request may have failed already, e.g. because the connection was reset while the body was received
+        if (replied) return;
+        replied = true;
+        
         if (getMsg() != null) {
             if (success) helper.sendSuccess(getMsg(), statuscode, "success", result);
             else helper.sendError(getMsg(), statuscode, "error", result);
@@ -93,6 +215,8 @@ public class RestResponseHandler implements Handler<HttpClientResponse> {
     }
 
     protected String getId() {
+        // only generated when needed, since it's only used for logging
+        if (this.id == null) this.id = UUID.randomUUID().toString();
         return this.id;
     }
     
@@ -16,6 +16,8 @@
 
 package santo.vertx.arangodb.rest;
 
+import java.util.Arrays;
+import java.util.List;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
@@ -48,6 +50,8 @@ public class SimpleQueryAPI extends AbstractRestAPI {
     public static final String MSG_ACTION_UPDATE_BY_EXAMPLE = "update-by-example";
     public static final String MSG_ACTION_GET_FIRST = "first";
     public static final String MSG_ACTION_GET_LAST = "last";
+    
+    private static final List<String> MODIFYING_ACTIONS = Arrays.asList(MSG_ACTION_REMOVE_BY_EXAMPLE, MSG_ACTION_REPLACE_BY_EXAMPLE, MSG_ACTION_UPDATE_BY_EXAMPLE);
 
     public SimpleQueryAPI(Logger logger, ArangoPersistor persistor) {
         this.logger = logger;
@@ -212,7 +216,9 @@ public class SimpleQueryAPI extends AbstractRestAPI {
         apiPath.append(API_PATH);
         apiPath.append("/").append(action);
                 
-        httpPut(persistor, apiPath.toString(), headers, query, timeout, msg);
+        // queries that don't modify any documents are performed as reads
+        if (MODIFYING_ACTIONS.contains(action)) httpPut(persistor, apiPath.toString(), headers, query, timeout, msg);
+        else httpQuery(persistor, HTTP_METHOD_PUT, apiPath.toString(), headers, query, timeout, msg);
     }
 
 }
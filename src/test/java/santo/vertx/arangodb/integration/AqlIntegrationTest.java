@@ -21,6 +21,7 @@ import org.junit.Test;
 import org.junit.runners.MethodSorters;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.testtools.VertxAssert;
 import santo.vertx.arangodb.ArangoPersistor;
@@ -273,8 +274,9 @@ public class AqlIntegrationTest extends BaseIntegrationTest {
                 try {
                     JsonObject response = reply.body();
                     System.out.println("response: " + response);
-                    JsonObject arangoResult = response.getObject("result");
-                    VertxAssert.assertEquals("Aql request resulted in an error: " + arangoResult.getString("errorMessage"), "ok", response.getString("status"));
+                    VertxAssert.assertEquals("Aql request resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    JsonArray arangoResult = response.getArray("result");
+                    VertxAssert.assertTrue("The complete list of functions wasn't received", arangoResult.size() > 0);
                 }
                 catch (Exception e) {
                     VertxAssert.fail("test07GetFunctions");
@@ -298,8 +300,9 @@ public class AqlIntegrationTest extends BaseIntegrationTest {
                 try {
                     JsonObject response = reply.body();
                     System.out.println("response: " + response);
-                    JsonObject arangoResult = response.getObject("result");
-                    VertxAssert.assertEquals("Aql request resulted in an error: " + arangoResult.getString("errorMessage"), "ok", response.getString("status"));
+                    VertxAssert.assertEquals("Aql request resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    JsonArray arangoResult = response.getArray("result");
+                    VertxAssert.assertTrue("The complete list of functions wasn't received", arangoResult.size() > 0);
                 }
                 catch (Exception e) {
                     VertxAssert.fail("test08GetFunctionsFromNamespace");
@@ -335,4 +338,54 @@ public class AqlIntegrationTest extends BaseIntegrationTest {
         });
     }
 
+    @Test
+    public void test10StreamCursor() {
+        System.out.println("*** test10StreamCursor ***");
+        final String streamAddress = address + ".test.stream";
+        String query = "FOR v in " + vertexColName + " LIMIT 2 RETURN v";
+        JsonObject documentObject = new JsonObject();
+        documentObject.putString(AqlAPI.DOC_ATTRIBUTE_QUERY, query);
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_AQL);
+        requestObject.putString(AqlAPI.MSG_PROPERTY_ACTION, AqlAPI.MSG_ACTION_STREAM);
+        requestObject.putObject(AqlAPI.MSG_PROPERTY_DOCUMENT, documentObject);
+        requestObject.putString(AqlAPI.MSG_PROPERTY_ADDRESS, streamAddress);
+        requestObject.putNumber(AqlAPI.MSG_PROPERTY_BATCH_SIZE, 1);
+        vertx.eventBus().registerHandler(streamAddress, new Handler<Message<JsonObject>>() {
+            private int results = 0;
+            
+            @Override
+            public void handle(Message<JsonObject> batch) {
+                try {
+                    JsonObject response = batch.body();
+                    System.out.println("batch: " + response);
+                    VertxAssert.assertNotNull("Stream resulted in an error: " + response.getString("message"), response.getArray("result"));
+                    results += response.getArray("result").size();
+                    batch.reply(new JsonObject());
+                    if (!response.getBoolean("hasMore")) {
+                        VertxAssert.assertTrue("Wrong number of results streamed: " + results, results == 2);
+                        VertxAssert.testComplete();
+                    }
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test10StreamCursor");
+                }
+            }
+        });
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertTrue("Stream request resulted in an error: " + response.getString("message"), "ok".equals(response.getString("status")));
+                    VertxAssert.assertNotNull("No stream id received", response.getObject("result").getString("stream"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test10StreamCursor");
+                }
+            }
+        });
+    }
+
 }
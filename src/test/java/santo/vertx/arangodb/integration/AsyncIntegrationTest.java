@@ -0,0 +1,210 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.integration;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.VertxAssert;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.rest.AsyncAPI;
+import santo.vertx.arangodb.rest.DocumentAPI;
+
+/**
+ * Integration tests for the {@link santo.vertx.arangodb.rest.AsyncAPI} against an external <a href="http://www.arangodb.com">ArangoDB</a> instance
+ * 
+ * @author sANTo
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AsyncIntegrationTest extends BaseIntegrationTest {
+    
+    public static String jobId = null;
+    
+    @Test
+    public void test01FireAndForget() {
+        System.out.println("*** test01FireAndForget ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_DOCUMENT);
+        requestObject.putString(DocumentAPI.MSG_PROPERTY_ACTION, DocumentAPI.MSG_ACTION_CREATE);
+        requestObject.putString(DocumentAPI.MSG_PROPERTY_ASYNC, DocumentAPI.ASYNC_MODE_TRUE);
+        requestObject.putObject(DocumentAPI.MSG_PROPERTY_DOCUMENT, new JsonObject().putString("description", "async doc"));
+        requestObject.putString(DocumentAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Async request resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    VertxAssert.assertTrue("wrong returncode received: " + response.getInteger("statuscode"), response.getInteger("statuscode") == 202);
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test01FireAndForget");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test02StoreResult() {
+        System.out.println("*** test02StoreResult ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_DOCUMENT);
+        requestObject.putString(DocumentAPI.MSG_PROPERTY_ACTION, DocumentAPI.MSG_ACTION_CREATE);
+        requestObject.putString(DocumentAPI.MSG_PROPERTY_ASYNC, DocumentAPI.ASYNC_MODE_STORE);
+        requestObject.putObject(DocumentAPI.MSG_PROPERTY_DOCUMENT, new JsonObject().putString("description", "stored async doc"));
+        requestObject.putString(DocumentAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Async request resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    jobId = response.getObject("result").getString(AsyncAPI.MSG_PROPERTY_ID);
+                    VertxAssert.assertNotNull("No job id received", jobId);
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test02StoreResult");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test03JobStatus() {
+        System.out.println("*** test03JobStatus ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_ASYNC);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ACTION, AsyncAPI.MSG_ACTION_STATUS);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ID, jobId);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Job status resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    VertxAssert.assertTrue("wrong returncode received: " + response.getInteger("statuscode"), response.getInteger("statuscode") == 200 || response.getInteger("statuscode") == 204);
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test03JobStatus");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test04FetchResult() {
+        System.out.println("*** test04FetchResult ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_ASYNC);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ACTION, AsyncAPI.MSG_ACTION_FETCH);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ID, jobId);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Fetching job result resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test04FetchResult");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test05CancelUnknownJob() {
+        System.out.println("*** test05CancelUnknownJob ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_ASYNC);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ACTION, AsyncAPI.MSG_ACTION_CANCEL);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ID, "123456789");
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Cancelling an unknown job didn't return the expected error", "error", response.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test05CancelUnknownJob");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test06DeleteAllJobs() {
+        System.out.println("*** test06DeleteAllJobs ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_ASYNC);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ACTION, AsyncAPI.MSG_ACTION_DELETE);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ID, AsyncAPI.JOB_ID_ALL);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Deleting all jobs resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test06DeleteAllJobs");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test07ListJobs() {
+        System.out.println("*** test07ListJobs ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_ASYNC);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_ACTION, AsyncAPI.MSG_ACTION_LIST);
+        requestObject.putString(AsyncAPI.MSG_PROPERTY_STATE, AsyncAPI.JOB_STATE_DONE);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Listing jobs resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    VertxAssert.assertNotNull("No list of jobs received", response.getArray("result"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test07ListJobs");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+}
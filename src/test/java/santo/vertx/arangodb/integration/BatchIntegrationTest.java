@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.integration;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.VertxAssert;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.rest.BatchAPI;
+import santo.vertx.arangodb.rest.DocumentAPI;
+
+/**
+ * Integration tests for the {@link santo.vertx.arangodb.rest.BatchAPI} against an external <a href="http://www.arangodb.com">ArangoDB</a> instance
+ * 
+ * @author sANTo
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BatchIntegrationTest extends BaseIntegrationTest {
+    
+    @Test
+    public void test01ExecuteBatch() {
+        System.out.println("*** test01ExecuteBatch ***");
+        JsonArray requests = new JsonArray();
+        for (int i = 0; i < 2; i++) {
+            JsonObject documentRequest = new JsonObject();
+            documentRequest.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_DOCUMENT);
+            documentRequest.putString(DocumentAPI.MSG_PROPERTY_ACTION, DocumentAPI.MSG_ACTION_CREATE);
+            documentRequest.putObject(DocumentAPI.MSG_PROPERTY_DOCUMENT, new JsonObject().putString("description", "batch doc " + i));
+            documentRequest.putString(DocumentAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+            requests.addObject(documentRequest);
+        }
+        // a document request without the mandatory id should fail without affecting the other requests
+        JsonObject invalidRequest = new JsonObject();
+        invalidRequest.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_DOCUMENT);
+        invalidRequest.putString(DocumentAPI.MSG_PROPERTY_ACTION, DocumentAPI.MSG_ACTION_READ);
+        requests.addObject(invalidRequest);
+        
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_BATCH);
+        requestObject.putString(BatchAPI.MSG_PROPERTY_ACTION, BatchAPI.MSG_ACTION_EXECUTE);
+        requestObject.putArray(BatchAPI.MSG_PROPERTY_REQUESTS, requests);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Batch request resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    JsonArray results = response.getArray("result");
+                    VertxAssert.assertEquals("Wrong number of batch responses received", 3, results.size());
+                    for (int i = 0; i < 2; i++) {
+                        JsonObject result = results.get(i);
+                        VertxAssert.assertEquals("Batch operation resulted in an error: " + result.getString("message"), "ok", result.getString("status"));
+                        VertxAssert.assertTrue("wrong returncode received: " + result.getInteger("statuscode"), result.getInteger("statuscode") == 201 || result.getInteger("statuscode") == 202);
+                        VertxAssert.assertNotNull("No document key received", result.getObject("result").getString("_id"));
+                    }
+                    JsonObject invalidResult = results.get(2);
+                    VertxAssert.assertEquals("Invalid batch operation didn't return the expected error", "error", invalidResult.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test01ExecuteBatch");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test02ExecuteEmptyBatch() {
+        System.out.println("*** test02ExecuteEmptyBatch ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_BATCH);
+        requestObject.putString(BatchAPI.MSG_PROPERTY_ACTION, BatchAPI.MSG_ACTION_EXECUTE);
+        requestObject.putArray(BatchAPI.MSG_PROPERTY_REQUESTS, new JsonArray());
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Empty batch request didn't return the expected error", "error", response.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test02ExecuteEmptyBatch");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+}
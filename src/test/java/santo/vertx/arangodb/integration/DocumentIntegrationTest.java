@@ -148,6 +148,52 @@ public class DocumentIntegrationTest extends BaseIntegrationTest {
         });
     }
 
+    @Test
+    public void test01dCreateMultibyteDocument() {
+        System.out.println("*** test01dCreateMultibyteDocument ***");
+        final String description = "multibyte test document: \u00e9\u00e8\u00fc \u4e2d\u6587 \ud83d\ude00";
+        JsonObject documentObject = new JsonObject().putString("description", description);
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_DOCUMENT);
+        requestObject.putString(DocumentAPI.MSG_PROPERTY_ACTION, DocumentAPI.MSG_ACTION_CREATE);
+        requestObject.putObject(DocumentAPI.MSG_PROPERTY_DOCUMENT, documentObject);
+        requestObject.putString(DocumentAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    JsonObject arangoResult = response.getObject("result");
+                    VertxAssert.assertTrue("Document creation resulted in an error: " + arangoResult.getString("errorMessage"), !arangoResult.getBoolean("error"));
+                    
+                    // read the document back to make sure it wasn't truncated
+                    JsonObject requestObject = new JsonObject();
+                    requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_DOCUMENT);
+                    requestObject.putString(DocumentAPI.MSG_PROPERTY_ACTION, DocumentAPI.MSG_ACTION_READ);
+                    requestObject.putString(DocumentAPI.MSG_PROPERTY_ID, arangoResult.getString("_id"));
+                    vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+                        @Override
+                        public void handle(Message<JsonObject> reply) {
+                            try {
+                                JsonObject response = reply.body();
+                                System.out.println("response: " + response);
+                                VertxAssert.assertEquals("Multibyte document was not stored correctly", description, response.getObject("result").getString("description"));
+                            }
+                            catch (Exception e) {
+                                VertxAssert.fail("test01dCreateMultibyteDocument");
+                            }
+                            VertxAssert.testComplete();
+                        }
+                    });
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test01dCreateMultibyteDocument");
+                }
+            }
+        });
+    }
+
     @Test
     public void test02GetDocument() {
         System.out.println("*** test02GetDocument ***");
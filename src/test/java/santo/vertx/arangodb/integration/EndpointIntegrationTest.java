@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.integration;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.VertxAssert;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.rest.EndpointAPI;
+
+/**
+ * Integration tests for the {@link santo.vertx.arangodb.rest.EndpointAPI} against an external <a href="http://www.arangodb.com">ArangoDB</a> instance
+ * 
+ * @author sANTo
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class EndpointIntegrationTest extends BaseIntegrationTest {
+    
+    @Test
+    public void test01ListEndpoints() {
+        System.out.println("*** test01ListEndpoints ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_ENDPOINT);
+        requestObject.putString(EndpointAPI.MSG_PROPERTY_ACTION, EndpointAPI.MSG_ACTION_LIST);
+        requestObject.putString(EndpointAPI.MSG_PROPERTY_DATABASE, "_system");
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("The listing of the endpoints resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    VertxAssert.assertTrue("wrong returncode received: " + response.getInteger("statuscode"), response.getInteger("statuscode") == 200);
+                    VertxAssert.assertTrue("No endpoints received", response.getArray("result").size() > 0);
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test01ListEndpoints");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test02ActiveEndpoints() {
+        System.out.println("*** test02ActiveEndpoints ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_ENDPOINT);
+        requestObject.putString(EndpointAPI.MSG_PROPERTY_ACTION, EndpointAPI.MSG_ACTION_ACTIVE);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("The listing of the active endpoints resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    JsonArray endpoints = response.getArray("result");
+                    VertxAssert.assertTrue("No active endpoints received", endpoints.size() > 0);
+                    VertxAssert.assertNotNull("No address received for the endpoint", ((JsonObject) endpoints.get(0)).getString("endpoint"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test02ActiveEndpoints");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.integration;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.VertxAssert;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.rest.ImportAPI;
+
+/**
+ * Integration tests for the {@link santo.vertx.arangodb.rest.ImportAPI} against an external <a href="http://www.arangodb.com">ArangoDB</a> instance
+ * 
+ * @author sANTo
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ImportIntegrationTest extends BaseIntegrationTest {
+    
+    @Test
+    public void test01ImportDocuments() {
+        System.out.println("*** test01ImportDocuments ***");
+        JsonArray documents = new JsonArray();
+        for (int i = 0; i < 100; i++) {
+            documents.addObject(new JsonObject().putString("description", "imported doc " + i).putNumber("index", i));
+        }
+        
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_ACTION, ImportAPI.MSG_ACTION_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        requestObject.putArray(ImportAPI.MSG_PROPERTY_DOCUMENTS, documents);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Import resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    JsonObject result = response.getObject("result");
+                    VertxAssert.assertEquals("Wrong number of documents created", 100, result.getNumber("created").intValue());
+                    VertxAssert.assertEquals("Unexpected import errors", 0, result.getNumber("errors").intValue());
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test01ImportDocuments");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test02ImportData() {
+        System.out.println("*** test02ImportData ***");
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            data.append(new JsonObject().putString("description", "imported line " + i).encode()).append("\n");
+        }
+        // an invalid line should be reported as an error without failing the whole import
+        data.append("invalid").append("\n");
+        
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_ACTION, ImportAPI.MSG_ACTION_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_DATA, data.toString());
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Import resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    JsonObject result = response.getObject("result");
+                    VertxAssert.assertEquals("Wrong number of documents created", 10, result.getNumber("created").intValue());
+                    VertxAssert.assertEquals("Wrong number of import errors", 1, result.getNumber("errors").intValue());
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test02ImportData");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test03ImportWithoutDocuments() {
+        System.out.println("*** test03ImportWithoutDocuments ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_ACTION, ImportAPI.MSG_ACTION_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Import without documents didn't return the expected error", "error", response.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test03ImportWithoutDocuments");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test04ImportFile() {
+        System.out.println("*** test04ImportFile ***");
+        JsonArray documents = new JsonArray();
+        for (int i = 0; i < 10; i++) {
+            documents.addObject(new JsonObject().putString("description", "imported file doc " + i));
+        }
+        // the file is specified relative to the import directory
+        final String file = config.getString("import_dir") + "/vertx-arangodb-import.json";
+        vertx.fileSystem().writeFileSync(file, new Buffer(documents.encode(), "UTF-8"));
+        
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_ACTION, ImportAPI.MSG_ACTION_IMPORT_FILE);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_FILE, "vertx-arangodb-import.json");
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("File import resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    JsonObject result = response.getObject("result");
+                    VertxAssert.assertEquals("Wrong number of documents created", 10, result.getNumber("created").intValue());
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test04ImportFile");
+                }
+                vertx.fileSystem().deleteSync(file);
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test05ImportMissingFile() {
+        System.out.println("*** test05ImportMissingFile ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_ACTION, ImportAPI.MSG_ACTION_IMPORT_FILE);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_FILE, "/nonexisting/vertx-arangodb-import.json");
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Import of a missing file didn't return the expected error", "error", response.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test05ImportMissingFile");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test06ImportFileOutsideImportDir() {
+        System.out.println("*** test06ImportFileOutsideImportDir ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_IMPORT);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_ACTION, ImportAPI.MSG_ACTION_IMPORT_FILE);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+        requestObject.putString(ImportAPI.MSG_PROPERTY_FILE, "../etc/passwd");
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Import of a file outside of the import directory wasn't refused", "error", response.getString("status"));
+                    VertxAssert.assertTrue("Import of a file outside of the import directory returned the wrong error", response.getString("message").contains("import directory"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test06ImportFileOutsideImportDir");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+}
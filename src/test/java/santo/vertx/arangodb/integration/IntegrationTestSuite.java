@@ -38,6 +38,11 @@ import org.vertx.testtools.TestVerticle;
     ,AqlIntegrationTest.class
     ,GraphIntegrationTest.class
     ,GharialIntegrationTest.class
+    ,BatchIntegrationTest.class
+    ,ImportIntegrationTest.class
+    ,AsyncIntegrationTest.class
+    ,EndpointIntegrationTest.class
+    ,ReplicationIntegrationTest.class
     ,CleanupIntegrationTest.class
 })
 public class IntegrationTestSuite extends TestVerticle {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.integration;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.VertxAssert;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.rest.DocumentAPI;
+import santo.vertx.arangodb.rest.ReplicationAPI;
+
+/**
+ * Integration tests for the {@link santo.vertx.arangodb.rest.ReplicationAPI} against an external <a href="http://www.arangodb.com">ArangoDB</a> instance
+ * 
+ * @author sANTo
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ReplicationIntegrationTest extends BaseIntegrationTest {
+    
+    public static final String followerId = "integration-test";
+    public static final String changesAddress = "santo.vertx.arangodb.test.changes";
+    
+    @Test
+    public void test01LoggerState() {
+        System.out.println("*** test01LoggerState ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_REPLICATION);
+        requestObject.putString(ReplicationAPI.MSG_PROPERTY_ACTION, ReplicationAPI.MSG_ACTION_LOGGER_STATE);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Retrieving the logger state resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                    VertxAssert.assertNotNull("No logger state received", response.getObject("result").getObject("state"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test01LoggerState");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+    @Test
+    public void test02Follow() {
+        System.out.println("*** test02Follow ***");
+        
+        // complete the test as soon as the change of the new document has been published
+        vertx.eventBus().registerHandler(changesAddress, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> event) {
+                System.out.println("event: " + event.body());
+                if (!"document".equals(event.body().getString(ReplicationAPI.MSG_PROPERTY_EVENT))) return;
+                VertxAssert.testComplete();
+            }
+        });
+        
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_REPLICATION);
+        requestObject.putString(ReplicationAPI.MSG_PROPERTY_ACTION, ReplicationAPI.MSG_ACTION_FOLLOW);
+        requestObject.putString(ReplicationAPI.MSG_PROPERTY_ID, followerId);
+        requestObject.putString(ReplicationAPI.MSG_PROPERTY_ADDRESS, changesAddress);
+        requestObject.putNumber(ReplicationAPI.MSG_PROPERTY_INTERVAL, 100);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Starting the follower resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test02Follow");
+                }
+                
+                // make a change that should be published
+                JsonObject createRequest = new JsonObject();
+                createRequest.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_DOCUMENT);
+                createRequest.putString(DocumentAPI.MSG_PROPERTY_ACTION, DocumentAPI.MSG_ACTION_CREATE);
+                createRequest.putObject(DocumentAPI.MSG_PROPERTY_DOCUMENT, new JsonObject().putString("description", "replicated doc"));
+                createRequest.putString(DocumentAPI.MSG_PROPERTY_COLLECTION, vertexColName);
+                vertx.eventBus().send(address, createRequest);
+            }
+        });
+    }
+
+    @Test
+    public void test03Unfollow() {
+        System.out.println("*** test03Unfollow ***");
+        JsonObject requestObject = new JsonObject();
+        requestObject.putString(ArangoPersistor.MSG_PROPERTY_TYPE, ArangoPersistor.MSG_TYPE_REPLICATION);
+        requestObject.putString(ReplicationAPI.MSG_PROPERTY_ACTION, ReplicationAPI.MSG_ACTION_UNFOLLOW);
+        requestObject.putString(ReplicationAPI.MSG_PROPERTY_ID, followerId);
+        vertx.eventBus().send(address, requestObject, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> reply) {
+                try {
+                    JsonObject response = reply.body();
+                    System.out.println("response: " + response);
+                    VertxAssert.assertEquals("Stopping the follower resulted in an error: " + response.getString("message"), "ok", response.getString("status"));
+                }
+                catch (Exception e) {
+                    VertxAssert.fail("test03Unfollow");
+                }
+                VertxAssert.testComplete();
+            }
+        });
+    }
+
+}
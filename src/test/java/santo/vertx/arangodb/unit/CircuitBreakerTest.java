@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.unit;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+import santo.vertx.arangodb.CircuitBreaker;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.LoadBalancer;
+
+/**
+ * Unit tests for the {@link santo.vertx.arangodb.CircuitBreaker}: when circuits open, how the trial requests close them again and how the {@link santo.vertx.arangodb.LoadBalancer} avoids endpoints with an open circuit
+ * 
+ * @author sANTo
+ */
+public class CircuitBreakerTest {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerTest.class);
+    private static final long OPEN_TIME = 60000;
+    private static final long SHORT_OPEN_TIME = 50;
+    
+    private final Endpoint endpoint = new Endpoint("host1", 8529, null);
+    private final Endpoint other = new Endpoint("host2", 8529, null);
+    
+    @Test
+    public void testOpensAtErrorRate() {
+        CircuitBreaker breaker = createBreaker();
+        fail(breaker, endpoint, "db", 4);
+        succeed(breaker, endpoint, "db", 5);
+        Assert.assertEquals("circuit opened before reaching the error rate", CircuitBreaker.STATE_CLOSED, getState(breaker, "endpoints", endpoint.getAddress()));
+        
+        fail(breaker, endpoint, "db", 1);
+        Assert.assertEquals("circuit didn't open at the error rate", CircuitBreaker.STATE_OPEN, getState(breaker, "endpoints", endpoint.getAddress()));
+        Assert.assertEquals("database circuit didn't open at the error rate", CircuitBreaker.STATE_OPEN, getState(breaker, "databases", "db"));
+        Assert.assertTrue("endpoint not reported as open", breaker.isOpen(endpoint));
+        Assert.assertFalse("request allowed while the circuit is open", breaker.allowRequest(endpoint, "db"));
+        Assert.assertEquals("rejected request not counted", 1, breaker.getRejected());
+    }
+    
+    @Test
+    public void testMinRequests() {
+        CircuitBreaker breaker = createBreaker();
+        fail(breaker, endpoint, "db", 9);
+        Assert.assertEquals("circuit opened before the minimum number of requests", CircuitBreaker.STATE_CLOSED, getState(breaker, "endpoints", endpoint.getAddress()));
+    }
+    
+    @Test
+    public void testClosesAfterTrials() throws InterruptedException {
+        CircuitBreaker breaker = createBreaker(SHORT_OPEN_TIME);
+        fail(breaker, endpoint, "db", 10);
+        Thread.sleep(SHORT_OPEN_TIME + 10);
+        
+        Assert.assertFalse("endpoint reported as open after the open time", breaker.isOpen(endpoint));
+        Assert.assertTrue("first trial request rejected", breaker.allowRequest(endpoint, "db"));
+        Assert.assertTrue("second trial request rejected", breaker.allowRequest(endpoint, "db"));
+        Assert.assertEquals("circuit not half-open", CircuitBreaker.STATE_HALF_OPEN, getState(breaker, "endpoints", endpoint.getAddress()));
+        Assert.assertFalse("more trial requests than allowed", breaker.allowRequest(endpoint, "db"));
+        Assert.assertTrue("endpoint not reported as open while all trials are running", breaker.isOpen(endpoint));
+        
+        breaker.record(endpoint, "db", true, 1);
+        breaker.record(endpoint, "db", true, 1);
+        Assert.assertEquals("circuit not closed after successful trials", CircuitBreaker.STATE_CLOSED, getState(breaker, "endpoints", endpoint.getAddress()));
+        Assert.assertEquals("database circuit not closed after successful trials", CircuitBreaker.STATE_CLOSED, getState(breaker, "databases", "db"));
+    }
+    
+    @Test
+    public void testReopensAfterFailedTrial() throws InterruptedException {
+        CircuitBreaker breaker = createBreaker(SHORT_OPEN_TIME);
+        fail(breaker, endpoint, "db", 10);
+        Thread.sleep(SHORT_OPEN_TIME + 10);
+        
+        Assert.assertTrue("trial request rejected", breaker.allowRequest(endpoint, "db"));
+        breaker.record(endpoint, "db", false, 1);
+        Assert.assertEquals("circuit not reopened after a failed trial", CircuitBreaker.STATE_OPEN, getState(breaker, "endpoints", endpoint.getAddress()));
+        Assert.assertFalse("request allowed after a failed trial", breaker.allowRequest(endpoint, "db"));
+    }
+    
+    @Test
+    public void testSlowResponses() {
+        CircuitBreaker breaker = new CircuitBreaker(logger, 50, 10, 10000, 100, OPEN_TIME, 2);
+        for (int i = 0; i < 10; i++) {
+            breaker.allowRequest(endpoint, "db");
+            breaker.record(endpoint, "db", true, 200);
+        }
+        Assert.assertEquals("circuit not opened by slow responses", CircuitBreaker.STATE_OPEN, getState(breaker, "endpoints", endpoint.getAddress()));
+    }
+    
+    @Test
+    public void testWindowStartsOver() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(logger, 50, 10, 50, 0, OPEN_TIME, 2);
+        fail(breaker, endpoint, "db", 9);
+        Thread.sleep(100);
+        
+        // the failures of the previous window are forgotten
+        fail(breaker, endpoint, "db", 1);
+        Assert.assertEquals("circuit opened by failures of a previous window", CircuitBreaker.STATE_CLOSED, getState(breaker, "endpoints", endpoint.getAddress()));
+        Assert.assertEquals("requests of a previous window counted", 1, breaker.toJson().getObject("endpoints").getObject(endpoint.getAddress()).getInteger("requests").intValue());
+    }
+    
+    @Test
+    public void testLateResponses() {
+        // responses to requests that were sent before the circuit opened don't close it
+        CircuitBreaker breaker = createBreaker();
+        for (int i = 0; i < 15; i++) {
+            breaker.allowRequest(endpoint, "db");
+        }
+        for (int i = 0; i < 10; i++) {
+            breaker.record(endpoint, "db", false, 1);
+        }
+        for (int i = 0; i < 5; i++) {
+            breaker.record(endpoint, "db", true, 1);
+        }
+        Assert.assertEquals("circuit closed by late responses", CircuitBreaker.STATE_OPEN, getState(breaker, "endpoints", endpoint.getAddress()));
+    }
+    
+    @Test
+    public void testFailuresWithoutResponse() {
+        // connection failures and timeouts only count for the endpoint, not for the database
+        CircuitBreaker breaker = createBreaker();
+        for (int i = 0; i < 10; i++) {
+            breaker.allowRequest(endpoint, "db");
+            breaker.recordFailure(endpoint, "db");
+        }
+        Assert.assertEquals("endpoint circuit not opened", CircuitBreaker.STATE_OPEN, getState(breaker, "endpoints", endpoint.getAddress()));
+        Assert.assertEquals("database circuit opened", CircuitBreaker.STATE_CLOSED, getState(breaker, "databases", "db"));
+        Assert.assertTrue("request to another endpoint rejected", breaker.allowRequest(other, "db"));
+    }
+    
+    @Test
+    public void testLoadBalancerAvoidsOpenCircuit() {
+        CircuitBreaker breaker = createBreaker();
+        fail(breaker, endpoint, "db", 10);
+        
+        LoadBalancer loadBalancer = new LoadBalancer(Arrays.asList(endpoint, other), LoadBalancer.STRATEGY_ROUND_ROBIN);
+        loadBalancer.setCircuitBreaker(breaker);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame("endpoint with an open circuit selected", other, loadBalancer.select());
+        }
+        Assert.assertNull("endpoint with an open circuit selected as an alternative", loadBalancer.select(other));
+    }
+    
+    @Test
+    public void testStateHandler() {
+        CircuitBreaker breaker = createBreaker();
+        final int[] changes = { 0 };
+        breaker.setStateHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                changes[0]++;
+            }
+        });
+        fail(breaker, endpoint, "db", 10);
+        Assert.assertEquals("opening the endpoint and database circuits not reported", 2, changes[0]);
+        
+        // an endpoint with an open circuit doesn't count as capacity
+        LoadBalancer loadBalancer = new LoadBalancer(Arrays.asList(endpoint, other), LoadBalancer.STRATEGY_ROUND_ROBIN);
+        loadBalancer.setCircuitBreaker(breaker);
+        loadBalancer.setMaxInFlight(1);
+        other.requestStarted();
+        Assert.assertFalse("capacity of an endpoint with an open circuit used", loadBalancer.hasCapacity());
+    }
+    
+    @Test
+    public void testLoadBalancerWithAllCircuitsOpen() {
+        CircuitBreaker breaker = createBreaker();
+        fail(breaker, endpoint, "db", 10);
+        fail(breaker, other, "db", 10);
+        
+        LoadBalancer loadBalancer = new LoadBalancer(Arrays.asList(endpoint, other), LoadBalancer.STRATEGY_ROUND_ROBIN);
+        loadBalancer.setCircuitBreaker(breaker);
+        Assert.assertNotNull("no endpoint selected while all circuits are open", loadBalancer.select());
+    }
+    
+    private CircuitBreaker createBreaker() {
+        return createBreaker(OPEN_TIME);
+    }
+    
+    private CircuitBreaker createBreaker(long openTime) {
+        return new CircuitBreaker(logger, 50, 10, 10000, 0, openTime, 2);
+    }
+    
+    private void fail(CircuitBreaker breaker, Endpoint endpoint, String dbName, int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.allowRequest(endpoint, dbName);
+            breaker.record(endpoint, dbName, false, 1);
+        }
+    }
+    
+    private void succeed(CircuitBreaker breaker, Endpoint endpoint, String dbName, int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.allowRequest(endpoint, dbName);
+            breaker.record(endpoint, dbName, true, 1);
+        }
+    }
+    
+    private String getState(CircuitBreaker breaker, String kind, String name) {
+        JsonObject circuit = breaker.toJson().getObject(kind).getObject(name);
+        return circuit != null ? circuit.getString("state") : null;
+    }
+    
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.unit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+import santo.vertx.arangodb.DocumentCache;
+
+/**
+ * Unit tests for the {@link santo.vertx.arangodb.DocumentCache}: revalidation, invalidation, pending async writes and the limits on the number of entries and bytes
+ * 
+ * @author sANTo
+ */
+public class DocumentCacheTest {
+    
+    private static final String VARIANT_VERTEX = "vertex";
+    
+    @Test
+    public void testHitAndRevalidation() {
+        DocumentCache cache = new DocumentCache(10, 100000, 60000);
+        Assert.assertNull("document cached before it was read", cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT));
+        
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        DocumentCache.Entry entry = cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT);
+        Assert.assertNotNull("document not cached", entry);
+        Assert.assertEquals("wrong revision", "100", entry.getRevision());
+        Assert.assertTrue("entry not fresh within the ttl", entry.isFresh());
+        Assert.assertEquals("wrong key", "1", entry.getReply().getObject("result").getString("_key"));
+        Assert.assertEquals("hit not counted", 1, cache.getHits());
+        Assert.assertEquals("miss not counted", 1, cache.getMisses());
+        
+        // without a ttl every use needs a revalidation
+        DocumentCache revalidating = new DocumentCache(10, 100000, 0);
+        revalidating.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        Assert.assertFalse("entry fresh without a ttl", revalidating.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT).isFresh());
+        Assert.assertEquals("revalidation not counted", 1, revalidating.getRevalidations());
+    }
+    
+    @Test
+    public void testReplyIsCopied() {
+        DocumentCache cache = new DocumentCache(10, 100000, 60000);
+        JsonObject reply = createReply("1", "100");
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, reply);
+        reply.getObject("result").putString("_key", "changed");
+        
+        DocumentCache.Entry entry = cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT);
+        entry.getReply().getObject("result").putString("_key", "changed");
+        Assert.assertEquals("cached reply modified", "1", entry.getReply().getObject("result").getString("_key"));
+    }
+    
+    @Test
+    public void testReplyWithoutRevision() {
+        DocumentCache cache = new DocumentCache(10, 100000, 60000);
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, new JsonObject().putObject("result", new JsonObject()));
+        Assert.assertEquals("reply without revision cached", 0, cache.getEntries());
+    }
+    
+    @Test
+    public void testInvalidateAllVariants() {
+        DocumentCache cache = new DocumentCache(10, 100000, 60000);
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        cache.put("db", "test/1", VARIANT_VERTEX, new JsonObject().putObject("result", new JsonObject().putObject("vertex", new JsonObject().putString("_rev", "100"))));
+        cache.put("db", "test/2", DocumentCache.VARIANT_DOCUMENT, createReply("2", "200"));
+        Assert.assertEquals("wrong number of entries", 3, cache.getEntries());
+        
+        cache.invalidate("db", "test/1");
+        Assert.assertNull("document variant not invalidated", cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT));
+        Assert.assertNull("vertex variant not invalidated", cache.get("db", "test/1", VARIANT_VERTEX));
+        Assert.assertNotNull("other document invalidated", cache.get("db", "test/2", DocumentCache.VARIANT_DOCUMENT));
+        Assert.assertEquals("wrong number of entries", 1, cache.getEntries());
+    }
+    
+    @Test
+    public void testInvalidateCollection() {
+        DocumentCache cache = new DocumentCache(10, 100000, 60000);
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        cache.put("db", "tests/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        cache.put("other", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        
+        cache.invalidateCollection("db", "test");
+        Assert.assertNull("document of the collection not invalidated", cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT));
+        Assert.assertNotNull("document of a collection with a similar name invalidated", cache.get("db", "tests/1", DocumentCache.VARIANT_DOCUMENT));
+        Assert.assertNotNull("document of another database invalidated", cache.get("other", "test/1", DocumentCache.VARIANT_DOCUMENT));
+    }
+    
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        DocumentCache cache = new DocumentCache(2, 100000, 60000);
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        cache.put("db", "test/2", DocumentCache.VARIANT_DOCUMENT, createReply("2", "200"));
+        cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT);
+        cache.put("db", "test/3", DocumentCache.VARIANT_DOCUMENT, createReply("3", "300"));
+        
+        Assert.assertEquals("number of entries not limited", 2, cache.getEntries());
+        Assert.assertNotNull("recently used document evicted", cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT));
+        Assert.assertNull("least recently used document not evicted", cache.get("db", "test/2", DocumentCache.VARIANT_DOCUMENT));
+    }
+    
+    @Test
+    public void testMaxBytes() {
+        JsonObject reply = createReply("1", "100");
+        int size = reply.encode().length();
+        
+        DocumentCache cache = new DocumentCache(10, size * 2, 60000);
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, reply);
+        cache.put("db", "test/2", DocumentCache.VARIANT_DOCUMENT, createReply("2", "200"));
+        cache.put("db", "test/3", DocumentCache.VARIANT_DOCUMENT, createReply("3", "300"));
+        Assert.assertEquals("total size not limited", 2, cache.getEntries());
+        Assert.assertTrue("total size exceeded", cache.getBytes() <= size * 2);
+        
+        DocumentCache small = new DocumentCache(10, size - 1, 60000);
+        small.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, reply);
+        Assert.assertEquals("document larger than the cache cached", 0, small.getEntries());
+    }
+    
+    @Test
+    public void testReplaceKeepsSize() {
+        // a newer revision of the same variant replaces the entry instead of adding to the total size
+        DocumentCache cache = new DocumentCache(10, 100000, 60000);
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        long bytes = cache.getBytes();
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "101"));
+        Assert.assertEquals("replaced entry still counted", bytes, cache.getBytes());
+        Assert.assertEquals("wrong number of entries", 1, cache.getEntries());
+        Assert.assertEquals("old revision kept", "101", cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT).getRevision());
+        
+        cache.invalidate("db", "test/1");
+        Assert.assertEquals("invalidated entry still counted", 0, cache.getBytes());
+    }
+    
+    @Test
+    public void testPendingAsyncWrite() {
+        DocumentCache cache = new DocumentCache(10, 100000, 60000);
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        
+        // the old revision can still be read until the job is done, so it isn't cached
+        cache.addPendingWrite("db", "test/1", false, "42");
+        Assert.assertNull("document not invalidated", cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT));
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        Assert.assertEquals("document with a pending write cached", 0, cache.getEntries());
+        cache.put("db", "test/2", DocumentCache.VARIANT_DOCUMENT, createReply("2", "200"));
+        Assert.assertEquals("other document not cached", 1, cache.getEntries());
+        
+        Assert.assertNull("unknown job completed", cache.completePendingWrite("43"));
+        DocumentCache.PendingWrite write = cache.completePendingWrite("42");
+        Assert.assertNotNull("job not completed", write);
+        Assert.assertEquals("wrong document", "test/1", write.getName());
+        Assert.assertEquals("pending write kept", 0, cache.getPendingWrites());
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "101"));
+        Assert.assertNotNull("document not cached after the job was done", cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT));
+    }
+    
+    @Test
+    public void testPendingAsyncCollectionWrite() {
+        DocumentCache cache = new DocumentCache(10, 100000, 60000);
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        
+        // without a stored result there's no job to wait for
+        cache.addPendingWrite("db", "test", true, null);
+        Assert.assertEquals("collection not invalidated", 0, cache.getEntries());
+        cache.put("db", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        cache.put("db", "tests/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        cache.put("other", "test/1", DocumentCache.VARIANT_DOCUMENT, createReply("1", "100"));
+        Assert.assertNull("document of the collection cached", cache.get("db", "test/1", DocumentCache.VARIANT_DOCUMENT));
+        Assert.assertEquals("documents of other collections not cached", 2, cache.getEntries());
+        Assert.assertTrue("write not pending", cache.isPending("db", "test/2"));
+    }
+    
+    private JsonObject createReply(String key, String revision) {
+        JsonObject document = new JsonObject().putString("_key", key).putString("_rev", revision);
+        return new JsonObject().putString("status", "ok").putNumber("statuscode", 200).putObject("result", document);
+    }
+    
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.unit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.EndpointAffinity;
+import santo.vertx.arangodb.InternalMessage;
+import santo.vertx.arangodb.LoadBalancer;
+import santo.vertx.arangodb.rest.GenericAPI;
+
+/**
+ * Unit tests for the {@link santo.vertx.arangodb.EndpointAffinity}: which responses bind a cursor or job to an endpoint, and when the binding is released
+ * 
+ * @author sANTo
+ */
+public class EndpointAffinityTest {
+    
+    private final Endpoint endpoint = new Endpoint("host1", 8529, null);
+    private final EndpointAffinity affinity = new EndpointAffinity();
+    
+    @Test
+    public void testCursorBinding() {
+        affinity.responded(endpoint, "POST", "/_db/test/_api/cursor", 201, null, createCursor("123", true));
+        Assert.assertSame("next batch not sent to the endpoint of the cursor", endpoint, affinity.select("/_db/test/_api/cursor/123"));
+        Assert.assertSame("cursor not found without database", endpoint, affinity.select("/_api/cursor/123"));
+        Assert.assertNull("other cursor bound to the endpoint", affinity.select("/_db/test/_api/cursor/456"));
+        Assert.assertNull("request without a cursor bound to the endpoint", affinity.select("/_db/test/_api/document/test/123"));
+        
+        // the cursor is gone once its last batch has been read
+        affinity.responded(endpoint, "PUT", "/_db/test/_api/cursor/123", 200, null, createCursor("123", false));
+        Assert.assertNull("exhausted cursor still bound", affinity.select("/_db/test/_api/cursor/123"));
+        Assert.assertEquals("wrong number of bindings", 0, affinity.getBindings());
+    }
+    
+    @Test
+    public void testQueryWithoutCursor() {
+        affinity.responded(endpoint, "POST", "/_api/cursor", 201, null, createCursor(null, false));
+        Assert.assertEquals("query without cursor bound", 0, affinity.getBindings());
+    }
+    
+    @Test
+    public void testCursorDeleted() {
+        affinity.responded(endpoint, "POST", "/_api/cursor", 201, null, createCursor("123", true));
+        affinity.responded(endpoint, "DELETE", "/_api/cursor/123", 202, null, new JsonObject().putBoolean("error", false));
+        Assert.assertNull("deleted cursor still bound", affinity.select("/_api/cursor/123"));
+    }
+    
+    @Test
+    public void testCursorUnknown() {
+        affinity.responded(endpoint, "POST", "/_api/cursor", 201, null, createCursor("123", true));
+        affinity.responded(endpoint, "PUT", "/_api/cursor/123", 404, null, new JsonObject().putBoolean("error", true));
+        Assert.assertNull("expired cursor still bound", affinity.select("/_api/cursor/123"));
+    }
+    
+    @Test
+    public void testJobBinding() {
+        affinity.responded(endpoint, "POST", "/_db/test/_api/document?collection=test", 202, "789", null);
+        Assert.assertSame("job request not sent to the endpoint of the job", endpoint, affinity.select("/_db/test/_api/job/789"));
+        Assert.assertSame("job subresource not sent to the endpoint of the job", endpoint, affinity.select("/_api/job/789/cancel"));
+        
+        // cancelling keeps the job, fetching its result removes it from the server
+        affinity.responded(endpoint, "PUT", "/_api/job/789/cancel", 200, null, new JsonObject());
+        Assert.assertSame("cancelled job no longer bound", endpoint, affinity.select("/_api/job/789"));
+        affinity.responded(endpoint, "PUT", "/_api/job/789", 201, null, new JsonObject());
+        Assert.assertNull("fetched job still bound", affinity.select("/_api/job/789"));
+    }
+    
+    @Test
+    public void testMaxBindings() {
+        for (int i = 0; i <= EndpointAffinity.MAX_BINDINGS; i++) {
+            affinity.responded(endpoint, "POST", "/_api/cursor", 201, null, createCursor(String.valueOf(i), true));
+        }
+        Assert.assertEquals("number of bindings not limited", EndpointAffinity.MAX_BINDINGS, affinity.getBindings());
+        Assert.assertNull("oldest binding not forgotten", affinity.select("/_api/cursor/0"));
+        Assert.assertSame("newest binding forgotten", endpoint, affinity.select("/_api/cursor/" + EndpointAffinity.MAX_BINDINGS));
+    }
+    
+    @Test
+    public void testRelease() {
+        Endpoint other = new Endpoint("host2", 8529, null);
+        affinity.responded(endpoint, "POST", "/_api/cursor", 201, null, createCursor("123", true));
+        affinity.responded(endpoint, "POST", "/_api/document?collection=test", 202, "789", null);
+        affinity.responded(other, "POST", "/_api/cursor", 201, null, createCursor("456", true));
+        
+        affinity.release(endpoint);
+        Assert.assertNull("cursor of a removed endpoint still bound", affinity.select("/_api/cursor/123"));
+        Assert.assertNull("job of a removed endpoint still bound", affinity.select("/_api/job/789"));
+        Assert.assertSame("cursor of another endpoint released", other, affinity.select("/_api/cursor/456"));
+    }
+    
+    @Test
+    public void testRemovedEndpoint() {
+        // a request for a cursor whose endpoint was removed fails right away instead of using the closed client of the endpoint
+        final Endpoint other = new Endpoint("host2", 8529, null);
+        ArangoPersistor persistor = new ArangoPersistor() {
+            private final LoadBalancer loadBalancer = new LoadBalancer(Arrays.asList(other), LoadBalancer.STRATEGY_ROUND_ROBIN);
+            
+            @Override
+            public LoadBalancer getLoadBalancer() {
+                return loadBalancer;
+            }
+        };
+        persistor.getAffinity().responded(endpoint, "POST", "/_api/cursor", 201, null, createCursor("123", true));
+        
+        final List<JsonObject> replies = new ArrayList<>();
+        JsonObject request = new JsonObject().putString(GenericAPI.MSG_PROPERTY_ACTION, GenericAPI.MSG_ACTION_PUT).putString(GenericAPI.MSG_PROPERTY_PATH, "cursor/123");
+        new GenericAPI(LoggerFactory.getLogger(EndpointAffinityTest.class), persistor).processRequest(new InternalMessage(null, request, new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                replies.add(reply);
+            }
+        }));
+        Assert.assertEquals("request for a removed endpoint not answered", 1, replies.size());
+        Assert.assertEquals("wrong statuscode", 503, replies.get(0).getInteger("statuscode").intValue());
+    }
+    
+    private JsonObject createCursor(String id, boolean hasMore) {
+        JsonObject cursor = new JsonObject();
+        if (id != null) cursor.putString("id", id);
+        cursor.putBoolean("hasMore", hasMore);
+        
+        return cursor;
+    }
+    
+}
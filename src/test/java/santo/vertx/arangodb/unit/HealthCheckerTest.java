@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.unit;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.HealthChecker;
+import santo.vertx.arangodb.LoadBalancer;
+
+/**
+ * Unit tests for the {@link santo.vertx.arangodb.HealthChecker} and the way the {@link santo.vertx.arangodb.LoadBalancer} handles unhealthy endpoints
+ * 
+ * @author sANTo
+ */
+public class HealthCheckerTest {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HealthCheckerTest.class);
+    
+    private final Endpoint endpoint = new Endpoint("host1", 8529, null);
+    private final Endpoint other = new Endpoint("host2", 8529, null);
+    
+    @Test
+    public void testConsecutiveFailures() {
+        HealthChecker checker = new HealthChecker(new ArangoPersistor(), logger, 1000, 100, 3);
+        checker.failed(endpoint, new ConnectException());
+        checker.failed(endpoint, new ConnectException());
+        Assert.assertTrue("endpoint unavailable before the maximum number of failures", endpoint.isHealthy());
+        
+        checker.failed(endpoint, new ConnectException());
+        Assert.assertFalse("endpoint still available after the maximum number of failures", endpoint.isHealthy());
+        Assert.assertTrue("other endpoint affected", other.isHealthy());
+    }
+    
+    @Test
+    public void testOtherFailures() {
+        // a timeout or reset connection may be caused by the request itself, only a refused connection means the server is down
+        HealthChecker checker = new HealthChecker(new ArangoPersistor(), logger, 1000, 100, 1);
+        checker.failed(endpoint, new TimeoutException());
+        Assert.assertTrue("endpoint unavailable after a timeout", endpoint.isHealthy());
+    }
+    
+    @Test
+    public void testUnhealthyEndpointSkipped() {
+        LoadBalancer loadBalancer = new LoadBalancer(Arrays.asList(endpoint, other), LoadBalancer.STRATEGY_ROUND_ROBIN);
+        endpoint.setHealthy(false);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame("unhealthy endpoint selected", other, loadBalancer.select());
+        }
+        Assert.assertNull("unhealthy endpoint selected as an alternative", loadBalancer.select(other));
+        Assert.assertTrue("load balancer unavailable with a healthy endpoint", loadBalancer.isAvailable());
+    }
+    
+    @Test
+    public void testCapacityOfUnhealthyEndpoint() {
+        LoadBalancer loadBalancer = new LoadBalancer(Arrays.asList(endpoint, other), LoadBalancer.STRATEGY_ROUND_ROBIN);
+        loadBalancer.setMaxInFlight(1);
+        endpoint.requestStarted();
+        other.setHealthy(false);
+        Assert.assertFalse("capacity of an unhealthy endpoint used", loadBalancer.hasCapacity());
+        
+        // without a healthy endpoint there's nothing to wait for
+        endpoint.setHealthy(false);
+        Assert.assertTrue("requests held back without a healthy endpoint", loadBalancer.hasCapacity());
+    }
+    
+    @Test
+    public void testNoHealthyEndpoint() {
+        LoadBalancer loadBalancer = new LoadBalancer(Arrays.asList(endpoint, other), LoadBalancer.STRATEGY_ROUND_ROBIN);
+        endpoint.setHealthy(false);
+        other.setHealthy(false);
+        Assert.assertFalse("load balancer available without a healthy endpoint", loadBalancer.isAvailable());
+        Assert.assertNotNull("no endpoint selected without a healthy endpoint", loadBalancer.select());
+    }
+    
+}
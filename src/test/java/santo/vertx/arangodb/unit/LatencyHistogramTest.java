@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.unit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+import santo.vertx.arangodb.LatencyHistogram;
+
+/**
+ * Unit tests for the {@link santo.vertx.arangodb.LatencyHistogram}: the precision of the buckets and the reported percentiles
+ * 
+ * @author sANTo
+ */
+public class LatencyHistogramTest {
+    
+    private static final long LARGE_VALUE = 1L << 40;
+    
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals("percentile of an empty histogram", 0, histogram.getPercentile(99));
+        Assert.assertEquals("count of an empty histogram", 0, histogram.getCount());
+    }
+    
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 8; value++) {
+            histogram.record(value);
+        }
+        
+        Assert.assertEquals("wrong median", 3, histogram.getPercentile(50));
+        Assert.assertEquals("wrong maximum", 7, histogram.getPercentile(100));
+        Assert.assertEquals("wrong count", 8, histogram.getCount());
+    }
+    
+    @Test
+    public void testUpperBoundPrecision() {
+        // the upper bound of the bucket of a value is at most 12.5% higher than the value itself
+        for (long value = 8; value < LARGE_VALUE; value = value * 3 / 2 + 1) {
+            long upperBound = getUpperBound(value);
+            Assert.assertTrue("upper bound " + upperBound + " below value " + value, upperBound >= value);
+            Assert.assertTrue("upper bound " + upperBound + " too far above value " + value, upperBound - value <= value / 8);
+            
+            // the upper bound belongs to the same bucket, the next value to the next bucket
+            Assert.assertEquals("upper bound " + upperBound + " of value " + value + " in another bucket", upperBound, getUpperBound(upperBound));
+            Assert.assertTrue("value after upper bound " + upperBound + " in the same bucket", getUpperBound(upperBound + 1) > upperBound);
+        }
+    }
+    
+    @Test
+    public void testBucketBoundaries() {
+        // 8-15 have a bucket of their own, 16-31 share a bucket per 2 values, 32-63 per 4 values
+        Assert.assertEquals("wrong upper bound for 15", 15, getUpperBound(15));
+        Assert.assertEquals("wrong upper bound for 16", 17, getUpperBound(16));
+        Assert.assertEquals("wrong upper bound for 17", 17, getUpperBound(17));
+        Assert.assertEquals("wrong upper bound for 32", 35, getUpperBound(32));
+        Assert.assertEquals("wrong upper bound for 60", 63, getUpperBound(60));
+    }
+    
+    @Test
+    public void testPercentileLimitedByMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        Assert.assertEquals("percentile above the maximum", 1000, histogram.getPercentile(99));
+    }
+    
+    @Test
+    public void testNegativeValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        Assert.assertEquals("negative value not recorded as 0", 0, histogram.getPercentile(100));
+    }
+    
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        
+        assertWithin(500, histogram.getPercentile(50));
+        assertWithin(900, histogram.getPercentile(90));
+        assertWithin(990, histogram.getPercentile(99));
+        Assert.assertEquals("wrong maximum", 1000, histogram.getPercentile(100));
+    }
+    
+    @Test
+    public void testJson() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(3000);
+        
+        JsonObject stats = histogram.toJson();
+        Assert.assertEquals("wrong count", 2, stats.getNumber("count").longValue());
+        Assert.assertEquals("wrong mean", 2.0, stats.getNumber("mean").doubleValue(), 0.001);
+        Assert.assertEquals("wrong maximum", 3.0, stats.getNumber("max").doubleValue(), 0.001);
+    }
+    
+    // the percentile of a value is the upper bound of its bucket, as long as a larger value keeps the maximum out of the way
+    private long getUpperBound(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(LARGE_VALUE);
+        
+        return histogram.getPercentile(50);
+    }
+    
+    private void assertWithin(long expected, long actual) {
+        Assert.assertTrue("percentile " + actual + " not within 12.5% of " + expected, actual >= expected && actual <= expected + expected / 8);
+    }
+    
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+import santo.vertx.arangodb.InternalMessage;
+import santo.vertx.arangodb.RequestCoalescer;
+
+/**
+ * Unit tests for the {@link santo.vertx.arangodb.RequestCoalescer}: which requests share a response, and when a new request is sent
+ * 
+ * @author sANTo
+ */
+public class RequestCoalescerTest {
+    
+    private final RequestCoalescer coalescer = new RequestCoalescer(LoggerFactory.getLogger(RequestCoalescerTest.class));
+    private final List<JsonObject> replies = new ArrayList<>();
+    
+    @Test
+    public void testIdenticalRequests() {
+        Message<JsonObject> first = coalescer.coalesce("GET /_api/document/test/1", createMessage());
+        Assert.assertNotNull("first request not performed", first);
+        Assert.assertNull("identical request performed", coalescer.coalesce("GET /_api/document/test/1", createMessage()));
+        Assert.assertEquals("coalesced request not counted", 1, coalescer.getCoalesced());
+        
+        first.reply(new JsonObject().putString("status", "ok").putObject("result", new JsonObject().putString("_key", "1")));
+        Assert.assertEquals("response not delivered to all requests", 2, replies.size());
+        Assert.assertEquals("different responses delivered", replies.get(0), replies.get(1));
+        Assert.assertNotSame("requests share the same response object", replies.get(0), replies.get(1));
+    }
+    
+    @Test
+    public void testDifferentRequests() {
+        Assert.assertNotNull("first request not performed", coalescer.coalesce("GET /_api/document/test/1", createMessage()));
+        Assert.assertNotNull("different request coalesced", coalescer.coalesce("GET /_api/document/test/2", createMessage()));
+        Assert.assertEquals("different request counted", 0, coalescer.getCoalesced());
+    }
+    
+    @Test
+    public void testRequestAfterResponse() {
+        // only requests that are in progress at the same time are coalesced, there's no caching
+        Message<JsonObject> first = coalescer.coalesce("GET /_api/document/test/1", createMessage());
+        first.reply(new JsonObject());
+        Assert.assertNotNull("request after the response not performed", coalescer.coalesce("GET /_api/document/test/1", createMessage()));
+    }
+    
+    @Test
+    public void testFailureShared() {
+        // a failed request fails all requests that joined it, and the next one is sent again
+        Message<JsonObject> first = coalescer.coalesce("GET /_api/document/test/1", createMessage());
+        coalescer.coalesce("GET /_api/document/test/1", createMessage());
+        first.reply(new JsonObject().putString("status", "error").putNumber("statuscode", 503));
+        Assert.assertEquals("failure not delivered to all requests", 2, replies.size());
+        Assert.assertEquals("wrong statuscode", 503, replies.get(1).getInteger("statuscode").intValue());
+        Assert.assertNotNull("request after a failure not performed", coalescer.coalesce("GET /_api/document/test/1", createMessage()));
+    }
+    
+    private Message<JsonObject> createMessage() {
+        return new InternalMessage(null, new JsonObject(), new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                replies.add(reply);
+            }
+        });
+    }
+    
+}
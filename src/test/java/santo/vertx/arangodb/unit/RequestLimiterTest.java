@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.unit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+import santo.vertx.arangodb.ArangoPersistor;
+import santo.vertx.arangodb.Endpoint;
+import santo.vertx.arangodb.InternalMessage;
+import santo.vertx.arangodb.LoadBalancer;
+import santo.vertx.arangodb.RequestLimiter;
+
+/**
+ * Unit tests for the {@link santo.vertx.arangodb.RequestLimiter}: admission, queueing and rejection of requests
+ * 
+ * @author sANTo
+ */
+public class RequestLimiterTest {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RequestLimiterTest.class);
+    private static final String PROPERTY_PRIORITY = "priority";
+    private static final String PROPERTY_SEQUENCE = "sequence";
+    
+    private Vertx vertx;
+    private DispatchingPersistor persistor;
+    private int submitted = 0;
+    
+    @Before
+    public void setUp() {
+        vertx = VertxFactory.newVertx();
+        persistor = new DispatchingPersistor();
+        persistor.setVertx(vertx);
+    }
+    
+    @After
+    public void tearDown() {
+        vertx.stop();
+    }
+    
+    @Test
+    public void testQueuedInOrder() {
+        RequestLimiter limiter = new RequestLimiter(persistor, logger, 2, 100, 100, 60000);
+        for (int i = 0; i < 4; i++) {
+            submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+        }
+        Assert.assertEquals("more requests in flight than allowed", 2, limiter.getInFlight());
+        Assert.assertEquals("wrong queue size", 2, limiter.getQueueSize());
+        
+        // the slot of an answered request goes to the oldest waiting request
+        persistor.dispatched.get(1).reply(new JsonObject());
+        Assert.assertEquals("released slot not used", 2, limiter.getInFlight());
+        Assert.assertEquals("waiting requests not processed in order", 2, persistor.dispatched.get(2).body().getInteger(PROPERTY_SEQUENCE).intValue());
+        
+        // answering the same request twice doesn't release another slot
+        persistor.dispatched.get(1).reply(new JsonObject());
+        Assert.assertEquals("slot released twice", 1, limiter.getQueueSize());
+    }
+    
+    @Test
+    public void testLaneWeighting() {
+        RequestLimiter limiter = new RequestLimiter(persistor, logger, 1, 100, 100, 60000);
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+        for (int i = 0; i < 8; i++) {
+            submit(limiter, RequestLimiter.PRIORITY_LOW, null);
+            submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+            submit(limiter, RequestLimiter.PRIORITY_HIGH, null);
+        }
+        Assert.assertEquals("more requests in flight than allowed", 1, limiter.getInFlight());
+        Assert.assertEquals("wrong queue size", 24, limiter.getQueueSize());
+        
+        // the waiting requests are taken from the lanes in a 4:2:1 ratio
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 14; i++) {
+            persistor.dispatched.get(i).reply(new JsonObject());
+            order.add(persistor.dispatched.get(i + 1).body().getString(PROPERTY_PRIORITY));
+        }
+        
+        List<String> round = Arrays.asList("high", "high", "high", "high", "normal", "normal", "low");
+        List<String> expected = new ArrayList<>(round);
+        expected.addAll(round);
+        Assert.assertEquals("wrong order of the lanes", expected, order);
+    }
+    
+    @Test
+    public void testLowPriorityShare() {
+        RequestLimiter limiter = new RequestLimiter(persistor, logger, 4, 50, 100, 60000);
+        for (int i = 0; i < 3; i++) {
+            submit(limiter, RequestLimiter.PRIORITY_LOW, null);
+        }
+        Assert.assertEquals("low priority requests used more than their share", 2, limiter.getInFlight());
+        
+        submit(limiter, RequestLimiter.PRIORITY_HIGH, null);
+        Assert.assertEquals("high priority request waited for the share of the low priority requests", 3, limiter.getInFlight());
+        Assert.assertEquals("wrong queue size", 1, limiter.getQueueSize());
+    }
+    
+    @Test
+    public void testQueueFull() {
+        RequestLimiter limiter = new RequestLimiter(persistor, logger, 1, 100, 1, 60000);
+        final List<JsonObject> replies = new ArrayList<>();
+        Handler<JsonObject> replyHandler = new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                replies.add(reply);
+            }
+        };
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, replyHandler);
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, replyHandler);
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, replyHandler);
+        
+        Assert.assertEquals("request not rejected while the queue is full", 1, replies.size());
+        Assert.assertEquals("wrong statuscode", RequestLimiter.STATUS_OVERLOADED, replies.get(0).getInteger("statuscode").intValue());
+        Assert.assertEquals("rejected request not counted", 1, limiter.getRejected());
+    }
+    
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final RequestLimiter limiter = new RequestLimiter(persistor, logger, 1, 100, 100, 50);
+        final CountDownLatch expired = new CountDownLatch(1);
+        final List<JsonObject> replies = new ArrayList<>();
+        final long start = System.currentTimeMillis();
+        
+        // the timers fire on an event loop, so the limiter is only used from there
+        vertx.runOnContext(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+                submit(limiter, RequestLimiter.PRIORITY_NORMAL, new Handler<JsonObject>() {
+                    @Override
+                    public void handle(JsonObject reply) {
+                        replies.add(reply);
+                        expired.countDown();
+                    }
+                });
+            }
+        });
+        
+        Assert.assertTrue("waiting request didn't expire", expired.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue("waiting request expired too early", System.currentTimeMillis() - start >= 50);
+        Assert.assertEquals("wrong statuscode", RequestLimiter.STATUS_OVERLOADED, replies.get(0).getInteger("statuscode").intValue());
+        Assert.assertEquals("expired request still queued", 0, limiter.getQueueSize());
+    }
+    
+    @Test
+    public void testEndpointCapacity() {
+        // a request is only admitted if an endpoint has room for it
+        persistor.loadBalancer.setMaxInFlight(1);
+        RequestLimiter limiter = new RequestLimiter(persistor, logger, 10, 100, 100, 60000);
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+        persistor.endpoint.requestStarted();
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+        Assert.assertEquals("request admitted while the endpoint is full", 1, limiter.getQueueSize());
+        
+        persistor.endpoint.requestFinished(1, true);
+        persistor.dispatched.get(0).reply(new JsonObject());
+        Assert.assertEquals("request not admitted once the endpoint had room", 0, limiter.getQueueSize());
+        Assert.assertEquals("request not dispatched", 2, persistor.dispatched.size());
+    }
+    
+    @Test
+    public void testUnavailableEndpoint() {
+        // requests don't wait for an endpoint that can't take them, they're sent right away and fail fast
+        persistor.loadBalancer.setMaxInFlight(1);
+        persistor.endpoint.requestStarted();
+        persistor.endpoint.setHealthy(false);
+        
+        RequestLimiter limiter = new RequestLimiter(persistor, logger, 10, 100, 100, 60000);
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+        Assert.assertEquals("request queued while no endpoint is available", 0, limiter.getQueueSize());
+        Assert.assertEquals("request not dispatched", 1, persistor.dispatched.size());
+    }
+    
+    @Test
+    public void testDispatchFailure() {
+        // e.g. a request to an endpoint whose client was closed already
+        RequestLimiter limiter = new RequestLimiter(persistor, logger, 1, 100, 100, 60000);
+        final List<JsonObject> replies = new ArrayList<>();
+        persistor.failing = true;
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, new Handler<JsonObject>() {
+            @Override
+            public void handle(JsonObject reply) {
+                replies.add(reply);
+            }
+        });
+        Assert.assertEquals("failed request not answered", 1, replies.size());
+        Assert.assertEquals("failed request not answered with an error", "error", replies.get(0).getString("status"));
+        Assert.assertEquals("slot of the failed request not released", 0, limiter.getInFlight());
+        
+        persistor.failing = false;
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+        Assert.assertEquals("request after the failure not dispatched", 1, persistor.dispatched.size());
+    }
+    
+    @Test
+    public void testCapacityChanged() {
+        // requests that aren't managed by the limiter use up the capacity of the endpoint as well
+        persistor.loadBalancer.setMaxInFlight(1);
+        persistor.endpoint.requestStarted();
+        
+        RequestLimiter limiter = new RequestLimiter(persistor, logger, 10, 100, 100, 60000);
+        submit(limiter, RequestLimiter.PRIORITY_NORMAL, null);
+        Assert.assertEquals("request not queued while the endpoint is busy", 1, limiter.getQueueSize());
+        
+        persistor.endpoint.requestFinished(1, true);
+        limiter.capacityChanged();
+        Assert.assertEquals("request not processed once the endpoint was released", 0, limiter.getQueueSize());
+        Assert.assertEquals("request not dispatched", 1, persistor.dispatched.size());
+    }
+    
+    private void submit(RequestLimiter limiter, String priority, Handler<JsonObject> replyHandler) {
+        JsonObject request = new JsonObject().putString(PROPERTY_PRIORITY, priority).putNumber(PROPERTY_SEQUENCE, submitted++);
+        limiter.submit(ArangoPersistor.MSG_TYPE_DOCUMENT, priority, new InternalMessage(null, request, replyHandler));
+    }
+    
+    // collects the requests instead of sending them to the database
+    private static class DispatchingPersistor extends ArangoPersistor {
+        private final Endpoint endpoint = new Endpoint("localhost", 8529, null);
+        private final LoadBalancer loadBalancer = new LoadBalancer(Arrays.asList(endpoint), LoadBalancer.STRATEGY_ROUND_ROBIN);
+        private final List<Message<JsonObject>> dispatched = new ArrayList<>();
+        private boolean failing = false;
+        
+        @Override
+        public LoadBalancer getLoadBalancer() {
+            return loadBalancer;
+        }
+        
+        @Override
+        public void dispatch(String type, Message<JsonObject> msg) {
+            if (failing) throw new IllegalStateException("Client is closed");
+            dispatched.add(msg);
+        }
+    }
+    
+}
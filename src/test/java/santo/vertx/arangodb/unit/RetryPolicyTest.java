@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 sANTo.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package santo.vertx.arangodb.unit;
+
+import java.net.ConnectException;
+import java.util.concurrent.TimeoutException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+import santo.vertx.arangodb.Helper;
+import santo.vertx.arangodb.RetryPolicy;
+
+/**
+ * Unit tests for the {@link santo.vertx.arangodb.RetryPolicy}: which failures are retried, the backoff and the retry budget
+ * 
+ * @author sANTo
+ */
+public class RetryPolicyTest {
+    
+    @Test
+    public void testMaxRetries() {
+        RetryPolicy policy = new RetryPolicy(2, 10, 100, 100);
+        Assert.assertTrue("first retry denied", policy.acquire(0) > 0);
+        Assert.assertTrue("second retry denied", policy.acquire(1) > 0);
+        Assert.assertEquals("third retry allowed", -1, policy.acquire(2));
+        Assert.assertEquals("wrong number of retries", 2, policy.getRetries());
+    }
+    
+    @Test
+    public void testBudgetExhausted() {
+        // without a budget only the reserve of 10 retries is available
+        RetryPolicy policy = new RetryPolicy(5, 10, 100, 0);
+        for (int i = 0; i < 10; i++) {
+            policy.requestStarted();
+            Assert.assertTrue("retry " + i + " denied while the reserve isn't used up", policy.acquire(0) > 0);
+        }
+        
+        policy.requestStarted();
+        Assert.assertEquals("retry allowed after the reserve was used up", -1, policy.acquire(0));
+        Assert.assertEquals("exhausted retry not counted", 1, policy.getExhausted());
+    }
+    
+    @Test
+    public void testBudgetRefill() {
+        // a budget of 50 per 100 requests earns a retry every 2 requests
+        RetryPolicy policy = new RetryPolicy(5, 10, 100, 50);
+        for (int i = 0; i < 10; i++) {
+            policy.acquire(0);
+        }
+        Assert.assertEquals("retry allowed without budget", -1, policy.acquire(0));
+        
+        policy.requestStarted();
+        Assert.assertEquals("retry allowed after a single request", -1, policy.acquire(0));
+        policy.requestStarted();
+        Assert.assertTrue("retry denied after the budget was earned", policy.acquire(0) > 0);
+    }
+    
+    @Test
+    public void testBackoffCeiling() {
+        RetryPolicy policy = new RetryPolicy(100, 10, 50, 10000);
+        for (int i = 0; i < 1000; i++) {
+            policy.requestStarted();
+            int attempt = i % 50;
+            long delay = policy.acquire(attempt);
+            long ceiling = Math.min(50, 10L << Math.min(attempt, 30));
+            Assert.assertTrue("delay " + delay + " of attempt " + attempt + " out of range", delay >= 1 && delay <= ceiling);
+        }
+    }
+    
+    @Test
+    public void testRetryableResponses() {
+        RetryPolicy policy = new RetryPolicy(3, 10, 100, 10);
+        Assert.assertTrue("503 not retried", policy.isRetryable(createReply(503, null), true));
+        Assert.assertTrue("leader change not retried", policy.isRetryable(createReply(500, 1495), true));
+        Assert.assertFalse("500 retried", policy.isRetryable(createReply(500, null), true));
+        Assert.assertFalse("success retried", policy.isRetryable(createReply(200, null), true));
+        Assert.assertFalse("modification retried", policy.isRetryable(createReply(503, null), false));
+    }
+    
+    @Test
+    public void testRetryableFailures() {
+        RetryPolicy policy = new RetryPolicy(3, 10, 100, 10);
+        Assert.assertTrue("refused connection not retried", policy.isRetryable(new ConnectException(), false));
+        Assert.assertTrue("timeout of a read not retried", policy.isRetryable(new TimeoutException(), true));
+        Assert.assertFalse("timeout of a modification retried", policy.isRetryable(new TimeoutException(), false));
+    }
+    
+    private JsonObject createReply(int statusCode, Integer errorNum) {
+        JsonObject reply = new JsonObject();
+        reply.putString("status", statusCode < 400 ? "ok" : "error");
+        reply.putNumber(Helper.PROPERTY_MSG_STATUSCODE, statusCode);
+        if (errorNum != null) reply.putObject(Helper.PROPERTY_MSG_RESULT, new JsonObject().putNumber("errorNum", errorNum));
+        
+        return reply;
+    }
+    
+}